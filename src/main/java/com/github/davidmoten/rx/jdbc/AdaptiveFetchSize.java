@@ -0,0 +1,95 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adjusts the fetch size of a {@link ResultSet} according to the number of
+ * rows requested downstream. A bounded request sets the fetch size to the
+ * number of rows requested (within <code>[min, max]</code>) so that short
+ * reads such as <code>take(10)</code> or <code>first()</code> don't pull
+ * more rows over the network than needed. An unbounded request starts at the
+ * current fetch size and doubles it each time that many rows have been read
+ * until <code>max</code> is reached so that bulk reads need fewer round trips.
+ *
+ * <p>
+ * Not thread-safe. Methods must only be called by the thread reading the
+ * {@link ResultSet}.
+ */
+final class AdaptiveFetchSize {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveFetchSize.class);
+
+    private final ResultSet rs;
+    private final int min;
+    private final int max;
+
+    /**
+     * The fetch size last applied (the statement is prepared with
+     * <code>min</code>).
+     */
+    private int current;
+
+    /**
+     * True if the request is unbounded and the fetch size has not yet reached
+     * <code>max</code>.
+     */
+    private boolean ramping;
+
+    /**
+     * Rows to read before the fetch size is next doubled.
+     */
+    private long rowsUntilRamp;
+
+    AdaptiveFetchSize(ResultSet rs, int min, int max) {
+        this.rs = rs;
+        this.min = min;
+        this.max = max;
+        this.current = min;
+    }
+
+    /**
+     * Notifies that <code>rows</code> rows are now outstanding
+     * (<code>Long.MAX_VALUE</code> for unbounded).
+     *
+     * @param rows
+     *            outstanding requested rows
+     * @throws SQLException
+     */
+    void request(long rows) throws SQLException {
+        if (rows == Long.MAX_VALUE) {
+            if (!ramping && current < max) {
+                ramping = true;
+                rowsUntilRamp = current;
+            }
+        } else {
+            ramping = false;
+            apply((int) Math.max(min, Math.min(max, rows)));
+        }
+    }
+
+    /**
+     * Notifies that a row has been read from the {@link ResultSet}.
+     *
+     * @throws SQLException
+     */
+    void rowRead() throws SQLException {
+        if (ramping && --rowsUntilRamp <= 0) {
+            apply((int) Math.min(max, 2L * current));
+            rowsUntilRamp = current;
+            ramping = current < max;
+        }
+    }
+
+    private void apply(int fetchSize) throws SQLException {
+        if (fetchSize != current) {
+            log.debug("setting fetch size to {}", fetchSize);
+            rs.setFetchSize(fetchSize);
+            current = fetchSize;
+        }
+    }
+
+}
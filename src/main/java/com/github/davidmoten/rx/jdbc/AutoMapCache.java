@@ -1,7 +1,17 @@
 package com.github.davidmoten.rx.jdbc;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.github.davidmoten.rx.jdbc.Util.Col;
@@ -10,15 +20,110 @@ import com.github.davidmoten.rx.jdbc.Util.NamedCol;
 import com.github.davidmoten.rx.jdbc.annotations.Column;
 import com.github.davidmoten.rx.jdbc.annotations.Index;
 
+/**
+ * Reflective information about a class used for automapping, computed once
+ * per class (see {@link AutoMapCaches}). For an interface this is the
+ * annotated methods and the proxy class, for a concrete class the
+ * constructors by number of parameters.
+ */
 class AutoMapCache {
     final Map<String, Col> methodCols;
     public Class<?> cls;
 
+    /**
+     * The mapped columns in slot order.
+     */
+    final Col[] cols;
+
+    /**
+     * The slot of each mapped interface method.
+     */
+    final Map<Method, Integer> slots;
+
+    /**
+     * The slot of each method of the proxy class by identity of the
+     * {@link Method} instance the proxy passes to its handler.
+     */
+    final ProxySlots proxySlots;
+
+    /**
+     * Constructor of the proxy class for the interface.
+     */
+    final Constructor<?> proxyConstructor;
+
+    /**
+     * Constructors of a concrete class keyed by number of parameters.
+     */
+    private final Map<Integer, AutoMapConstructor> constructors;
+
     AutoMapCache(Class<?> cls) {
         this.cls = cls;
-        this.methodCols = getMethodCols(cls);
+        if (cls.isInterface()) {
+            this.methodCols = getMethodCols(cls);
+            List<Col> list = new ArrayList<Col>();
+            this.slots = new HashMap<Method, Integer>();
+            for (Method method : cls.getMethods()) {
+                Col col = methodCols.get(method.getName());
+                if (col != null) {
+                    slots.put(method, list.size());
+                    list.add(col);
+                }
+            }
+            this.cols = list.toArray(new Col[list.size()]);
+            this.proxySlots = new ProxySlots(slots);
+            this.proxyConstructor = getProxyConstructor(cls);
+            this.constructors = Collections.emptyMap();
+        } else {
+            this.methodCols = Collections.emptyMap();
+            this.cols = new Col[0];
+            this.slots = Collections.emptyMap();
+            this.proxySlots = null;
+            this.proxyConstructor = null;
+            this.constructors = getConstructors(cls);
+        }
+    }
+
+    /**
+     * Returns the constructor with the given number of parameters or null if
+     * there is none.
+     * 
+     * @param numParameters
+     * @return constructor or null
+     */
+    AutoMapConstructor constructor(int numParameters) {
+        return constructors.get(numParameters);
+    }
+
+    private static Map<Integer, AutoMapConstructor> getConstructors(Class<?> cls) {
+        Map<Integer, AutoMapConstructor> map = new HashMap<Integer, AutoMapConstructor>();
+        for (Constructor<?> c : cls.getDeclaredConstructors()) {
+            int n = c.getParameterTypes().length;
+            // the first declared constructor with n parameters is used
+            if (!map.containsKey(n))
+                map.put(n, new AutoMapConstructor(c));
+        }
+        return map;
+    }
+
+    private static Constructor<?> getProxyConstructor(Class<?> cls) {
+        // Proxy.getProxyClass is deprecated so the class is obtained from an
+        // instance that is never called
+        Object proxy = Proxy.newProxyInstance(cls.getClassLoader(), new Class<?>[] { cls },
+                UNUSED_HANDLER);
+        try {
+            return proxy.getClass().getConstructor(InvocationHandler.class);
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
     }
 
+    private static final InvocationHandler UNUSED_HANDLER = new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
     private static Map<String, Col> getMethodCols(Class<?> cls) {
         Map<String, Col> methodCols = new HashMap<String, Col>();
         for (Method method : cls.getMethods()) {
@@ -49,4 +154,119 @@ class AutoMapCache {
         }
     }
 
+    /**
+     * Finds the slot of a method called on a proxy instance without hashing.
+     * A proxy class passes the same {@link Method} instance to its handler on
+     * every call of a method so the instances seen are recorded with their
+     * slots (copy on write) and later calls are matched by identity. There
+     * are only as many instances as the interface (and Object) has methods.
+     */
+    static final class ProxySlots {
+
+        private static final int NO_SLOT = -1;
+
+        private final Map<Method, Integer> slots;
+
+        private static final class Entries {
+            final Method[] methods;
+            final int[] slots;
+
+            Entries(Method[] methods, int[] slots) {
+                this.methods = methods;
+                this.slots = slots;
+            }
+        }
+
+        private volatile Entries entries = new Entries(new Method[0], new int[0]);
+
+        ProxySlots(Map<Method, Integer> slots) {
+            this.slots = slots;
+        }
+
+        /**
+         * Returns the slot of the method or -1 if the method is not mapped.
+         * 
+         * @param method
+         *            method passed to the proxy handler
+         * @return slot or -1
+         */
+        int slot(Method method) {
+            Entries e = entries;
+            Method[] methods = e.methods;
+            for (int i = 0; i < methods.length; i++) {
+                if (methods[i] == method)
+                    return e.slots[i];
+            }
+            return add(method);
+        }
+
+        private synchronized int add(Method method) {
+            Entries e = entries;
+            Integer slot = slots.get(method);
+            int s = slot == null ? NO_SLOT : slot;
+            int n = e.methods.length;
+            Method[] methods = Arrays.copyOf(e.methods, n + 1);
+            int[] slotsArray = Arrays.copyOf(e.slots, n + 1);
+            methods[n] = method;
+            slotsArray[n] = s;
+            entries = new Entries(methods, slotsArray);
+            return s;
+        }
+    }
+
+    /**
+     * A constructor of a concrete class and a {@link MethodHandle} to invoke
+     * it with its arguments as an Object[].
+     */
+    static final class AutoMapConstructor {
+        final Constructor<?> constructor;
+        final Class<?>[] types;
+
+        /**
+         * Null if the constructor is not accessible (in which case reflection
+         * is used so that the failure is reported in the usual way).
+         */
+        private final MethodHandle handle;
+
+        AutoMapConstructor(Constructor<?> constructor) {
+            this.constructor = constructor;
+            this.types = constructor.getParameterTypes();
+            this.handle = methodHandle(constructor);
+        }
+
+        private static MethodHandle methodHandle(Constructor<?> c) {
+            try {
+                MethodHandle h = MethodHandles.lookup().unreflectConstructor(c);
+                return h.asType(h.type().generic()).asSpreader(Object[].class,
+                        c.getParameterTypes().length);
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+
+        Object newInstance(Object[] args) {
+            if (handle == null) {
+                try {
+                    return constructor.newInstance(args);
+                } catch (InstantiationException e) {
+                    throw new RuntimeException(e);
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                } catch (InvocationTargetException e) {
+                    throw new RuntimeException(e);
+                }
+            } else {
+                try {
+                    return (Object) handle.invokeExact(args);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
 }
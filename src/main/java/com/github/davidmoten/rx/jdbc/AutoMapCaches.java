@@ -0,0 +1,81 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded least-recently-used cache of {@link AutoMapCache} keyed by class.
+ * {@link #INSTANCE} is shared by all threads so that the reflective mapping
+ * information about a class is computed once rather than per query or per
+ * thread.
+ */
+final class AutoMapCaches {
+
+    /**
+     * Default maximum number of classes held.
+     */
+    static final int DEFAULT_MAX_SIZE = 256;
+
+    /**
+     * The cache used by the automapping result set mappers.
+     */
+    static final AutoMapCaches INSTANCE = new AutoMapCaches(DEFAULT_MAX_SIZE);
+
+    private final int maxSize;
+
+    // guarded by itself
+    private final LinkedHashMap<Class<?>, AutoMapCache> cache = new LinkedHashMap<Class<?>, AutoMapCache>(
+            16, 0.75f, true);
+
+    // guarded by cache
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    AutoMapCaches(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the mapping information for the given class, computing it if
+     * not cached.
+     * 
+     * @param cls
+     *            class to be automapped
+     * @return mapping information
+     */
+    AutoMapCache get(Class<?> cls) {
+        synchronized (cache) {
+            AutoMapCache m = cache.get(cls);
+            if (m != null) {
+                hits++;
+                return m;
+            }
+            misses++;
+        }
+        // compute outside of the lock, a concurrent duplicate is harmless
+        AutoMapCache m = new AutoMapCache(cls);
+        synchronized (cache) {
+            AutoMapCache existing = cache.get(cls);
+            if (existing != null)
+                return existing;
+            cache.put(cls, m);
+            while (cache.size() > maxSize) {
+                cache.remove(cache.keySet().iterator().next());
+                evictions++;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Returns the current statistics of the cache.
+     * 
+     * @return statistics
+     */
+    CacheStatistics statistics() {
+        synchronized (cache) {
+            return new CacheStatistics(cache.size(), maxSize, hits, misses, evictions);
+        }
+    }
+
+}
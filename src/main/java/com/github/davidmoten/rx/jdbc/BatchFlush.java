@@ -0,0 +1,96 @@
+package com.github.davidmoten.rx.jdbc;
+
+/**
+ * Immutable record of one execution of the jdbc batch of a batched update
+ * that is not run within a transaction (see
+ * {@link QueryUpdate.Builder#onFlush(rx.functions.Action1)}).
+ */
+public final class BatchFlush {
+
+    /**
+     * Why a batch was executed.
+     */
+    public enum Trigger {
+        /**
+         * The batch reached the batch size.
+         */
+        SIZE,
+
+        /**
+         * The flush interval passed since the first parameter set of the
+         * batch was added.
+         */
+        TIME,
+
+        /**
+         * The parameter sets finished.
+         */
+        END;
+    }
+
+    private final Trigger trigger;
+    private final int rows;
+    private final int count;
+    private final boolean committed;
+    private final long latencyNanos;
+    private final long executeTimeNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param trigger
+     *            why the batch was executed
+     * @param rows
+     *            number of parameter sets in the batch
+     * @param count
+     *            number of rows affected by the batch
+     * @param committed
+     *            true if the batch was committed after execution
+     * @param latencyNanos
+     *            time from adding the first parameter set of the batch to
+     *            the completion of the flush
+     * @param executeTimeNanos
+     *            time taken to execute (and commit) the batch
+     */
+    public BatchFlush(Trigger trigger, int rows, int count, boolean committed, long latencyNanos,
+            long executeTimeNanos) {
+        this.trigger = trigger;
+        this.rows = rows;
+        this.count = count;
+        this.committed = committed;
+        this.latencyNanos = latencyNanos;
+        this.executeTimeNanos = executeTimeNanos;
+    }
+
+    public Trigger trigger() {
+        return trigger;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean committed() {
+        return committed;
+    }
+
+    public long latencyNanos() {
+        return latencyNanos;
+    }
+
+    public long executeTimeNanos() {
+        return executeTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchFlush [trigger=" + trigger + ", rows=" + rows + ", count=" + count
+                + ", committed=" + committed + ", latencyNanos=" + latencyNanos
+                + ", executeTimeNanos=" + executeTimeNanos + "]";
+    }
+
+}
@@ -0,0 +1,422 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static com.github.davidmoten.rx.jdbc.Conditions.checkArgument;
+import static com.github.davidmoten.rx.jdbc.Conditions.checkNotNull;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.rx.jdbc.tuple.Tuples;
+
+import rx.Observable;
+import rx.Observer;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
+
+/**
+ * Combines lookups of rows by key made within a short time window into
+ * single queries with an <code>in</code> list of the keys and returns the
+ * rows of each lookup to its caller. The number of keys in each query is
+ * rounded up to one of a few bucket sizes (by repeating a key) so that only a
+ * few distinct statements are prepared.
+ *
+ * @param <K>
+ *            key type
+ * @param <T>
+ *            row type
+ */
+public final class BatchLoader<K, T> {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchLoader.class);
+
+    /**
+     * The placeholder in the sql template that is replaced by the parameters
+     * of the keys of each batch.
+     */
+    public static final String KEYS = "{keys}";
+
+    private final Database db;
+    private final String sqlTemplate;
+    private final String keyColumn;
+    private final Class<K> keyClass;
+    private final int[] buckets;
+    private final long windowMs;
+    private final Scheduler scheduler;
+    private final Func0<? extends ResultSetMapper<? extends T>> mapperFactory;
+
+    // guarded by this
+    private Map<K, List<AsyncSubject<List<T>>>> pending = new LinkedHashMap<K, List<AsyncSubject<List<T>>>>();
+
+    /**
+     * Runs the window timer of the pending batch. A worker is created per
+     * window and unsubscribed when the window ends (or the batch fills first)
+     * so that an idle loader holds no scheduler resources (for example a
+     * thread of {@link Schedulers#io()}). Guarded by this.
+     */
+    private Worker windowWorker;
+
+    private BatchLoader(Database db, String sqlTemplate, String keyColumn, Class<K> keyClass,
+            int[] buckets, long windowMs, Scheduler scheduler,
+            Func0<? extends ResultSetMapper<? extends T>> mapperFactory) {
+        this.db = db;
+        this.sqlTemplate = sqlTemplate;
+        this.keyColumn = keyColumn;
+        this.keyClass = keyClass;
+        this.buckets = buckets;
+        this.windowMs = windowMs;
+        this.scheduler = scheduler;
+        this.mapperFactory = mapperFactory;
+    }
+
+    /**
+     * Returns the rows with the given key. The key is looked up (on
+     * subscription) in a query combined with the keys of other lookups made
+     * within the window.
+     *
+     * @param key
+     *            non-null key
+     * @return rows with the key
+     */
+    public Observable<T> load(final K key) {
+        checkNotNull(key);
+        return Observable.defer(new Func0<Observable<List<T>>>() {
+            @Override
+            public Observable<List<T>> call() {
+                AsyncSubject<List<T>> subject = AsyncSubject.create();
+                enqueue(key, subject);
+                return subject;
+            }
+        }).concatMap(new Func1<List<T>, Observable<T>>() {
+            @Override
+            public Observable<T> call(List<T> rows) {
+                return Observable.from(rows);
+            }
+        });
+    }
+
+    private void enqueue(K key, AsyncSubject<List<T>> subject) {
+        Map<K, List<AsyncSubject<List<T>>>> batch = null;
+        Map<K, List<AsyncSubject<List<T>>>> started = null;
+        Worker finished = null;
+        Worker worker = null;
+        synchronized (this) {
+            List<AsyncSubject<List<T>>> subjects = pending.get(key);
+            if (subjects == null) {
+                subjects = new ArrayList<AsyncSubject<List<T>>>(1);
+                pending.put(key, subjects);
+            }
+            subjects.add(subject);
+            if (pending.size() == maxBatchSize()) {
+                batch = pending;
+                pending = new LinkedHashMap<K, List<AsyncSubject<List<T>>>>();
+                finished = windowWorker;
+                windowWorker = null;
+            } else if (pending.size() == 1 && subjects.size() == 1) {
+                // first lookup of a new batch starts its window
+                started = pending;
+                worker = scheduler.createWorker();
+                windowWorker = worker;
+            }
+        }
+        if (finished != null)
+            finished.unsubscribe();
+        if (batch != null)
+            execute(batch);
+        else if (started != null) {
+            final Map<K, List<AsyncSubject<List<T>>>> scheduled = started;
+            final Worker w = worker;
+            w.schedule(new Action0() {
+                @Override
+                public void call() {
+                    try {
+                        flush(scheduled);
+                    } finally {
+                        w.unsubscribe();
+                    }
+                }
+            }, windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Executes the pending batch if it is still the given one (it may already
+     * have been executed because it reached the maximum batch size).
+     */
+    private void flush(Map<K, List<AsyncSubject<List<T>>>> scheduled) {
+        Map<K, List<AsyncSubject<List<T>>>> batch;
+        synchronized (this) {
+            if (pending != scheduled || pending.isEmpty())
+                return;
+            batch = pending;
+            pending = new LinkedHashMap<K, List<AsyncSubject<List<T>>>>();
+            windowWorker = null;
+        }
+        execute(batch);
+    }
+
+    private int maxBatchSize() {
+        return buckets[buckets.length - 1];
+    }
+
+    /**
+     * Returns the smallest bucket size that holds n keys.
+     *
+     * @param n
+     *            number of keys
+     * @return bucket size
+     */
+    int bucketSize(int n) {
+        for (int size : buckets)
+            if (size >= n)
+                return size;
+        return maxBatchSize();
+    }
+
+    private void execute(final Map<K, List<AsyncSubject<List<T>>>> batch) {
+        Observable<List<Keyed<K, T>>> query;
+        try {
+            List<Object> keys = new ArrayList<Object>(batch.keySet());
+            int size = bucketSize(keys.size());
+            log.debug("loading {} keys with bucket size {}", keys.size(), size);
+            // pad with the last key to keep the number of statement shapes
+            // small
+            Object last = keys.get(keys.size() - 1);
+            while (keys.size() < size)
+                keys.add(last);
+            String sql = sqlTemplate.replace(KEYS, Util.questionMarks(size));
+            query = db.select(sql).parameters(keys.toArray()).get(keyed(mapperFactory.call()))
+                    .subscribeOn(scheduler).toList();
+        } catch (RuntimeException e) {
+            // a flush from the window timer has no caller to throw to and
+            // the other lookups of the batch would never terminate
+            emitError(batch, e);
+            return;
+        }
+        query.subscribe(new Observer<List<Keyed<K, T>>>() {
+
+            @Override
+            public void onCompleted() {
+                // onNext has already been called
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                emitError(batch, e);
+            }
+
+            @Override
+            public void onNext(List<Keyed<K, T>> rows) {
+                Map<K, List<T>> byKey = new HashMap<K, List<T>>();
+                for (Keyed<K, T> row : rows) {
+                    List<T> list = byKey.get(row.key);
+                    if (list == null) {
+                        list = new ArrayList<T>();
+                        byKey.put(row.key, list);
+                    }
+                    list.add(row.value);
+                }
+                for (Map.Entry<K, List<AsyncSubject<List<T>>>> entry : batch.entrySet()) {
+                    List<T> list = byKey.get(entry.getKey());
+                    if (list == null)
+                        list = Collections.emptyList();
+                    for (AsyncSubject<List<T>> subject : entry.getValue()) {
+                        subject.onNext(list);
+                        subject.onCompleted();
+                    }
+                }
+            }
+        });
+    }
+
+    private static <T> void emitError(Map<?, List<AsyncSubject<List<T>>>> batch, Throwable e) {
+        for (List<AsyncSubject<List<T>>> subjects : batch.values())
+            for (AsyncSubject<List<T>> subject : subjects)
+                subject.onError(e);
+    }
+
+    private static final class Keyed<K, T> {
+        final K key;
+        final T value;
+
+        Keyed(K key, T value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Returns a mapper that records the key column value (converted to the
+     * key class) with the mapped row.
+     */
+    private ResultSetMapper<Keyed<K, T>> keyed(final ResultSetMapper<? extends T> mapper) {
+        return new ResultSetMapper<Keyed<K, T>>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Keyed<K, T> call(ResultSet rs) throws SQLException {
+                K key = (K) Util.autoMap(rs.getObject(keyColumn), keyClass);
+                return new Keyed<K, T>(key, mapper.call(rs));
+            }
+        };
+    }
+
+    /**
+     * Builds a {@link BatchLoader}. The sql template must contain
+     * {@link BatchLoader#KEYS} in an <code>in</code> list, for example
+     * <code>select id, name from person where id in ({keys})</code>, and must
+     * select the key column.
+     *
+     * @param <K>
+     *            key type
+     */
+    public static final class Builder<K> {
+
+        private static final int[] DEFAULT_BUCKETS = new int[] { 1, 8, 32, 128 };
+
+        private final Database db;
+        private final String sqlTemplate;
+        private final String keyColumn;
+        private final Class<K> keyClass;
+        private int[] buckets = DEFAULT_BUCKETS;
+        private long windowMs = 1;
+        private Scheduler scheduler = Schedulers.io();
+
+        /**
+         * Constructor.
+         *
+         * @param sqlTemplate
+         *            select statement containing {@link #KEYS}
+         * @param keyColumn
+         *            the key column
+         * @param keyClass
+         *            the class of keys
+         * @param db
+         */
+        public Builder(String sqlTemplate, String keyColumn, Class<K> keyClass, Database db) {
+            checkNotNull(sqlTemplate);
+            checkNotNull(keyColumn);
+            checkNotNull(keyClass);
+            checkArgument(sqlTemplate.contains(KEYS), "sql must contain " + KEYS);
+            this.sqlTemplate = sqlTemplate;
+            this.keyColumn = keyColumn;
+            this.keyClass = keyClass;
+            this.db = db;
+        }
+
+        /**
+         * Sets the time lookups are collected for before their query is run.
+         * A query is also run as soon as the largest bucket size is reached.
+         * Defaults to 1ms.
+         *
+         * @param duration
+         * @param unit
+         * @return this
+         */
+        public Builder<K> window(long duration, TimeUnit unit) {
+            checkArgument(duration >= 0, "window cannot be negative");
+            this.windowMs = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Sets the ascending numbers of keys that queries are made with. The
+         * number of distinct keys of a batch is rounded up to the next bucket
+         * size and the largest bucket size is the maximum batch size. Defaults
+         * to 1, 8, 32, 128.
+         *
+         * @param buckets
+         *            ascending positive sizes
+         * @return this
+         */
+        public Builder<K> buckets(int... buckets) {
+            checkArgument(buckets.length > 0, "at least one bucket size required");
+            for (int i = 0; i < buckets.length; i++)
+                checkArgument(buckets[i] > 0 && (i == 0 || buckets[i] > buckets[i - 1]),
+                        "bucket sizes must be positive and ascending");
+            this.buckets = Arrays.copyOf(buckets, buckets.length);
+            return this;
+        }
+
+        /**
+         * Sets the scheduler used for the window timer and that queries are
+         * subscribed on. Defaults to {@link Schedulers#io()}.
+         *
+         * @param scheduler
+         * @return this
+         */
+        public Builder<K> scheduler(Scheduler scheduler) {
+            checkNotNull(scheduler);
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Returns a loader that transforms rows using the given function.
+         *
+         * @param function
+         * @return loader
+         */
+        public <T> BatchLoader<K, T> get(final ResultSetMapper<? extends T> function) {
+            return build(new Func0<ResultSetMapper<? extends T>>() {
+                @Override
+                public ResultSetMapper<? extends T> call() {
+                    return function;
+                }
+            });
+        }
+
+        /**
+         * Returns a loader that automaps rows to instances of
+         * <code>cls</code>. See {@link QuerySelect.Builder#autoMap(Class)}.
+         *
+         * @param cls
+         * @return loader
+         */
+        public <T> BatchLoader<K, T> autoMap(final Class<T> cls) {
+            return build(new Func0<ResultSetMapper<? extends T>>() {
+                @Override
+                public ResultSetMapper<? extends T> call() {
+                    return Util.autoMap(cls);
+                }
+            });
+        }
+
+        /**
+         * Returns a loader that automaps the first column of rows to
+         * <code>cls</code>.
+         *
+         * @param cls
+         * @return loader
+         */
+        public <T> BatchLoader<K, T> getAs(final Class<T> cls) {
+            return build(new Func0<ResultSetMapper<? extends T>>() {
+                @Override
+                public ResultSetMapper<? extends T> call() {
+                    return Tuples.single(cls);
+                }
+            });
+        }
+
+        <T> BatchLoader<K, T> build(
+                Func0<? extends ResultSetMapper<? extends T>> mapperFactory) {
+            return new BatchLoader<K, T>(db, sqlTemplate, keyColumn, keyClass, buckets, windowMs,
+                    scheduler, mapperFactory);
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static com.github.davidmoten.rx.jdbc.Conditions.checkArgument;
+import static com.github.davidmoten.rx.jdbc.Conditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Immutable policy for caching the mapped results of select queries (see
+ * {@link QuerySelect.Builder#cached(CachePolicy)}). All queries of a
+ * {@link Database} that use the same policy instance share one bounded cache
+ * so a policy is typically held in a constant.
+ */
+public final class CachePolicy {
+
+    private final long ttlMs;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final Set<String> tables;
+    private final Scheduler clock;
+
+    private CachePolicy(long ttlMs, int maxEntries, long maxWeight, Set<String> tables,
+            Scheduler clock) {
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.tables = tables;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns a builder of a {@link CachePolicy}.
+     *
+     * @return builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    long ttlMs() {
+        return ttlMs;
+    }
+
+    int maxEntries() {
+        return maxEntries;
+    }
+
+    long maxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Returns the normalized names of the tables whose updates invalidate the
+     * cache.
+     *
+     * @return table names
+     */
+    Set<String> tables() {
+        return tables;
+    }
+
+    /**
+     * Returns the current time in milliseconds used for expiry.
+     *
+     * @return now
+     */
+    long now() {
+        return clock.now();
+    }
+
+    /**
+     * Returns the name of a table in the form used for matching updates
+     * (lower case and without schema or quotes).
+     *
+     * @param table
+     * @return normalized table name
+     */
+    static String normalizeTable(String table) {
+        String s = table.trim();
+        int i = s.lastIndexOf('.');
+        if (i >= 0)
+            s = s.substring(i + 1);
+        return s.replaceAll("[\"`\\[\\]]", "").toLowerCase();
+    }
+
+    @Override
+    public String toString() {
+        return "CachePolicy [ttlMs=" + ttlMs + ", maxEntries=" + maxEntries + ", maxWeight="
+                + maxWeight + ", tables=" + tables + "]";
+    }
+
+    /**
+     * Builds a {@link CachePolicy}.
+     */
+    public static final class Builder {
+
+        private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+        private long ttlMs = Long.MAX_VALUE;
+        private int maxEntries = DEFAULT_MAX_ENTRIES;
+        private long maxWeight = Long.MAX_VALUE;
+        private final Set<String> tables = new HashSet<String>();
+        private Scheduler clock = Schedulers.immediate();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the time an entry is used for after it is loaded. Defaults to
+         * no expiry.
+         *
+         * @param duration
+         * @param unit
+         * @return this
+         */
+        public Builder ttl(long duration, TimeUnit unit) {
+            checkArgument(duration > 0, "ttl must be positive");
+            this.ttlMs = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of entries (distinct queries and parameters)
+         * held. The least recently used entries are evicted first. Defaults
+         * to 1000.
+         *
+         * @param maxEntries
+         * @return this
+         */
+        public Builder maxEntries(int maxEntries) {
+            checkArgument(maxEntries > 0, "maxEntries must be positive");
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total weight of the entries held where the weight
+         * of an entry is its number of rows (at least 1). The least recently
+         * used entries are evicted first. Defaults to unbounded.
+         *
+         * @param maxWeight
+         * @return this
+         */
+        public Builder maxWeight(long maxWeight) {
+            checkArgument(maxWeight > 0, "maxWeight must be positive");
+            this.maxWeight = maxWeight;
+            return this;
+        }
+
+        /**
+         * Declares tables read by the cached queries. Execution of an insert,
+         * update, delete or merge on one of these tables by the
+         * {@link Database} invalidates the cache (as does the commit of a
+         * transaction that did so). Statements whose table cannot be
+         * determined (for example DDL or procedure calls) invalidate all caches
+         * that declare tables.
+         *
+         * @param tables
+         *            table names (case insensitive)
+         * @return this
+         */
+        public Builder tables(String... tables) {
+            for (String table : tables) {
+                checkNotNull(table);
+                this.tables.add(normalizeTable(table));
+            }
+            return this;
+        }
+
+        /**
+         * Sets the scheduler whose {@link Scheduler#now()} is used to expire
+         * entries. Defaults to {@link Schedulers#immediate()} (system time).
+         *
+         * @param clock
+         * @return this
+         */
+        public Builder clock(Scheduler clock) {
+            checkNotNull(clock);
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Returns the policy.
+         *
+         * @return cache policy
+         */
+        public CachePolicy build() {
+            return new CachePolicy(ttlMs, maxEntries, maxWeight,
+                    Collections.unmodifiableSet(new HashSet<String>(tables)), clock);
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.github.davidmoten.rx.jdbc;
+
+/**
+ * Immutable snapshot of the statistics of a bounded cache.
+ */
+public final class CacheStatistics {
+
+    private final int size;
+    private final int maxSize;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    /**
+     * Constructor.
+     * 
+     * @param size
+     *            current number of entries
+     * @param maxSize
+     *            maximum number of entries
+     * @param hits
+     *            number of lookups that found an entry
+     * @param misses
+     *            number of lookups that did not find an entry
+     * @param evictions
+     *            number of entries removed to keep within maxSize
+     */
+    public CacheStatistics(int size, int maxSize, long hits, long misses, long evictions) {
+        this.size = size;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics [size=" + size + ", maxSize=" + maxSize + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+}
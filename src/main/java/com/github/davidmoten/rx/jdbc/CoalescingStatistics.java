@@ -0,0 +1,48 @@
+package com.github.davidmoten.rx.jdbc;
+
+/**
+ * Immutable snapshot of the statistics of the coalescing of identical
+ * in-flight select queries.
+ */
+public final class CoalescingStatistics {
+
+    private final int inFlight;
+    private final long executions;
+    private final long coalesced;
+
+    /**
+     * Constructor.
+     * 
+     * @param inFlight
+     *            current number of distinct executions in flight
+     * @param executions
+     *            number of executions started
+     * @param coalesced
+     *            number of subscriptions that shared an execution already in
+     *            flight (executions saved)
+     */
+    public CoalescingStatistics(int inFlight, long executions, long coalesced) {
+        this.inFlight = inFlight;
+        this.executions = executions;
+        this.coalesced = coalesced;
+    }
+
+    public int inFlight() {
+        return inFlight;
+    }
+
+    public long executions() {
+        return executions;
+    }
+
+    public long coalesced() {
+        return coalesced;
+    }
+
+    @Override
+    public String toString() {
+        return "CoalescingStatistics [inFlight=" + inFlight + ", executions=" + executions
+                + ", coalesced=" + coalesced + "]";
+    }
+
+}
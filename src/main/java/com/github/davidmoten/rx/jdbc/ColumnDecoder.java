@@ -0,0 +1,27 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads the value of one column of the current row of a {@link ResultSet}
+ * using a single driver call. Instances are chosen once per column (by sql
+ * type and target class) rather than for every cell. See
+ * {@link Util#columnDecoder(int, Class)}.
+ */
+interface ColumnDecoder {
+
+    /**
+     * Returns the value of column <code>i</code> in the current row of
+     * <code>rs</code> or null if the value is SQL NULL.
+     * 
+     * @param rs
+     *            result set positioned on a row
+     * @param i
+     *            column index (1-based)
+     * @return column value
+     * @throws SQLException
+     */
+    Object decode(ResultSet rs, int i) throws SQLException;
+
+}
@@ -0,0 +1,21 @@
+package com.github.davidmoten.rx.jdbc;
+
+/**
+ * When a batched update run outside of a transaction commits (see
+ * {@link QueryUpdate.Builder#batchSize(int)}).
+ */
+public enum CommitPolicy {
+
+    /**
+     * Commit after each batch is executed so that a failure loses at most the
+     * current batch. Suits long running or unbounded parameter streams.
+     */
+    PER_BATCH,
+
+    /**
+     * Commit once after the last batch so that either all or none of the
+     * parameter sets are applied.
+     */
+    AT_END;
+
+}
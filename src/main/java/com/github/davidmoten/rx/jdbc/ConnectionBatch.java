@@ -15,19 +15,72 @@ import java.sql.SQLXML;
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Struct;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Executor;
 
+/**
+ * The connection of a transaction that batches updates. One batched statement
+ * is kept per distinct sql. The pending batches of all statements are
+ * executed together, in the order the statements were first used, when any of
+ * them fills, before any other statement is prepared on the connection and on
+ * commit. Executing in order of first use means that, for example, rows
+ * inserted into a parent table are written before the rows of child tables
+ * that reference them.
+ * 
+ * <p>
+ * The count of rows affected by a batch executed on behalf of another
+ * statement is held by its own statement and reported by the next execution
+ * of that statement (see {@link PreparedStatementBatch#executeUpdate()}).
+ * The last parameter set of every batched update executes the pending
+ * batches and takes its statement's count so no count is lost by an update
+ * that completes before commit. Updates of the same sql within a transaction
+ * share one statement so the split of counts between them follows the order
+ * of their executions rather than which update added each row.
+ */
 class ConnectionBatch implements Connection {
 
     private final Connection con;
-    private final int batchSize;
-    private PreparedStatementBatch ps;
 
-    ConnectionBatch(Connection con, int batchSize) {
+    // guarded by this
+    private final Map<String, PreparedStatementBatch> batches = new LinkedHashMap<String, PreparedStatementBatch>();
+
+    ConnectionBatch(Connection con) {
         this.con = con;
-        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the batched statement for the given sql, creating it if
+     * required.
+     * 
+     * @param sql
+     * @param autoGeneratedKeys
+     * @param batchSize
+     *            number of parameter sets after which the pending batches
+     *            are executed
+     * @return batched statement
+     */
+    synchronized PreparedStatementBatch prepareBatch(String sql, int autoGeneratedKeys,
+            int batchSize) {
+        PreparedStatementBatch ps = batches.get(sql);
+        if (ps == null) {
+            ps = new PreparedStatementBatch(this, con, sql, autoGeneratedKeys, batchSize);
+            batches.put(sql, ps);
+        }
+        return ps;
+    }
+
+    /**
+     * Executes the pending batches of all statements in order of their first
+     * use. Each statement accumulates its count to be reported by its next
+     * execution.
+     * 
+     * @throws SQLException
+     */
+    synchronized void executeBatches() throws SQLException {
+        for (PreparedStatementBatch ps : batches.values())
+            ps.executePending();
     }
 
     @Override
@@ -42,16 +95,19 @@ class ConnectionBatch implements Connection {
 
     @Override
     public Statement createStatement() throws SQLException {
+        executeBatches();
         return con.createStatement();
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql) throws SQLException {
-        throw new UnsupportedOperationException();
+        executeBatches();
+        return con.prepareStatement(sql);
     }
 
     @Override
     public CallableStatement prepareCall(String sql) throws SQLException {
+        executeBatches();
         return con.prepareCall(sql);
     }
 
@@ -72,24 +128,28 @@ class ConnectionBatch implements Connection {
 
     @Override
     public void commit() throws SQLException {
-        PreparedStatementBatch p = null;
-        synchronized (this) {
-            p = ps;
-        }
-        if (p != null) {
-            p.executeBatchRemaining();
-            // counts should be 0
-        }
+        executeBatches();
         con.commit();
     }
 
     @Override
     public void rollback() throws SQLException {
+        discardBatches();
         con.rollback();
     }
 
+    private synchronized void discardBatches() throws SQLException {
+        for (PreparedStatementBatch ps : batches.values())
+            ps.discardPending();
+    }
+
     @Override
     public void close() throws SQLException {
+        synchronized (this) {
+            for (PreparedStatementBatch ps : batches.values())
+                ps.closeStatement();
+            batches.clear();
+        }
         con.close();
     }
 
@@ -146,19 +206,22 @@ class ConnectionBatch implements Connection {
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency)
             throws SQLException {
-        throw new UnsupportedOperationException();
+        executeBatches();
+        return con.createStatement(resultSetType, resultSetConcurrency);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType,
             int resultSetConcurrency) throws SQLException {
-        throw new UnsupportedOperationException();
+        executeBatches();
+        return con.prepareStatement(sql, resultSetType, resultSetConcurrency);
     }
 
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
             throws SQLException {
-        throw new UnsupportedOperationException();
+        executeBatches();
+        return con.prepareCall(sql, resultSetType, resultSetConcurrency);
     }
 
     @Override
@@ -183,16 +246,20 @@ class ConnectionBatch implements Connection {
 
     @Override
     public Savepoint setSavepoint() throws SQLException {
+        executeBatches();
         return con.setSavepoint();
     }
 
     @Override
     public Savepoint setSavepoint(String name) throws SQLException {
+        executeBatches();
         return con.setSavepoint(name);
     }
 
     @Override
     public void rollback(Savepoint savepoint) throws SQLException {
+        // pending batches were added after the savepoint
+        discardBatches();
         con.rollback(savepoint);
     }
 
@@ -204,40 +271,42 @@ class ConnectionBatch implements Connection {
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency,
             int resultSetHoldability) throws SQLException {
-        throw new UnsupportedOperationException();
+        executeBatches();
+        return con.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType,
             int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        throw new UnsupportedOperationException();
+        executeBatches();
+        return con.prepareStatement(sql, resultSetType, resultSetConcurrency,
+                resultSetHoldability);
     }
 
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
             int resultSetHoldability) throws SQLException {
-        throw new UnsupportedOperationException();
+        executeBatches();
+        return con.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
             throws SQLException {
-        synchronized (this) {
-            if (ps == null) {
-                ps = new PreparedStatementBatch(con, sql, autoGeneratedKeys, batchSize);
-            }
-        }
-        return ps;
+        executeBatches();
+        return con.prepareStatement(sql, autoGeneratedKeys);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        executeBatches();
         return con.prepareStatement(sql, columnIndexes);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, String[] columnNames)
             throws SQLException {
+        executeBatches();
         return con.prepareStatement(sql, columnNames);
     }
 
@@ -321,16 +390,4 @@ class ConnectionBatch implements Connection {
         return con.getNetworkTimeout();
     }
 
-    public int executeBatchRemaining() {
-        PreparedStatementBatch p = null;
-        synchronized(this) {
-            p = ps;
-        }
-        if (p != null) {
-            return p.executeBatchRemaining();
-        } else {
-            return 0;
-        }
-    }
-
 }
@@ -0,0 +1,198 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * Decorates a {@link ConnectionProvider} so that prepared statements are cached
+ * per physical connection in a bounded least-recently-used cache keyed by sql,
+ * result set type and concurrency and generated keys mode. Most useful with a
+ * pooling connection provider (like {@link ConnectionProviderPooled}) where
+ * the same physical connection is handed out repeatedly.
+ */
+public final class ConnectionProviderStatementCaching implements ConnectionProvider {
+
+    private static final Logger log = LoggerFactory
+            .getLogger(ConnectionProviderStatementCaching.class);
+
+    /**
+     * Underlying connection provider.
+     */
+    private final ConnectionProvider cp;
+
+    /**
+     * Maximum number of idle statements cached for each physical connection.
+     */
+    private final int maxStatementsPerConnection;
+
+    /**
+     * Statement caches keyed by physical connection. Guarded by itself.
+     */
+    private final Map<Connection, PreparedStatementCache> caches = new IdentityHashMap<Connection, PreparedStatementCache>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Ensure idempotency of this.close() method.
+     */
+    private final AtomicBoolean isOpen = new AtomicBoolean(true);
+
+    /**
+     * Constructor.
+     *
+     * @param cp
+     *            underlying connection provider
+     * @param maxStatementsPerConnection
+     *            maximum number of idle prepared statements cached for each
+     *            physical connection
+     */
+    public ConnectionProviderStatementCaching(ConnectionProvider cp,
+            int maxStatementsPerConnection) {
+        Preconditions.checkNotNull(cp, "cp should not be null");
+        Preconditions.checkArgument(maxStatementsPerConnection > 0,
+                "maxStatementsPerConnection must be positive");
+        this.cp = cp;
+        this.maxStatementsPerConnection = maxStatementsPerConnection;
+    }
+
+    @Override
+    public Connection get() {
+        Connection con = cp.get();
+        Connection physical = physical(con);
+        PreparedStatementCache cache;
+        synchronized (caches) {
+            removeCachesOfClosedConnections();
+            cache = caches.get(physical);
+            if (cache == null) {
+                cache = new PreparedStatementCache(maxStatementsPerConnection, hits, misses,
+                        evictions);
+                caches.put(physical, cache);
+            }
+        }
+        return new ConnectionStatementCaching(con, physical, cache);
+    }
+
+    /**
+     * Returns the number of times a cached prepared statement was reused.
+     *
+     * @return number of cache hits
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of times a prepared statement had to be prepared
+     * because none was cached.
+     *
+     * @return number of cache misses
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of cached statements closed to keep within the
+     * maximum size of a connection's cache.
+     *
+     * @return number of evictions
+     */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the total number of idle prepared statements currently cached
+     * across all physical connections.
+     *
+     * @return number of cached statements
+     */
+    public int size() {
+        synchronized (caches) {
+            int size = 0;
+            for (PreparedStatementCache cache : caches.values()) {
+                size += cache.size();
+            }
+            return size;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (isOpen.getAndSet(false)) {
+            List<PreparedStatementCache> list;
+            synchronized (caches) {
+                list = new ArrayList<PreparedStatementCache>(caches.values());
+                caches.clear();
+            }
+            for (PreparedStatementCache cache : list) {
+                cache.close();
+            }
+            cp.close();
+        }
+    }
+
+    /**
+     * Removes the caches of physical connections that have been closed (for
+     * instance evicted from a pool). Must be called holding the caches lock.
+     */
+    private void removeCachesOfClosedConnections() {
+        Iterator<Entry<Connection, PreparedStatementCache>> it = caches.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry<Connection, PreparedStatementCache> entry = it.next();
+            if (isClosed(entry.getKey())) {
+                it.remove();
+                entry.getValue().close();
+            }
+        }
+    }
+
+    private static boolean isClosed(Connection con) {
+        try {
+            return con.isClosed();
+        } catch (SQLException e) {
+            log.debug(e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Returns the physical connection wrapped by the given connection (for
+     * instance by a pool proxy) or the connection itself if it cannot be
+     * unwrapped.
+     *
+     * @param con
+     * @return physical connection
+     */
+    private static Connection physical(Connection con) {
+        try {
+            Connection c = con.unwrap(Connection.class);
+            if (c != null)
+                return c;
+            else
+                return con;
+        } catch (SQLException e) {
+            log.debug(e.getMessage());
+            return con;
+        } catch (RuntimeException e) {
+            log.debug(e.getMessage());
+            return con;
+        }
+    }
+
+}
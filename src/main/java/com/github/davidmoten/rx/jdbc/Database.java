@@ -64,10 +64,6 @@ final public class Database {
 
     private final ThreadLocal<Boolean> isTransactionOpen = new ThreadLocal<Boolean>();
 
-    static final ThreadLocal<ResultSetCache> rsCache = new ThreadLocal<ResultSetCache>();
-
-    static final ThreadLocal<AutoMapCache> autoMapCache = new ThreadLocal<AutoMapCache>();
-
     /**
      * Records the result of the last finished transaction (committed =
      * <code>true</code> or rolled back = <code>false</code>).
@@ -90,6 +86,19 @@ final public class Database {
      */
     private final Func1<ResultSet, ? extends ResultSet> resultSetTransform;
 
+    /**
+     * Coalesces identical in-flight select queries that request it. Shared
+     * with the databases derived from this one by {@link #asynchronous()}.
+     */
+    private final SelectCoalescer selectCoalescer;
+
+    /**
+     * Caches the results of select queries that request it. Shared with the
+     * databases derived from this one by {@link #asynchronous()} so that their
+     * updates invalidate the results cached by this one and vice versa.
+     */
+    private final ResultCaches resultCaches;
+
     /**
      * Constructor.
      * 
@@ -117,6 +126,13 @@ final public class Database {
      */
     public Database(final ConnectionProvider cp, Func0<Scheduler> nonTransactionalSchedulerFactory,
             Func1<ResultSet, ? extends ResultSet> resultSetTransform) {
+        this(cp, nonTransactionalSchedulerFactory, resultSetTransform, new SelectCoalescer(),
+                new ResultCaches());
+    }
+
+    private Database(final ConnectionProvider cp, Func0<Scheduler> nonTransactionalSchedulerFactory,
+            Func1<ResultSet, ? extends ResultSet> resultSetTransform,
+            SelectCoalescer selectCoalescer, ResultCaches resultCaches) {
         Conditions.checkNotNull(cp);
         this.cp = cp;
         this.currentConnectionProvider.set(cp);
@@ -126,6 +142,8 @@ final public class Database {
             this.nonTransactionalSchedulerFactory = CURRENT_THREAD_SCHEDULER_FACTORY;
         this.context = new QueryContext(this);
         this.resultSetTransform = resultSetTransform;
+        this.selectCoalescer = selectCoalescer;
+        this.resultCaches = resultCaches;
     }
 
     /**
@@ -138,6 +156,16 @@ final public class Database {
         return resultSetTransform;
     }
 
+    /**
+     * Returns true if and only if a {@link ResultSet} transform other than
+     * the default (identity) has been set.
+     * 
+     * @return true if select results are transformed
+     */
+    boolean isResultSetTransformed() {
+        return resultSetTransform != IDENTITY_TRANSFORM;
+    }
+
     /**
      * Returns the {@link ConnectionProvider}.
      * 
@@ -282,6 +310,80 @@ final public class Database {
         return new Builder();
     }
 
+    /**
+     * Returns the statistics of the cache of parsed sql (jdbc sql, parameter
+     * names and count) used when select and update queries are built. The
+     * cache is shared by all {@link Database} instances and threads.
+     *
+     * @return parsed sql cache statistics
+     */
+    public static CacheStatistics parsedSqlCacheStatistics() {
+        return JdbcQueryCache.INSTANCE.statistics();
+    }
+
+    /**
+     * Returns the statistics of the cache of reflective mapping information
+     * (annotated interface methods, constructors) used by
+     * {@link QuerySelect.Builder#autoMap(Class)}. The cache is shared by all
+     * {@link Database} instances and threads.
+     *
+     * @return automap cache statistics
+     */
+    public static CacheStatistics autoMapCacheStatistics() {
+        return AutoMapCaches.INSTANCE.statistics();
+    }
+
+    /**
+     * Returns the statistics of the coalescing of identical in-flight select
+     * queries of this {@link Database} (see
+     * {@link QuerySelect.Builder#coalesce()}).
+     *
+     * @return select coalescing statistics
+     */
+    public CoalescingStatistics selectCoalescingStatistics() {
+        return selectCoalescer.statistics();
+    }
+
+    SelectCoalescer selectCoalescer() {
+        return selectCoalescer;
+    }
+
+    /**
+     * Returns the statistics of the cache of this {@link Database} used by
+     * select queries with the given policy (see
+     * {@link QuerySelect.Builder#cached(CachePolicy)}).
+     *
+     * @param policy
+     *            cache policy
+     * @return result cache statistics
+     */
+    public ResultCacheStatistics resultCacheStatistics(CachePolicy policy) {
+        return resultCaches.statistics(policy);
+    }
+
+    /**
+     * Invalidates the cached select query results of the policies that
+     * declare the given table (see {@link CachePolicy.Builder#tables}). Use
+     * when the table is changed other than by this {@link Database}.
+     *
+     * @param table
+     *            table name (case insensitive)
+     */
+    public void invalidateCache(String table) {
+        resultCaches.invalidateTable(table);
+    }
+
+    /**
+     * Invalidates all cached select query results.
+     */
+    public void invalidateCache() {
+        resultCaches.invalidateAll();
+    }
+
+    ResultCaches resultCaches() {
+        return resultCaches;
+    }
+
     /**
      * Builds a {@link Database}.
      */
@@ -295,6 +397,7 @@ final public class Database {
         private String password;
         private Func1<ResultSet, ? extends ResultSet> resultSetTransform = IDENTITY_TRANSFORM;
         private Action1<HikariDataSource> configureDataSource;
+        private int statementCacheSize;
 
         private static class Pool {
             final int minSize;
@@ -428,6 +531,21 @@ final public class Database {
             return this;
         }
 
+        /**
+         * Requests that prepared statements are cached per physical connection
+         * (see {@link ConnectionProviderStatementCaching}) with at most
+         * <code>maxStatementsPerConnection</code> idle statements cached for
+         * each connection. Most effective with a connection pool.
+         * 
+         * @param maxStatementsPerConnection
+         *            maximum size of each connection's statement cache
+         * @return this
+         */
+        public Builder statementCacheSize(int maxStatementsPerConnection) {
+            this.statementCacheSize = maxStatementsPerConnection;
+            return this;
+        }
+
         /**
          * Returns a {@link Database}.
          * 
@@ -441,7 +559,13 @@ final public class Database {
                 Preconditions.checkArgument(configureDataSource == null, "cannot configure data source unless pool specified");
                 cp = new ConnectionProviderFromUrl(url, username, password);
             }
-            return new Database(cp, nonTransactionalSchedulerFactory, resultSetTransform);
+            final ConnectionProvider provider;
+            if (statementCacheSize > 0) {
+                provider = new ConnectionProviderStatementCaching(cp, statementCacheSize);
+            } else {
+                provider = cp;
+            }
+            return new Database(provider, nonTransactionalSchedulerFactory, resultSetTransform);
         }
     }
 
@@ -468,6 +592,19 @@ final public class Database {
         return new QuerySelect.Builder(sql, this);
     }
 
+    /**
+     * Returns a builder of a {@link PreparedSelect}, a select query and
+     * mapping assembled once that can then be executed many times with
+     * different parameters at little more cost than the jdbc work itself.
+     * 
+     * @param sql
+     *            a select statement with ? or named parameters
+     * @return prepared select builder
+     */
+    public PreparedSelect.Builder prepare(String sql) {
+        return new PreparedSelect.Builder(sql, this);
+    }
+
     /**
      * Returns a {@link QuerySelect.Builder} builder and defers specifying sql
      * to the `autoMap` Class parameter.
@@ -478,6 +615,78 @@ final public class Database {
         return new QuerySelect.Builder(null, this);
     }
 
+    /**
+     * Returns a {@link QuerySelectPartitioned.Builder} for a select that is
+     * run as several queries at once, each over a range of values of
+     * <code>partitionColumn</code> and on its own connection, with the results
+     * merged. The sql must contain {@link QuerySelectPartitioned#RANGE} where
+     * the range condition is to be inserted, for example
+     * <code>select * from person where {range}</code>.
+     * 
+     * @param sqlTemplate
+     *            a select statement containing {@link QuerySelectPartitioned#RANGE}
+     * @param partitionColumn
+     *            the column to partition on
+     * @return partitioned select builder
+     */
+    public QuerySelectPartitioned.Builder selectPartitioned(String sqlTemplate,
+            String partitionColumn) {
+        return new QuerySelectPartitioned.Builder(sqlTemplate, partitionColumn, this);
+    }
+
+    /**
+     * Returns a {@link QueryUpdatePartitioned.Builder} for a batched update
+     * whose parameter sets are partitioned by key into lanes that write at
+     * once, each on its own connection with its own batches and commits.
+     * Parameter sets with the same key are executed in order by the same lane.
+     *
+     * @param sql
+     *            an update statement
+     * @return partitioned update builder
+     */
+    public QueryUpdatePartitioned.Builder updatePartitioned(String sql) {
+        return new QueryUpdatePartitioned.Builder(sql, this);
+    }
+
+    /**
+     * Returns a {@link QuerySelectKeyset.Builder} for a select that reads its
+     * rows in pages ordered by <code>keyColumn</code> using keyset pagination
+     * (<code>where keyColumn &gt; ? order by keyColumn</code>) so that each
+     * page uses a short-lived connection and cursor. The sql must contain
+     * {@link QuerySelectKeyset#RANGE} where the key condition is to be
+     * inserted and must not have an order by clause, for example
+     * <code>select id, name from person where {range}</code>.
+     * 
+     * @param sqlTemplate
+     *            a select statement containing {@link QuerySelectKeyset#RANGE}
+     * @param keyColumn
+     *            a unique non-null column selected by the query
+     * @return keyset paginated select builder
+     */
+    public QuerySelectKeyset.Builder selectKeyset(String sqlTemplate, String keyColumn) {
+        return new QuerySelectKeyset.Builder(sqlTemplate, keyColumn, this);
+    }
+
+    /**
+     * Returns a builder of a {@link BatchLoader} that combines lookups of
+     * rows by key made at about the same time into one query with an
+     * <code>in</code> list. The sql must contain {@link BatchLoader#KEYS} in
+     * the <code>in</code> list, for example
+     * <code>select id, name from person where id in ({keys})</code>.
+     * 
+     * @param sqlTemplate
+     *            a select statement containing {@link BatchLoader#KEYS}
+     * @param keyColumn
+     *            the key column selected by the query
+     * @param keyClass
+     *            the class of the keys
+     * @return batch loader builder
+     */
+    public <K> BatchLoader.Builder<K> batchLoader(String sqlTemplate, String keyColumn,
+            Class<K> keyClass) {
+        return new BatchLoader.Builder<K>(sqlTemplate, keyColumn, keyClass, this);
+    }
+
     /**
      * Returns a {@link QueryUpdate.Builder} builder based on the given
      * update/insert/delete/DDL statement sql.
@@ -685,7 +894,7 @@ final public class Database {
         if (batchSize > 1) {
             if (!(currentConnectionProvider.get() instanceof ConnectionProviderBatch)) {
                 currentConnectionProvider
-                        .set(new ConnectionProviderBatch(connectionProvider(), batchSize));
+                        .set(new ConnectionProviderBatch(connectionProvider()));
             }
         }
     }
@@ -705,7 +914,6 @@ final public class Database {
     void endTransactionSubscribe() {
         log.debug("endTransactionSubscribe");
         currentSchedulerFactory.set(null);
-        rsCache.set(null);
     }
 
     /**
@@ -719,7 +927,6 @@ final public class Database {
         }
         currentConnectionProvider.set(cp);
         isTransactionOpen.set(false);
-        rsCache.set(null);
     }
 
     /**
@@ -973,12 +1180,15 @@ final public class Database {
     /**
      * Returns a Database based on the current Database except all
      * non-transactional queries run on the scheduler provided by the given
-     * factory.
+     * factory. The returned Database shares the select coalescing and result
+     * caches of this one so that updates run through either invalidate the
+     * cached results of both.
      * 
      * @return new Database instance
      */
     public Database asynchronous(final Func0<Scheduler> nonTransactionalSchedulerFactory) {
-        return new Database(cp, nonTransactionalSchedulerFactory);
+        return new Database(cp, nonTransactionalSchedulerFactory, IDENTITY_TRANSFORM,
+                selectCoalescer, resultCaches);
     }
 
     /**
@@ -0,0 +1,75 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.davidmoten.rx.jdbc.NamedParameters.JdbcQuery;
+
+/**
+ * Bounded cache of parsed sql keyed by the sql as written (possibly with
+ * named parameters). {@link #INSTANCE} is shared by all threads so that the
+ * sql of a query is parsed once rather than every time a query is built.
+ * Lookups do not lock. When the cache is full an arbitrary entry is evicted.
+ */
+final class JdbcQueryCache {
+
+    /**
+     * Default maximum number of sql statements held.
+     */
+    static final int DEFAULT_MAX_SIZE = 1024;
+
+    /**
+     * The cache used by {@link QuerySelect} and {@link QueryUpdate}.
+     */
+    static final JdbcQueryCache INSTANCE = new JdbcQueryCache(DEFAULT_MAX_SIZE);
+
+    private final int maxSize;
+    private final ConcurrentMap<String, JdbcQuery> cache = new ConcurrentHashMap<String, JdbcQuery>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    JdbcQueryCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the parsed form of the given sql, parsing it if not cached.
+     * 
+     * @param sql
+     *            sql with ? or named parameters
+     * @return parsed sql
+     */
+    JdbcQuery get(String sql) {
+        JdbcQuery q = cache.get(sql);
+        if (q != null) {
+            hits.incrementAndGet();
+            return q;
+        }
+        misses.incrementAndGet();
+        // a concurrent duplicate parse is harmless
+        q = NamedParameters.parse(sql);
+        while (cache.size() >= maxSize) {
+            Iterator<String> it = cache.keySet().iterator();
+            if (!it.hasNext())
+                break;
+            if (cache.remove(it.next()) != null)
+                evictions.incrementAndGet();
+        }
+        JdbcQuery existing = cache.putIfAbsent(sql, q);
+        return existing != null ? existing : q;
+    }
+
+    /**
+     * Returns the current statistics of the cache.
+     * 
+     * @return statistics
+     */
+    CacheStatistics statistics() {
+        return new CacheStatistics(cache.size(), maxSize, hits.get(), misses.get(),
+                evictions.get());
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.github.davidmoten.rx.jdbc;
+
+/**
+ * Immutable snapshot of the progress of one lane of a partitioned update (see
+ * {@link QueryUpdatePartitioned.Builder#onLaneStatistics(rx.functions.Action1)}).
+ */
+public final class LaneStatistics {
+
+    private final int lane;
+    private final long batches;
+    private final long rows;
+    private final long count;
+    private final long elapsedNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param lane
+     *            index of the lane (from 0)
+     * @param batches
+     *            number of batches executed by the lane
+     * @param rows
+     *            number of parameter sets executed by the lane
+     * @param count
+     *            number of rows affected by the lane
+     * @param elapsedNanos
+     *            time since the lane started
+     */
+    public LaneStatistics(int lane, long batches, long rows, long count, long elapsedNanos) {
+        this.lane = lane;
+        this.batches = batches;
+        this.rows = rows;
+        this.count = count;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int lane() {
+        return lane;
+    }
+
+    public long batches() {
+        return batches;
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long elapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the mean number of parameter sets executed per second since the
+     * lane started or 0 if no time has elapsed.
+     *
+     * @return throughput of the lane
+     */
+    public double rowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows * 1.0e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "LaneStatistics [lane=" + lane + ", batches=" + batches + ", rows=" + rows
+                + ", count=" + count + ", elapsedNanos=" + elapsedNanos + ", rowsPerSecond="
+                + rowsPerSecond() + "]";
+    }
+
+}
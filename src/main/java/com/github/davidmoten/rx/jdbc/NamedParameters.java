@@ -55,12 +55,34 @@ public final class NamedParameters {
     }
 
     public static class JdbcQuery {
+
+        /**
+         * The kind of statement as far as transaction control is concerned.
+         */
+        enum Kind {
+            BEGIN_TRANSACTION, COMMIT, ROLLBACK, OTHER;
+        }
+
         private final String sql;
         private final List<String> names;
+        private final int parametersCount;
+        private final Kind kind;
 
         public JdbcQuery(String sql, List<String> names) {
             this.sql = sql;
             this.names = names;
+            if (names.isEmpty())
+                this.parametersCount = Util.countQuestionMarkParameters(sql);
+            else
+                this.parametersCount = names.size();
+            if (sql.equals(QueryUpdateOnSubscribe.BEGIN_TRANSACTION))
+                this.kind = Kind.BEGIN_TRANSACTION;
+            else if (sql.equals(QueryUpdateOnSubscribe.COMMIT))
+                this.kind = Kind.COMMIT;
+            else if (sql.equals(QueryUpdateOnSubscribe.ROLLBACK))
+                this.kind = Kind.ROLLBACK;
+            else
+                this.kind = Kind.OTHER;
         }
 
         public String sql() {
@@ -71,6 +93,19 @@ public final class NamedParameters {
             return names;
         }
 
+        /**
+         * Returns the number of jdbc parameters in the sql.
+         * 
+         * @return number of parameters
+         */
+        public int parametersCount() {
+            return parametersCount;
+        }
+
+        Kind kind() {
+            return kind;
+        }
+
     }
 
 }
\ No newline at end of file
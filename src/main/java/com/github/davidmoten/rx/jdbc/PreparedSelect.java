@@ -0,0 +1,153 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static com.github.davidmoten.rx.jdbc.Conditions.checkArgument;
+import static com.github.davidmoten.rx.jdbc.Conditions.checkNotNull;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.davidmoten.rx.Functions;
+import com.github.davidmoten.rx.jdbc.tuple.Tuples;
+
+import rx.Observable;
+import rx.functions.Func0;
+
+/**
+ * A select query and mapping that is assembled once and can then be executed
+ * many times with different parameters at little more cost than the jdbc
+ * work itself. Suited to frequently run lookups such as selects by primary
+ * key. Instances are thread-safe.
+ *
+ * @param <T>
+ *            row type
+ */
+public final class PreparedSelect<T> {
+
+    private final QuerySelect query;
+
+    /**
+     * Returns the mapper for an execution. Automapping mappers record state
+     * about the ResultSet being read so are created per execution.
+     */
+    private final Func0<? extends ResultSetMapper<? extends T>> mapperFactory;
+
+    private PreparedSelect(QuerySelect query,
+            Func0<? extends ResultSetMapper<? extends T>> mapperFactory) {
+        this.query = query;
+        this.mapperFactory = mapperFactory;
+    }
+
+    /**
+     * Returns the rows of the query run with the given parameter values. The
+     * query is run on subscription (each time the Observable is subscribed
+     * to).
+     *
+     * @param values
+     *            the values of the ? (or named) parameters in order of
+     *            appearance in the sql
+     * @return the results of the query as an Observable
+     */
+    public Observable<T> execute(Object... values) {
+        List<String> names = query.names();
+        int count = query.parametersCount();
+        checkArgument(values.length == count,
+                "expected " + count + " parameters but was given " + values.length);
+        final List<Parameter> parameters = new ArrayList<Parameter>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (names.isEmpty())
+                parameters.add(new Parameter(values[i]));
+            else
+                parameters.add(new Parameter(names.get(i), values[i]));
+        }
+        // the scheduler depends on whether a transaction is open so is
+        // resolved on each subscription as is the mapper
+        return Observable.defer(new Func0<Observable<T>>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Observable<T> call() {
+                return (Observable<T>) QuerySelectOnSubscribe
+                        .execute(query, parameters, mapperFactory.call())
+                        .subscribeOn(query.context().scheduler());
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "PreparedSelect [sql=" + query.sql() + "]";
+    }
+
+    /**
+     * Builds a {@link PreparedSelect}.
+     */
+    public static final class Builder {
+
+        private final QuerySelect query;
+
+        /**
+         * Constructor.
+         *
+         * @param sql
+         *            select statement
+         * @param db
+         */
+        Builder(String sql, Database db) {
+            checkNotNull(sql);
+            this.query = new QuerySelect(sql, Observable.<Parameter> empty(), Observable.empty(),
+                    db.queryContext(), Functions.<ResultSet> identity());
+        }
+
+        /**
+         * Returns a handle that transforms rows using the given function. The
+         * function is shared by all executions so must be thread-safe.
+         *
+         * @param function
+         * @return prepared select
+         */
+        public <T> PreparedSelect<T> mapper(final ResultSetMapper<? extends T> function) {
+            checkNotNull(function);
+            return new PreparedSelect<T>(query, new Func0<ResultSetMapper<? extends T>>() {
+                @Override
+                public ResultSetMapper<? extends T> call() {
+                    return function;
+                }
+            });
+        }
+
+        /**
+         * Returns a handle that automaps rows to instances of
+         * <code>cls</code>. See {@link QuerySelect.Builder#autoMap(Class)}.
+         *
+         * @param cls
+         * @return prepared select
+         */
+        public <T> PreparedSelect<T> autoMap(final Class<T> cls) {
+            checkNotNull(cls);
+            return new PreparedSelect<T>(query, new Func0<ResultSetMapper<? extends T>>() {
+                @Override
+                public ResultSetMapper<? extends T> call() {
+                    return Util.autoMap(cls);
+                }
+            });
+        }
+
+        /**
+         * Returns a handle that automaps the first column of rows to
+         * <code>cls</code>.
+         *
+         * @param cls
+         * @return prepared select
+         */
+        public <T> PreparedSelect<T> getAs(final Class<T> cls) {
+            checkNotNull(cls);
+            return new PreparedSelect<T>(query, new Func0<ResultSetMapper<? extends T>>() {
+                @Override
+                public ResultSetMapper<? extends T> call() {
+                    return Tuples.single(cls);
+                }
+            });
+        }
+    }
+
+}
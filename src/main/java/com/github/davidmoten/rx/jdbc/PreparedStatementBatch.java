@@ -25,13 +25,25 @@ import java.util.Calendar;
 
 import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
 
+/**
+ * A statement of a {@link ConnectionBatch} whose updates are added to a jdbc
+ * batch. When the batch fills, the pending batches of all statements of the
+ * connection are executed in order.
+ */
 class PreparedStatementBatch implements PreparedStatement {
 
+    private final ConnectionBatch owner;
     private final PreparedStatement ps;
     private final int batchSize;
+
+    // guarded by owner
     private int added = 0;
+    // count of batches executed but not yet returned to a caller
+    private int executedCount;
 
-    PreparedStatementBatch(Connection con, String sql, int autoGeneratedKeys, int batchSize) {
+    PreparedStatementBatch(ConnectionBatch owner, Connection con, String sql,
+            int autoGeneratedKeys, int batchSize) {
+        this.owner = owner;
         this.batchSize = batchSize;
         try {
             this.ps = con.prepareStatement(sql, autoGeneratedKeys);
@@ -65,31 +77,70 @@ class PreparedStatementBatch implements PreparedStatement {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Adds the parameters to the batch, executing the batches of the
+     * connection if it is full.
+     * 
+     * @return the count of rows affected by this statement's batches executed
+     *         since the last call
+     */
     @Override
     public int executeUpdate() throws SQLException {
-        added++;
-        ps.addBatch();
-        if (added == batchSize) {
-            added = 0;
-            int[] counts = ps.executeBatch();
-            return sum(counts);
-        } else {
-            return 0;
+        synchronized (owner) {
+            added++;
+            ps.addBatch();
+            if (added == batchSize)
+                owner.executeBatches();
+            return takeExecutedCount();
         }
     }
 
+    /**
+     * Executes the pending batches of the connection (including this
+     * statement's).
+     * 
+     * @return the count of rows affected by this statement's batches executed
+     *         since the last call
+     */
     int executeBatchRemaining() {
-        if (added > 0) {
+        synchronized (owner) {
             try {
-                return sum(ps.executeBatch());
+                owner.executeBatches();
             } catch (SQLException e) {
                 throw new SQLRuntimeException(e);
             }
-        } else {
-            return 0;
+            return takeExecutedCount();
         }
     }
 
+    // call holding the lock on owner
+    void executePending() throws SQLException {
+        if (added > 0) {
+            added = 0;
+            executedCount += sum(ps.executeBatch());
+        }
+    }
+
+    // call holding the lock on owner
+    void discardPending() throws SQLException {
+        if (added > 0) {
+            added = 0;
+            ps.clearBatch();
+        }
+        executedCount = 0;
+    }
+
+    // call holding the lock on owner
+    void closeStatement() {
+        Util.closeQuietly(ps);
+    }
+
+    private int takeExecutedCount() {
+        int count = executedCount;
+        executedCount = 0;
+        return count;
+    }
+
     private static int sum(int[] array) {
         int sum = 0;
         for (int x : array) {
@@ -0,0 +1,191 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded least-recently-used cache of idle {@link PreparedStatement}s for one
+ * physical connection. A statement is removed from the cache while in use
+ * (checked out) and returned to the cache when closed (checked in) so that the
+ * same statement is never used by two queries at once.
+ */
+final class PreparedStatementCache {
+
+    private static final Logger log = LoggerFactory.getLogger(PreparedStatementCache.class);
+
+    private final int maxSize;
+
+    // guarded by this
+    private final LinkedHashMap<StatementKey, PreparedStatement> statements = new LinkedHashMap<StatementKey, PreparedStatement>(
+            16, 0.75f, true);
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize
+     *            maximum number of idle statements held
+     * @param hits
+     *            incremented when a cached statement is checked out
+     * @param misses
+     *            incremented when no cached statement is available
+     * @param evictions
+     *            incremented when a statement is closed to honour maxSize
+     */
+    PreparedStatementCache(int maxSize, AtomicLong hits, AtomicLong misses, AtomicLong evictions) {
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    /**
+     * Removes and returns the cached statement for the given key. Returns null
+     * if no idle statement is cached for the key.
+     *
+     * @param key
+     * @return cached statement or null
+     */
+    PreparedStatement checkOut(StatementKey key) {
+        PreparedStatement ps;
+        synchronized (this) {
+            ps = statements.remove(key);
+        }
+        if (ps == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return ps;
+    }
+
+    /**
+     * Returns a statement to the cache, closing it instead if it could not be
+     * reset or if an idle statement with the same key is already cached.
+     * Evicts (closes) the least recently used statements if the cache exceeds
+     * its maximum size.
+     *
+     * @param key
+     * @param ps
+     * @param resetSettings
+     *            if true then fetch size and max rows are reset to driver
+     *            defaults
+     */
+    void checkIn(StatementKey key, PreparedStatement ps, boolean resetSettings) {
+        try {
+            ps.clearParameters();
+            if (resetSettings) {
+                ps.setFetchSize(0);
+                ps.setMaxRows(0);
+            }
+        } catch (SQLException e) {
+            log.debug("could not reset statement so closing it: {}", e.getMessage());
+            Util.closeQuietly(ps);
+            return;
+        }
+        List<PreparedStatement> toClose = new ArrayList<PreparedStatement>();
+        synchronized (this) {
+            if (statements.containsKey(key)) {
+                toClose.add(ps);
+            } else {
+                statements.put(key, ps);
+                Iterator<Entry<StatementKey, PreparedStatement>> it = statements.entrySet()
+                        .iterator();
+                while (statements.size() > maxSize && it.hasNext()) {
+                    toClose.add(it.next().getValue());
+                    it.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+        for (PreparedStatement p : toClose) {
+            Util.closeQuietly(p);
+        }
+    }
+
+    /**
+     * Returns the number of idle statements in the cache.
+     *
+     * @return number of cached statements
+     */
+    synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * Closes all idle statements and empties the cache.
+     */
+    void close() {
+        List<PreparedStatement> list;
+        synchronized (this) {
+            list = new ArrayList<PreparedStatement>(statements.values());
+            statements.clear();
+        }
+        for (PreparedStatement ps : list) {
+            Util.closeQuietly(ps);
+        }
+    }
+
+    /**
+     * Identifies a prepared statement by its sql, result set type and
+     * concurrency and generated keys mode.
+     */
+    static final class StatementKey {
+        private final String sql;
+        private final int resultSetType;
+        private final int resultSetConcurrency;
+        private final int autoGeneratedKeys;
+
+        StatementKey(String sql, int resultSetType, int resultSetConcurrency,
+                int autoGeneratedKeys) {
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + autoGeneratedKeys;
+            result = prime * result + resultSetConcurrency;
+            result = prime * result + resultSetType;
+            result = prime * result + sql.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof StatementKey))
+                return false;
+            StatementKey other = (StatementKey) obj;
+            return autoGeneratedKeys == other.autoGeneratedKeys
+                    && resultSetConcurrency == other.resultSetConcurrency
+                    && resultSetType == other.resultSetType && sql.equals(other.sql);
+        }
+
+        @Override
+        public String toString() {
+            return "StatementKey [sql=" + sql + ", resultSetType=" + resultSetType
+                    + ", resultSetConcurrency=" + resultSetConcurrency + ", autoGeneratedKeys="
+                    + autoGeneratedKeys + "]";
+        }
+
+    }
+
+}
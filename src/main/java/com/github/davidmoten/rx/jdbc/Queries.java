@@ -17,6 +17,12 @@ import rx.functions.Func1;
  */
 final class Queries {
 
+    /**
+     * Number of results of each execution buffered while waiting for earlier
+     * executions when results are emitted in parameter order.
+     */
+    private static final int EAGER_BUFFER_SIZE = 128;
+
     private static final Func1<Parameter, Observable<Parameter>> FLATTEN_NAMED_MAPS = new Func1<Parameter, Observable<Parameter>>() {
 
         @SuppressWarnings("unchecked")
@@ -40,6 +46,33 @@ final class Queries {
         // prevent instantiation
     }
 
+    /**
+     * Returns the results of executing <code>execute</code> for each list of
+     * parameters. Executions run one after another unless the context of the
+     * query allows concurrent executions in which case up to
+     * {@link QueryContext#maxConcurrency()} run at once and their results are
+     * either emitted in parameter order (buffering the results of later
+     * executions, bounded by backpressure) or as they arrive.
+     * 
+     * @param parameterLists
+     *            the parameters for each execution
+     * @param execute
+     *            executes the query once
+     * @param context
+     *            query context
+     * @return results of all executions
+     */
+    static <T> Observable<T> executeAll(Observable<List<Parameter>> parameterLists,
+            Func1<List<Parameter>, Observable<T>> execute, QueryContext context) {
+        if (!context.isConcurrent())
+            return parameterLists.concatMap(execute);
+        else if (context.preserveOrder())
+            return parameterLists.concatMapEager(execute, EAGER_BUFFER_SIZE,
+                    context.maxConcurrency());
+        else
+            return parameterLists.flatMap(execute, context.maxConcurrency());
+    }
+
     /**
      * Returns the number of parameters required to run this query once. Roughly
      * corresponds to the number of ? characters in the sql but have to watch
@@ -48,7 +81,13 @@ final class Queries {
      * @return number of parameters in query sql
      */
     static int numParamsPerQuery(Query query) {
-        return Util.parametersCount(query);
+        // use the count cached with the parsed sql where available
+        if (query instanceof QuerySelect)
+            return ((QuerySelect) query).parametersCount();
+        else if (query instanceof QueryUpdate)
+            return ((QueryUpdate<?>) query).parametersCount();
+        else
+            return Util.parametersCount(query);
     }
 
     /**
@@ -3,7 +3,9 @@ package com.github.davidmoten.rx.jdbc;
 import java.sql.ResultSet;
 
 import rx.Scheduler;
+import rx.functions.Action1;
 import rx.functions.Func1;
+import rx.schedulers.Schedulers;
 
 /**
  * The threading and database connection context for mutliple jdbc queries.
@@ -14,24 +16,54 @@ final class QueryContext {
     private final Database db;
     private final int batchSize;
     private final Integer fetchSize;
+    private final int maxConcurrency;
+    private final boolean preserveOrder;
+    private final SelectOptions select;
+    private final BatchOptions batch;
 
     QueryContext(Database db) {
         this(db, 1, null);
     }
 
     public QueryContext(Database db, int batchSize, Integer fetchSize) {
+        this(db, batchSize, fetchSize, 1, true, SelectOptions.DEFAULT, BatchOptions.DEFAULT);
+    }
+
+    private QueryContext(Database db, int batchSize, Integer fetchSize, int maxConcurrency,
+            boolean preserveOrder, SelectOptions select, BatchOptions batch) {
         this.db = db;
         this.batchSize = batchSize;
         this.fetchSize = fetchSize;
+        this.maxConcurrency = maxConcurrency;
+        this.preserveOrder = preserveOrder;
+        this.select = select;
+        this.batch = batch;
+    }
+
+    private QueryContext select(SelectOptions select) {
+        return new QueryContext(db, batchSize, fetchSize, maxConcurrency, preserveOrder, select,
+                batch);
+    }
+
+    private QueryContext batch(BatchOptions batch) {
+        return new QueryContext(db, batchSize, fetchSize, maxConcurrency, preserveOrder, select,
+                batch);
     }
 
     /**
      * Returns the scheduler service to use to run queries with this context.
+     * If executions may run concurrently (see {@link #maxConcurrency()}) and
+     * the database would otherwise run them on the current thread then
+     * {@link Schedulers#io()} is used.
      * 
      * @return
      */
     Scheduler scheduler() {
-        return db.currentScheduler();
+        Scheduler scheduler = db.currentScheduler();
+        if (isConcurrent() && scheduler == Schedulers.trampoline())
+            return Schedulers.io();
+        else
+            return scheduler;
     }
 
     /**
@@ -71,20 +103,278 @@ final class QueryContext {
         return db.getResultSetTransform();
     }
 
+    SelectCoalescer coalescer() {
+        return db.selectCoalescer();
+    }
+
+    ResultCaches resultCaches() {
+        return db.resultCaches();
+    }
+
+    boolean isResultSetTransformed() {
+        return db.isResultSetTransformed();
+    }
+
     QueryContext batched(int batchSize) {
-        return new QueryContext(db, batchSize, fetchSize);
+        return new QueryContext(db, batchSize, fetchSize, maxConcurrency, preserveOrder, select,
+                batch);
     }
 
     int batchSize() {
         return batchSize;
     }
 
+    QueryContext commitPolicy(CommitPolicy commitPolicy) {
+        return batch(new BatchOptions(commitPolicy, batch.flushIntervalMs, batch.flushScheduler,
+                batch.flushListener, batch.multiRowBuckets, batch.rowCounts));
+    }
+
+    /**
+     * Returns when a batched update run outside of a transaction commits.
+     * 
+     * @return commit policy
+     */
+    CommitPolicy commitPolicy() {
+        return batch.commitPolicy;
+    }
+
+    QueryContext flushInterval(long flushIntervalMs, Scheduler flushScheduler) {
+        return batch(new BatchOptions(batch.commitPolicy, flushIntervalMs, flushScheduler,
+                batch.flushListener, batch.multiRowBuckets, batch.rowCounts));
+    }
+
+    /**
+     * Returns the maximum time in milliseconds that a parameter set of a
+     * batched update run outside of a transaction waits in a partially filled
+     * batch before the batch is executed. Zero means batches are executed
+     * only when full or after the last parameter set.
+     * 
+     * @return flush interval in milliseconds
+     */
+    long flushIntervalMs() {
+        return batch.flushIntervalMs;
+    }
+
+    /**
+     * Returns the scheduler that timed flushes of batches run on.
+     * 
+     * @return flush scheduler
+     */
+    Scheduler flushScheduler() {
+        return batch.flushScheduler == null ? Schedulers.io() : batch.flushScheduler;
+    }
+
+    QueryContext flushListener(Action1<? super BatchFlush> flushListener) {
+        return batch(new BatchOptions(batch.commitPolicy, batch.flushIntervalMs,
+                batch.flushScheduler, flushListener, batch.multiRowBuckets, batch.rowCounts));
+    }
+
+    /**
+     * Returns the listener notified of each batch executed by a batched
+     * update run outside of a transaction, or null if none.
+     * 
+     * @return flush listener (nullable)
+     */
+    Action1<? super BatchFlush> flushListener() {
+        return batch.flushListener;
+    }
+
+    QueryContext multiRowInsert(int[] multiRowBuckets) {
+        return batch(new BatchOptions(batch.commitPolicy, batch.flushIntervalMs,
+                batch.flushScheduler, batch.flushListener, multiRowBuckets, batch.rowCounts));
+    }
+
+    /**
+     * Returns the ascending numbers of rows of the multi-row insert
+     * statements that a batched insert run outside of a transaction is
+     * rewritten into, or null if batches are executed with jdbc batching.
+     * 
+     * @return row counts of multi-row statements (nullable)
+     */
+    int[] multiRowBuckets() {
+        return batch.multiRowBuckets;
+    }
+
+    QueryContext rowCounts(boolean rowCounts) {
+        return batch(new BatchOptions(batch.commitPolicy, batch.flushIntervalMs,
+                batch.flushScheduler, batch.flushListener, batch.multiRowBuckets, rowCounts));
+    }
+
+    /**
+     * Returns true if and only if a batched update run outside of a
+     * transaction should emit the count of each parameter set rather than the
+     * total count of each batch.
+     * 
+     * @return true if counts are emitted per parameter set
+     */
+    boolean rowCounts() {
+        return batch.rowCounts;
+    }
+
     QueryContext fetchSize(Integer fetchSize) {
-        return new QueryContext(db, batchSize, fetchSize);
+        return new QueryContext(db, batchSize, fetchSize, maxConcurrency, preserveOrder, select,
+                batch);
     }
 
     Integer fetchSize() {
         return fetchSize;
     }
 
-}
\ No newline at end of file
+    QueryContext reuseStatement(boolean reuseStatement) {
+        return select(new SelectOptions(reuseStatement, select.readAhead, select.minFetchSize,
+                select.maxFetchSize, select.maxRows));
+    }
+
+    /**
+     * Returns true if and only if one connection and prepared statement should
+     * be used for all parameter sets of a select query.
+     * 
+     * @return true if statement is reused across parameter sets
+     */
+    boolean reuseStatement() {
+        return select.reuseStatement;
+    }
+
+    QueryContext readAhead(int readAhead) {
+        return select(new SelectOptions(select.reuseStatement, readAhead, select.minFetchSize,
+                select.maxFetchSize, select.maxRows));
+    }
+
+    /**
+     * Returns the maximum number of mapped rows of a select query to fetch
+     * ahead of downstream requests on a separate thread. Zero means rows are
+     * fetched on the requesting thread only when requested.
+     * 
+     * @return read ahead buffer size
+     */
+    int readAhead() {
+        return select.readAhead;
+    }
+
+    QueryContext adaptiveFetchSize(int minFetchSize, int maxFetchSize) {
+        return select(new SelectOptions(select.reuseStatement, select.readAhead, minFetchSize,
+                maxFetchSize, select.maxRows));
+    }
+
+    /**
+     * Returns true if and only if the fetch size of a select query should be
+     * adjusted according to downstream requests between
+     * {@link #minFetchSize()} and {@link #maxFetchSize()}.
+     * 
+     * @return true if fetch size is adaptive
+     */
+    boolean adaptiveFetchSize() {
+        return select.maxFetchSize > 0;
+    }
+
+    int minFetchSize() {
+        return select.minFetchSize;
+    }
+
+    int maxFetchSize() {
+        return select.maxFetchSize;
+    }
+
+    QueryContext maxRows(int maxRows) {
+        return select(new SelectOptions(select.reuseStatement, select.readAhead,
+                select.minFetchSize, select.maxFetchSize, maxRows));
+    }
+
+    /**
+     * Returns the maximum number of rows to read per execution of a select
+     * query. Zero means no limit.
+     * 
+     * @return maximum rows per execution
+     */
+    int maxRows() {
+        return select.maxRows;
+    }
+
+    QueryContext maxConcurrency(int maxConcurrency, boolean preserveOrder) {
+        return new QueryContext(db, batchSize, fetchSize, maxConcurrency, preserveOrder, select,
+                batch);
+    }
+
+    /**
+     * Returns the maximum number of sets of parameters of a query to execute
+     * at once (each on its own connection).
+     * 
+     * @return maximum concurrent executions
+     */
+    int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Returns true if and only if the results of concurrent executions should
+     * be emitted in the order of their parameters.
+     * 
+     * @return true if order is preserved
+     */
+    boolean preserveOrder() {
+        return preserveOrder;
+    }
+
+    /**
+     * Returns true if and only if executions of the query for different sets
+     * of parameters may run concurrently. They never do within a transaction
+     * because all queries of a transaction share one connection.
+     * 
+     * @return true if executions may run concurrently
+     */
+    boolean isConcurrent() {
+        return maxConcurrency > 1 && !isTransactionOpen();
+    }
+
+    /**
+     * Options that only apply to select queries.
+     */
+    private static final class SelectOptions {
+
+        static final SelectOptions DEFAULT = new SelectOptions(false, 0, 0, 0, 0);
+
+        final boolean reuseStatement;
+        final int readAhead;
+        final int minFetchSize;
+        final int maxFetchSize;
+        final int maxRows;
+
+        SelectOptions(boolean reuseStatement, int readAhead, int minFetchSize, int maxFetchSize,
+                int maxRows) {
+            this.reuseStatement = reuseStatement;
+            this.readAhead = readAhead;
+            this.minFetchSize = minFetchSize;
+            this.maxFetchSize = maxFetchSize;
+            this.maxRows = maxRows;
+        }
+    }
+
+    /**
+     * Options that only apply to batched updates run outside of a
+     * transaction.
+     */
+    private static final class BatchOptions {
+
+        static final BatchOptions DEFAULT = new BatchOptions(CommitPolicy.PER_BATCH, 0, null,
+                null, null, false);
+
+        final CommitPolicy commitPolicy;
+        final long flushIntervalMs;
+        final Scheduler flushScheduler;
+        final Action1<? super BatchFlush> flushListener;
+        final int[] multiRowBuckets;
+        final boolean rowCounts;
+
+        BatchOptions(CommitPolicy commitPolicy, long flushIntervalMs, Scheduler flushScheduler,
+                Action1<? super BatchFlush> flushListener, int[] multiRowBuckets,
+                boolean rowCounts) {
+            this.commitPolicy = commitPolicy;
+            this.flushIntervalMs = flushIntervalMs;
+            this.flushScheduler = flushScheduler;
+            this.flushListener = flushListener;
+            this.multiRowBuckets = multiRowBuckets;
+            this.rowCounts = rowCounts;
+        }
+    }
+
+}
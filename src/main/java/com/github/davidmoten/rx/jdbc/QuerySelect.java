@@ -4,6 +4,8 @@ import static com.github.davidmoten.rx.jdbc.Conditions.checkNotNull;
 import static com.github.davidmoten.rx.jdbc.Queries.bufferedParameters;
 
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.github.davidmoten.rx.Functions;
@@ -19,7 +21,10 @@ import com.github.davidmoten.rx.jdbc.tuple.Tuples;
 
 import rx.Observable;
 import rx.Observable.Transformer;
+import rx.functions.Action1;
+import rx.functions.Func0;
 import rx.functions.Func1;
+import rx.functions.Func2;
 
 /**
  * A query and its executable context.
@@ -35,6 +40,22 @@ final public class QuerySelect implements Query {
     private final JdbcQuery jdbcQuery;
     private final Func1<ResultSet, ? extends ResultSet> resultSetTransform;
 
+    /**
+     * If non-null identifies equivalent executions (together with the
+     * parameters) for coalescing and caching.
+     */
+    private final Object key;
+
+    /**
+     * Identical in-flight executions are coalesced if true.
+     */
+    private final boolean coalesce;
+
+    /**
+     * Nullable! Results are cached according to this policy if non-null.
+     */
+    private final CachePolicy cachePolicy;
+
     /**
      * Constructor.
      * 
@@ -46,20 +67,47 @@ final public class QuerySelect implements Query {
      * @param depends
      * @param context
      * @param resultSetTransform
-     * @param resultSetTransform
      */
     QuerySelect(String sql, Observable<Parameter> parameters, Observable<?> depends,
             QueryContext context, Func1<ResultSet, ? extends ResultSet> resultSetTransform) {
+        this(sql, parameters, depends, context, resultSetTransform, null, false, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param sql
+     *            jdbc select statement or the word RETURN_GENERATED_KEYS
+     * @param parameters
+     *            if sql == RETURN_GENERATED_KEYS then the first parameter will
+     *            be the ResultSet to be used as source
+     * @param depends
+     * @param context
+     * @param resultSetTransform
+     * @param key
+     *            identifies the mapping of the query for coalescing and
+     *            caching. Nullable!
+     * @param coalesce
+     *            coalesce identical in-flight executions
+     * @param cachePolicy
+     *            nullable!
+     */
+    QuerySelect(String sql, Observable<Parameter> parameters, Observable<?> depends,
+            QueryContext context, Func1<ResultSet, ? extends ResultSet> resultSetTransform,
+            Object key, boolean coalesce, CachePolicy cachePolicy) {
         checkNotNull(sql);
         checkNotNull(parameters);
         checkNotNull(depends);
         checkNotNull(context);
         checkNotNull(resultSetTransform);
-        this.jdbcQuery = NamedParameters.parse(sql);
+        this.jdbcQuery = JdbcQueryCache.INSTANCE.get(sql);
         this.parameters = parameters;
         this.depends = depends;
         this.context = context;
         this.resultSetTransform = resultSetTransform;
+        this.key = key;
+        this.coalesce = coalesce;
+        this.cachePolicy = cachePolicy;
     }
 
     @Override
@@ -82,6 +130,10 @@ final public class QuerySelect implements Query {
         return jdbcQuery.names();
     }
 
+    int parametersCount() {
+        return jdbcQuery.parametersCount();
+    }
+
     @Override
     public String toString() {
         return "QuerySelect [sql=" + sql() + "]";
@@ -105,25 +157,59 @@ final public class QuerySelect implements Query {
      * 
      * @return the results of running a select query with all sets of parameters
      */
-    public <T> Observable<T> execute(ResultSetMapper<? extends T> function) {
-        return bufferedParameters(this)
-                // execute once per set of parameters
-                .concatMap(executeOnce(function));
+    public <T> Observable<T> execute(final ResultSetMapper<? extends T> function) {
+        if (context.reuseStatement()) {
+            return Observable.using(
+                    // holds the connection and prepared statement shared by
+                    // all executions
+                    NEW_STATE,
+                    // execute once per set of parameters
+                    new Func1<State, Observable<T>>() {
+                        @Override
+                        public Observable<T> call(State sharedState) {
+                            return bufferedParameters(QuerySelect.this)
+                                    .concatMap(executeOnce(function, sharedState));
+                        }
+                    },
+                    // close the statement and connection on termination
+                    CLOSE_STATE);
+        } else {
+            // execute once per set of parameters
+            return Queries.executeAll(bufferedParameters(this), executeOnce(function, null),
+                    context);
+        }
     }
 
+    private static final Func0<State> NEW_STATE = new Func0<State>() {
+        @Override
+        public State call() {
+            return new State();
+        }
+    };
+
+    private static final Action1<State> CLOSE_STATE = new Action1<State>() {
+        @Override
+        public void call(State state) {
+            QuerySelectOnSubscribe.closeQuietly(state);
+        }
+    };
+
     /**
      * Returns a {@link Func1} that itself returns the results of pushing one
      * set of parameters through a select query.
      * 
      * @param query
+     * @param sharedState
+     *            nullable! if non-null holds the connection and prepared
+     *            statement to be reused for every set of parameters
      * @return function to execute once from a set of parameters
      */
     private <T> Func1<List<Parameter>, Observable<T>> executeOnce(
-            final ResultSetMapper<? extends T> function) {
+            final ResultSetMapper<? extends T> function, final State sharedState) {
         return new Func1<List<Parameter>, Observable<T>>() {
             @Override
             public Observable<T> call(List<Parameter> params) {
-                return executeOnce(params, function);
+                return executeOnce(params, function, sharedState);
             }
         };
     }
@@ -134,13 +220,40 @@ final public class QuerySelect implements Query {
      * 
      * @param params
      *            one set of parameters to be run with the query
+     * @param sharedState
+     *            nullable!
      * @return
      */
     @SuppressWarnings("unchecked")
     private <T> Observable<T> executeOnce(final List<Parameter> params,
-            ResultSetMapper<? extends T> function) {
-        return (Observable<T>) QuerySelectOnSubscribe.execute(this, params, function)
-                .subscribeOn(context.scheduler());
+            ResultSetMapper<? extends T> function, State sharedState) {
+        Observable<T> o = (Observable<T>) QuerySelectOnSubscribe
+                .execute(this, params, function, sharedState).subscribeOn(context.scheduler());
+        if (key != null && sharedState == null) {
+            Object k = executionKey(params);
+            if (coalesce)
+                o = context.coalescer().coalesce(k, o);
+            if (cachePolicy != null)
+                o = context.resultCaches().get(cachePolicy).cached(k, o);
+        }
+        return o;
+    }
+
+    /**
+     * Returns the key of an execution with the given parameters for
+     * coalescing and caching purposes.
+     * 
+     * @param params
+     * @return execution key
+     */
+    private Object executionKey(List<Parameter> params) {
+        List<Object> list = new ArrayList<Object>(1 + 2 * params.size());
+        list.add(key);
+        for (Parameter p : params) {
+            list.add(p.name());
+            list.add(p.value());
+        }
+        return list;
     }
 
     /**
@@ -153,11 +266,21 @@ final public class QuerySelect implements Query {
          */
         private final QueryBuilder builder;
         private Integer fetchSize;
+        private boolean reuseStatement;
+        private int readAhead;
+        private int minFetchSize;
+        private int maxFetchSize;
+        private int maxRows;
+        private int maxConcurrency = 1;
+        private boolean preserveOrder = true;
+        private boolean coalesce;
+        private CachePolicy cachePolicy;
 
         /**
          * The {@link ResultSet} is transformed before use.
          */
         private Func1<ResultSet, ? extends ResultSet> resultSetTransform = Functions.identity();
+        private boolean resultSetTransformed;
 
         /**
          * Constructor.
@@ -236,6 +359,172 @@ final public class QuerySelect implements Query {
             return this;
         }
 
+        /**
+         * Adjusts the {@code FETCH_SIZE} of the query according to the number
+         * of rows requested downstream. The statement is prepared with
+         * <code>minFetchSize</code>. A bounded request (for example from
+         * <code>take(10)</code> or <code>first()</code>) sets the fetch size
+         * to the number of rows requested and an unbounded request doubles
+         * the fetch size as rows are read up to <code>maxFetchSize</code>.
+         * Overrides {@link #fetchSize(int)}. If rows are read ahead (see
+         * {@link #readAhead(int)}) the read ahead buffer size is used as the
+         * request.
+         * 
+         * @param minFetchSize
+         *            the smallest fetch size to use (positive)
+         * @param maxFetchSize
+         *            the largest fetch size to use
+         * @return this
+         */
+        public Builder adaptiveFetchSize(int minFetchSize, int maxFetchSize) {
+            Conditions.checkArgument(minFetchSize > 0, "minFetchSize must be positive");
+            Conditions.checkArgument(maxFetchSize >= minFetchSize,
+                    "maxFetchSize must be at least minFetchSize");
+            this.minFetchSize = minFetchSize;
+            this.maxFetchSize = maxFetchSize;
+            return this;
+        }
+
+        /**
+         * Limits the number of rows read for each set of parameters to
+         * <code>maxRows</code> by calling
+         * {@link java.sql.PreparedStatement#setMaxRows(int)} so that the
+         * database and driver need only produce and transfer that many rows.
+         * The fetch size is capped at <code>maxRows</code> and the
+         * {@link ResultSet} is closed as soon as the last row has been read.
+         * 
+         * @param maxRows
+         *            maximum number of rows per set of parameters (positive)
+         * @return this
+         */
+        public Builder maxRows(int maxRows) {
+            Conditions.checkArgument(maxRows > 0, "maxRows must be positive");
+            this.maxRows = maxRows;
+            return this;
+        }
+
+        /**
+         * Same as {@link #maxRows(int)}.
+         * 
+         * @param n
+         *            maximum number of rows per set of parameters (positive)
+         * @return this
+         */
+        public Builder limit(int n) {
+            return maxRows(n);
+        }
+
+        /**
+         * Runs the query for up to <code>maxConcurrency</code> sets of
+         * parameters at once, each on its own connection, emitting the results
+         * in the order of the parameters. Results of later executions are
+         * buffered (bounded by backpressure) until earlier executions
+         * complete. If the database runs queries on the current thread then
+         * the executions run on {@link rx.schedulers.Schedulers#io()}.
+         * Executions within a transaction always run one after another.
+         * 
+         * @param maxConcurrency
+         *            maximum number of executions to run at once
+         * @return this
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            return maxConcurrency(maxConcurrency, true);
+        }
+
+        /**
+         * As for {@link #maxConcurrency(int)} but if <code>preserveOrder</code>
+         * is false then results are emitted as they arrive from any execution.
+         * 
+         * @param maxConcurrency
+         *            maximum number of executions to run at once
+         * @param preserveOrder
+         *            if true results are emitted in parameter order
+         * @return this
+         */
+        public Builder maxConcurrency(int maxConcurrency, boolean preserveOrder) {
+            Conditions.checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+            this.maxConcurrency = maxConcurrency;
+            this.preserveOrder = preserveOrder;
+            return this;
+        }
+
+        /**
+         * Requests that executions of this query that are identical (same
+         * sql, parameters and mapping) to an execution already in flight do
+         * not query the database but share the results of the in-flight
+         * execution. Useful to reduce load when many concurrent requests read
+         * the same rows. Executions within a transaction are not coalesced.
+         * Mappings are identical if they are made using the same classes with
+         * {@link #getAs(Class)}, {@link #autoMap(Class)} (and similar methods)
+         * or the same {@link ResultSetMapper} instance with
+         * {@link #get(ResultSetMapper)}. See
+         * {@link Database#selectCoalescingStatistics()}.
+         * 
+         * @return this
+         */
+        public Builder coalesce() {
+            this.coalesce = true;
+            return this;
+        }
+
+        /**
+         * Requests that the mapped results of this query are cached according
+         * to the given policy and that executions identical (same sql,
+         * parameters and mapping, see {@link #coalesce()}) to a cached one are
+         * served from the cache without querying the database. Results are
+         * cached only if the execution completes and are shared so cached
+         * objects should not be mutated. Executions within a transaction do
+         * not use the cache. See {@link Database#resultCacheStatistics} and
+         * {@link Database#invalidateCache(String)}.
+         * 
+         * @param policy
+         *            cache policy
+         * @return this
+         */
+        public Builder cached(CachePolicy policy) {
+            checkNotNull(policy);
+            this.cachePolicy = policy;
+            return this;
+        }
+
+        /**
+         * Requests that one {@link java.sql.Connection} and one
+         * {@link java.sql.PreparedStatement} are used for all sets of
+         * parameters pushed through the query. The statement is prepared on
+         * the first execution, parameters are rebound and the statement
+         * re-executed for every following set and the statement and
+         * connection are closed only when the stream of parameters terminates
+         * (or the subscriber unsubscribes).
+         * 
+         * @return this
+         */
+        public Builder reuseStatement() {
+            this.reuseStatement = true;
+            return this;
+        }
+
+        /**
+         * Requests that rows are read from the {@link ResultSet} and mapped on
+         * a separate thread ahead of downstream requests, holding at most
+         * <code>bufferSize</code> mapped rows (or chunks if using
+         * {@link #getChunked(int, ResultSetMapper)}). Backpressure is still
+         * honoured: reading pauses while the buffer is full. Useful when
+         * downstream processing is slow enough that the driver would
+         * otherwise sit idle. A query that reads ahead fails with an
+         * {@link IllegalArgumentException} if it is run within a transaction
+         * because the rows would be read from the connection of the
+         * transaction on another thread.
+         * 
+         * @param bufferSize
+         *            maximum number of mapped rows read ahead
+         * @return this
+         */
+        public Builder readAhead(int bufferSize) {
+            Conditions.checkArgument(bufferSize > 0, "bufferSize must be positive");
+            this.readAhead = bufferSize;
+            return this;
+        }
+
         /**
          * Appends a dependency to the dependencies that have to complete their
          * emitting before the query is executed.
@@ -271,6 +560,7 @@ final public class QuerySelect implements Query {
          */
         public Builder resultSetTransform(Func1<ResultSet, ? extends ResultSet> transform) {
             this.resultSetTransform = transform;
+            this.resultSetTransformed = true;
             return this;
         }
 
@@ -286,15 +576,107 @@ final public class QuerySelect implements Query {
 
         <T> Observable<T> get(ResultSetMapper<? extends T> function, QueryBuilder builder,
                 Func1<ResultSet, ? extends ResultSet> resultSetTransform) {
-            final QueryContext ctxt;
+            return get(function, builder, resultSetTransform, function);
+        }
+
+        /**
+         * Transforms the results using the given function where
+         * <code>mapperKey</code> identifies the mapping for coalescing
+         * purposes (mappers created for the same classes are equivalent).
+         */
+        private <T> Observable<T> get(ResultSetMapper<? extends T> function, Object mapperKey) {
+            return get(function, builder, resultSetTransform, mapperKey);
+        }
+
+        private <T> Observable<T> get(ResultSetMapper<? extends T> function, QueryBuilder builder,
+                Func1<ResultSet, ? extends ResultSet> resultSetTransform, Object mapperKey) {
+            return get(function, builder, resultSetTransform, mapperKey, maxRows);
+        }
+
+        private <T> Observable<T> get(ResultSetMapper<? extends T> function, QueryBuilder builder,
+                Func1<ResultSet, ? extends ResultSet> resultSetTransform, Object mapperKey,
+                int maxRows) {
+            QueryContext ctxt = context(builder, maxRows);
+            Object key;
+            boolean transaction = ctxt.isTransactionOpen();
+            boolean coalesce = this.coalesce && !transaction;
+            CachePolicy cachePolicy = transaction ? null : this.cachePolicy;
+            if (coalesce || cachePolicy != null)
+                key = Arrays.asList(builder.sql(), mapperKey,
+                        resultSetTransformed ? resultSetTransform : null, maxRows);
+            else
+                key = null;
+            return new QuerySelect(builder.sql(), builder.parameters(), builder.depends(), ctxt,
+                    resultSetTransform, key, coalesce, cachePolicy).execute(function);
+        }
+
+        /**
+         * Returns the context of the given builder with the options of this
+         * builder applied.
+         * 
+         * @param builder
+         * @return context
+         */
+        private QueryContext context(QueryBuilder builder) {
+            return context(builder, maxRows);
+        }
+
+        private QueryContext context(QueryBuilder builder, int maxRows) {
+            QueryContext ctxt = builder.context();
             if (fetchSize != null) {
-                ctxt = builder.context().fetchSize(fetchSize);
-            } else {
-                ctxt = builder.context();
+                ctxt = ctxt.fetchSize(fetchSize);
+            }
+            if (reuseStatement) {
+                ctxt = ctxt.reuseStatement(true);
+            }
+            if (readAhead > 0) {
+                ctxt = ctxt.readAhead(readAhead);
+            }
+            if (maxFetchSize > 0) {
+                ctxt = ctxt.adaptiveFetchSize(minFetchSize, maxFetchSize);
+            }
+            if (maxRows > 0) {
+                ctxt = ctxt.maxRows(maxRows);
             }
+            if (maxConcurrency > 1) {
+                Conditions.checkArgument(!reuseStatement,
+                        "maxConcurrency > 1 cannot be combined with reuseStatement");
+                ctxt = ctxt.maxConcurrency(maxConcurrency, preserveOrder);
+            }
+            return ctxt;
+        }
 
-            return new QuerySelect(builder.sql(), builder.parameters(), builder.depends(),
-                ctxt, resultSetTransform).execute(function);
+        /**
+         * Transforms the results using the given function and emits them in
+         * lists of <code>size</code> rows (the last list of each execution
+         * may be smaller). The lists are filled directly from the
+         * {@link ResultSet} and each list counts as one item for backpressure
+         * purposes. Equivalent to <code>get(function).buffer(size)</code> for
+         * a single set of parameters but with less per row overhead.
+         *
+         * @param size
+         *            maximum number of rows in each emitted list
+         * @param function
+         * @return the results of the query as an Observable of lists
+         */
+        public <T> Observable<List<T>> getChunked(int size,
+                ResultSetMapper<? extends T> function) {
+            return get(new ResultSetMapperChunk<T>(function, size));
+        }
+
+        /**
+         * Automaps the rows of the {@link ResultSet} (see
+         * {@link #autoMap(Class)}) and emits them in lists of
+         * <code>size</code> rows. See {@link #getChunked(int, ResultSetMapper)}.
+         *
+         * @param cls
+         * @param size
+         *            maximum number of rows in each emitted list
+         * @return the results of the query as an Observable of lists
+         */
+        public <T> Observable<List<T>> autoMapChunked(Class<T> cls, int size) {
+            Util.setSqlFromQueryAnnotation(cls, builder);
+            return getChunked(size, Util.autoMap(cls));
         }
 
         /**
@@ -334,7 +716,7 @@ final public class QuerySelect implements Query {
         <T> Observable<T> autoMap(Class<T> cls, QueryBuilder builder,
                 Func1<ResultSet, ? extends ResultSet> resultSetTransform) {
             Util.setSqlFromQueryAnnotation(cls, builder);
-            return get(Util.autoMap(cls), builder, resultSetTransform);
+            return get(Util.autoMap(cls), builder, resultSetTransform, mapperKey("autoMap", cls));
         }
 
         /**
@@ -345,7 +727,7 @@ final public class QuerySelect implements Query {
          * @return observable of the given class
          */
         public <S> Observable<S> getAs(Class<S> cls) {
-            return get(Tuples.single(cls));
+            return get(Tuples.single(cls), mapperKey("getAs", cls));
         }
 
         /**
@@ -356,7 +738,7 @@ final public class QuerySelect implements Query {
          * @return observable of the given class
          */
         public <S> Observable<TupleN<S>> getTupleN(Class<S> cls) {
-            return get(Tuples.tupleN(cls));
+            return get(Tuples.tupleN(cls), mapperKey("getTupleN", cls));
         }
 
         /**
@@ -367,7 +749,7 @@ final public class QuerySelect implements Query {
          * @return observable of TupleN
          */
         public <S> Observable<TupleN<Object>> getTupleN() {
-            return get(Tuples.tupleN(Object.class));
+            return get(Tuples.tupleN(Object.class), mapperKey("getTupleN", Object.class));
         }
 
         /**
@@ -379,7 +761,7 @@ final public class QuerySelect implements Query {
          * @return observable of Tuple2
          */
         public <T1, T2> Observable<Tuple2<T1, T2>> getAs(Class<T1> cls1, Class<T2> cls2) {
-            return get(Tuples.tuple(cls1, cls2));
+            return get(Tuples.tuple(cls1, cls2), mapperKey("getAs", cls1, cls2));
         }
 
         /**
@@ -393,7 +775,7 @@ final public class QuerySelect implements Query {
          */
         public <T1, T2, T3> Observable<Tuple3<T1, T2, T3>> getAs(Class<T1> cls1, Class<T2> cls2,
                 Class<T3> cls3) {
-            return get(Tuples.tuple(cls1, cls2, cls3));
+            return get(Tuples.tuple(cls1, cls2, cls3), mapperKey("getAs", cls1, cls2, cls3));
         }
 
         /**
@@ -408,7 +790,8 @@ final public class QuerySelect implements Query {
          */
         public <T1, T2, T3, T4> Observable<Tuple4<T1, T2, T3, T4>> getAs(Class<T1> cls1,
                 Class<T2> cls2, Class<T3> cls3, Class<T4> cls4) {
-            return get(Tuples.tuple(cls1, cls2, cls3, cls4));
+            return get(Tuples.tuple(cls1, cls2, cls3, cls4),
+                    mapperKey("getAs", cls1, cls2, cls3, cls4));
         }
 
         /**
@@ -424,7 +807,8 @@ final public class QuerySelect implements Query {
          */
         public <T1, T2, T3, T4, T5> Observable<Tuple5<T1, T2, T3, T4, T5>> getAs(Class<T1> cls1,
                 Class<T2> cls2, Class<T3> cls3, Class<T4> cls4, Class<T5> cls5) {
-            return get(Tuples.tuple(cls1, cls2, cls3, cls4, cls5));
+            return get(Tuples.tuple(cls1, cls2, cls3, cls4, cls5),
+                    mapperKey("getAs", cls1, cls2, cls3, cls4, cls5));
         }
 
         /**
@@ -442,7 +826,8 @@ final public class QuerySelect implements Query {
         public <T1, T2, T3, T4, T5, T6> Observable<Tuple6<T1, T2, T3, T4, T5, T6>> getAs(
                 Class<T1> cls1, Class<T2> cls2, Class<T3> cls3, Class<T4> cls4, Class<T5> cls5,
                 Class<T6> cls6) {
-            return get(Tuples.tuple(cls1, cls2, cls3, cls4, cls5, cls6));
+            return get(Tuples.tuple(cls1, cls2, cls3, cls4, cls5, cls6),
+                    mapperKey("getAs", cls1, cls2, cls3, cls4, cls5, cls6));
         }
 
         /**
@@ -461,13 +846,94 @@ final public class QuerySelect implements Query {
         public <T1, T2, T3, T4, T5, T6, T7> Observable<Tuple7<T1, T2, T3, T4, T5, T6, T7>> getAs(
                 Class<T1> cls1, Class<T2> cls2, Class<T3> cls3, Class<T4> cls4, Class<T5> cls5,
                 Class<T6> cls6, Class<T7> cls7) {
-            return get(Tuples.tuple(cls1, cls2, cls3, cls4, cls5, cls6, cls7));
+            return get(Tuples.tuple(cls1, cls2, cls3, cls4, cls5, cls6, cls7),
+                    mapperKey("getAs", cls1, cls2, cls3, cls4, cls5, cls6, cls7));
         }
 
+        /**
+         * Returns the number of rows returned by the query (summed over all
+         * sets of parameters) by reading every row over the connection and
+         * counting them on the client.
+         * 
+         * @return Observable of the row count
+         */
         public Observable<Integer> count() {
             return get(Util.toOne()).count();
         }
 
+        /**
+         * Returns the number of rows returned by the query (summed over all
+         * sets of parameters) as counted by the database by running
+         * <code>select count(*) from (&lt;sql&gt;)</code> so that the rows are
+         * not transferred. Not every select can be run as a derived table (for
+         * instance a join that selects two columns of the same name, or an
+         * order by on some databases) so only use this where the sql is known
+         * to be valid when wrapped. If the sql is not a plain select statement
+         * or a {@link ResultSet} transform is set (on the query or the
+         * database) then {@link #count()} is used.
+         * 
+         * @return Observable of the row count
+         */
+        public Observable<Integer> countServerSide() {
+            String countSql = Util.countSql(builder.sql());
+            if (countSql == null || resultSetTransformed
+                    || builder.context().isResultSetTransformed()) {
+                return count();
+            }
+            return new QuerySelect(countSql, builder.parameters(), builder.depends(),
+                    context(builder), Functions.<ResultSet> identity())
+                            // one count per set of parameters
+                            .execute(Util.toCount())
+                            // sum
+                            .reduce(0L, sumCounts(maxRows))
+                            // preserve the Integer return type
+                            .map(TO_INTEGER);
+        }
+
+        /**
+         * Returns a key identifying the mapping of the given automapping
+         * method and classes (for coalescing and caching).
+         */
+        private static Object mapperKey(String method, Class<?>... classes) {
+            List<Object> key = new ArrayList<Object>(classes.length + 1);
+            key.add(method);
+            key.addAll(Arrays.asList(classes));
+            return key;
+        }
+
+        private static Func2<Long, Long, Long> sumCounts(final int maxRows) {
+            return new Func2<Long, Long, Long>() {
+                @Override
+                public Long call(Long total, Long count) {
+                    if (maxRows > 0)
+                        return total + Math.min(count, maxRows);
+                    else
+                        return total + count;
+                }
+            };
+        }
+
+        private static final Func1<Long, Integer> TO_INTEGER = new Func1<Long, Integer>() {
+            @Override
+            public Integer call(Long count) {
+                return count.intValue();
+            }
+        };
+
+        /**
+         * Returns an Observable that emits true if the query returns at least
+         * one row (for any set of parameters) otherwise false. At most one row
+         * is read for each execution (see {@link #maxRows(int)}) and
+         * execution stops at the first row found.
+         * 
+         * @return Observable of whether any row exists
+         */
+        public Observable<Boolean> exists() {
+            // limit this execution only, not later ones of this builder
+            return get(Util.toOne(), builder, resultSetTransform, Util.toOne(), 1)
+                    .exists(Functions.alwaysTrue());
+        }
+
         /**
          * Returns an {@link Transformer} to allow the query to be pushed
          * parameters via the {@link Observable#compose(Transformer)} method.
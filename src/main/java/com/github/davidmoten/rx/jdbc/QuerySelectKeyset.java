@@ -0,0 +1,216 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static com.github.davidmoten.rx.jdbc.Conditions.checkArgument;
+import static com.github.davidmoten.rx.jdbc.Conditions.checkNotNull;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import com.github.davidmoten.rx.jdbc.QuerySelectKeysetProducer.Keyed;
+import com.github.davidmoten.rx.jdbc.tuple.Tuples;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.functions.Func0;
+import rx.functions.Func2;
+import rx.schedulers.Schedulers;
+
+/**
+ * A select query whose rows are read in pages ordered by a unique key column
+ * using keyset pagination (<code>where key &gt; ? order by key</code>) so
+ * that no connection or cursor is held open while rows are being consumed.
+ */
+public final class QuerySelectKeyset {
+
+    /**
+     * The placeholder in the sql template that is replaced by the key
+     * condition of each page.
+     */
+    public static final String RANGE = QuerySelectPartitioned.RANGE;
+
+    private QuerySelectKeyset() {
+        // prevent instantiation
+    }
+
+    /**
+     * Builds a keyset paginated select. The sql template must contain
+     * {@link QuerySelectKeyset#RANGE} in its where clause and must not have
+     * an order by clause, for example
+     * <code>select id, name from person where {range}</code>. The key column
+     * must be unique and non-null and must be selected by the query.
+     */
+    public static final class Builder {
+
+        private static final int DEFAULT_PAGE_SIZE = 1000;
+
+        private final Database db;
+        private final String sqlTemplate;
+        private final String keyColumn;
+        private int pageSize = DEFAULT_PAGE_SIZE;
+        private int retries;
+        private Scheduler scheduler = Schedulers.io();
+
+        /**
+         * Constructor.
+         *
+         * @param sqlTemplate
+         *            select statement containing {@link #RANGE} once
+         * @param keyColumn
+         *            the unique key column to order and paginate by
+         * @param db
+         */
+        public Builder(String sqlTemplate, String keyColumn, Database db) {
+            checkNotNull(sqlTemplate);
+            checkNotNull(keyColumn);
+            checkArgument(QuerySelectPartitioned.containsRangeOnce(sqlTemplate),
+                    "sql must contain " + RANGE + " exactly once");
+            this.sqlTemplate = sqlTemplate;
+            this.keyColumn = keyColumn;
+            this.db = db;
+        }
+
+        /**
+         * Sets the maximum number of rows read by each page query. Defaults to
+         * 1000.
+         *
+         * @param pageSize
+         *            rows per page
+         * @return this
+         */
+        public Builder pageSize(int pageSize) {
+            checkArgument(pageSize > 0, "pageSize must be positive");
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of times the query for a page is retried if it
+         * fails. A retry resumes after the key of the last row read so no rows
+         * are repeated or lost. Defaults to 0.
+         *
+         * @param retries
+         *            maximum retries per page
+         * @return this
+         */
+        public Builder retries(int retries) {
+            checkArgument(retries >= 0, "retries cannot be negative");
+            this.retries = retries;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler that page queries are subscribed on. Defaults to
+         * {@link Schedulers#io()} so that the next page is read while the
+         * current page is being emitted.
+         *
+         * @param scheduler
+         * @return this
+         */
+        public Builder scheduler(Scheduler scheduler) {
+            checkNotNull(scheduler);
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Transforms the rows of all pages using the given function.
+         *
+         * @param function
+         * @return the results of the query in key order
+         */
+        public <T> Observable<T> get(final ResultSetMapper<? extends T> function) {
+            return get(new Func0<ResultSetMapper<? extends T>>() {
+                @Override
+                public ResultSetMapper<? extends T> call() {
+                    return function;
+                }
+            });
+        }
+
+        /**
+         * Automaps the rows of all pages to instances of <code>cls</code>.
+         * See {@link QuerySelect.Builder#autoMap(Class)}.
+         *
+         * @param cls
+         * @return the results of the query in key order
+         */
+        public <T> Observable<T> autoMap(final Class<T> cls) {
+            return get(new Func0<ResultSetMapper<? extends T>>() {
+                @Override
+                public ResultSetMapper<? extends T> call() {
+                    return Util.autoMap(cls);
+                }
+            });
+        }
+
+        /**
+         * Automaps the first column of the rows of all pages to
+         * <code>cls</code>.
+         *
+         * @param cls
+         * @return the results of the query in key order
+         */
+        public <T> Observable<T> getAs(final Class<T> cls) {
+            return get(new Func0<ResultSetMapper<? extends T>>() {
+                @Override
+                public ResultSetMapper<? extends T> call() {
+                    return Tuples.single(cls);
+                }
+            });
+        }
+
+        /**
+         * Returns the rows of all pages using a mapper from
+         * <code>mapperFactory</code> for each subscription.
+         */
+        private <T> Observable<T> get(
+                final Func0<? extends ResultSetMapper<? extends T>> mapperFactory) {
+            final int pageSize = this.pageSize;
+            final int retries = this.retries;
+            final Scheduler scheduler = this.scheduler;
+            final String firstSql = sqlTemplate.replace(RANGE, "1=1") + " order by "
+                    + keyColumn;
+            final String nextSql = sqlTemplate.replace(RANGE, keyColumn + " > ?")
+                    + " order by " + keyColumn;
+            return Observable.create(new OnSubscribe<T>() {
+                @Override
+                public void call(Subscriber<? super T> subscriber) {
+                    final ResultSetMapper<Keyed<T>> mapper = keyed(keyColumn,
+                            mapperFactory.call());
+                    Func2<Boolean, Object, Observable<List<Keyed<T>>>> page = new Func2<Boolean, Object, Observable<List<Keyed<T>>>>() {
+                        @Override
+                        public Observable<List<Keyed<T>>> call(Boolean first, Object key) {
+                            QuerySelect.Builder b;
+                            if (first)
+                                b = db.select(firstSql);
+                            else
+                                b = db.select(nextSql).parameter(key);
+                            return b.maxRows(pageSize).get(mapper).toList()
+                                    .subscribeOn(scheduler).retry(retries);
+                        }
+                    };
+                    subscriber.setProducer(
+                            new QuerySelectKeysetProducer<T>(subscriber, page, pageSize));
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns a mapper that records the key column value with the mapped row.
+     */
+    private static <T> ResultSetMapper<Keyed<T>> keyed(final String keyColumn,
+            final ResultSetMapper<? extends T> mapper) {
+        return new ResultSetMapper<Keyed<T>>() {
+            @Override
+            public Keyed<T> call(ResultSet rs) throws SQLException {
+                Object key = rs.getObject(keyColumn);
+                return new Keyed<T>(key, mapper.call(rs));
+            }
+        };
+    }
+
+}
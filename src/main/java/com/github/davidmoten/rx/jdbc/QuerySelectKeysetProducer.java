@@ -0,0 +1,178 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.rx.RxUtil;
+
+import rx.Observable;
+import rx.Producer;
+import rx.Subscriber;
+import rx.functions.Func2;
+import rx.subscriptions.SerialSubscription;
+
+/**
+ * Producer for a keyset paginated select. Rows are read a page at a time by
+ * short-lived queries (each on its own connection) and emitted as requested.
+ * The next page is fetched as soon as emission of the current page starts so
+ * that at most two pages are held in memory.
+ */
+final class QuerySelectKeysetProducer<T> implements Producer {
+
+    private static final Logger log = LoggerFactory.getLogger(QuerySelectKeysetProducer.class);
+
+    /**
+     * A mapped row and the value of its key column.
+     */
+    static final class Keyed<T> {
+        final Object key;
+        final T value;
+
+        Keyed(Object key, T value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private final Subscriber<? super T> child;
+
+    /**
+     * Returns the page after the given key (if first is true then the first
+     * page and the key is ignored).
+     */
+    private final Func2<Boolean, Object, Observable<List<Keyed<T>>>> page;
+
+    private final int pageSize;
+
+    private final AtomicLong requested = new AtomicLong();
+
+    private final AtomicInteger wip = new AtomicInteger();
+
+    /**
+     * Subscription to the page being fetched.
+     */
+    private final SerialSubscription fetch = new SerialSubscription();
+
+    // written by page subscriber then drain called
+    private volatile List<Keyed<T>> arrived;
+    private volatile Throwable error;
+
+    // accessed in drain only
+    private final ArrayDeque<Keyed<T>> buffer = new ArrayDeque<Keyed<T>>();
+    private boolean fetching;
+    private boolean firstPage = true;
+    private boolean lastPage;
+    private Object lastKey;
+    private boolean terminated;
+
+    QuerySelectKeysetProducer(Subscriber<? super T> child,
+            Func2<Boolean, Object, Observable<List<Keyed<T>>>> page, int pageSize) {
+        this.child = child;
+        this.page = page;
+        this.pageSize = pageSize;
+        child.add(fetch);
+    }
+
+    @Override
+    public void request(long n) {
+        if (n > 0) {
+            RxUtil.getAndAddRequest(requested, n);
+            drain();
+        }
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0)
+            return;
+        int missed = 1;
+        while (true) {
+            if (terminated)
+                return;
+            List<Keyed<T>> a = arrived;
+            if (a != null) {
+                arrived = null;
+                fetching = false;
+                buffer.addAll(a);
+                lastPage = a.size() < pageSize;
+                if (!a.isEmpty())
+                    lastKey = a.get(a.size() - 1).key;
+            }
+            fetchIfRequired();
+            long r = requested.get();
+            long e = 0;
+            while (e != r) {
+                if (child.isUnsubscribed())
+                    return;
+                Keyed<T> row = buffer.poll();
+                if (row == null)
+                    break;
+                child.onNext(row.value);
+                e++;
+            }
+            if (e != 0) {
+                if (r != Long.MAX_VALUE)
+                    requested.addAndGet(-e);
+                // make room for the next page
+                fetchIfRequired();
+            }
+            if (buffer.isEmpty() && !fetching) {
+                Throwable err = error;
+                if (err != null) {
+                    terminated = true;
+                    log.debug("onError: {}", err.getMessage());
+                    child.onError(err);
+                    return;
+                } else if (lastPage) {
+                    terminated = true;
+                    log.debug("onCompleted");
+                    child.onCompleted();
+                    return;
+                }
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0)
+                return;
+        }
+    }
+
+    /**
+     * Starts fetching the next page if there is one, no fetch is in progress
+     * and less than a page of rows is buffered. Called in drain only.
+     */
+    private void fetchIfRequired() {
+        if (!fetching && !lastPage && error == null && buffer.size() < pageSize
+                && !child.isUnsubscribed()) {
+            fetching = true;
+            boolean first = firstPage;
+            firstPage = false;
+            log.debug("fetching page after key {}", first ? "<start>" : lastKey);
+            fetch.set(page.call(first, lastKey).subscribe(new Subscriber<List<Keyed<T>>>() {
+
+                @Override
+                public void onCompleted() {
+                    // onNext has already been called
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    error = e;
+                    arrived = Collections.<Keyed<T>> emptyList();
+                    drain();
+                }
+
+                @Override
+                public void onNext(List<Keyed<T>> list) {
+                    arrived = list;
+                    drain();
+                }
+            }));
+        }
+    }
+
+}
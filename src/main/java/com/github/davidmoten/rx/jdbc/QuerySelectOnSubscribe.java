@@ -1,5 +1,7 @@
 package com.github.davidmoten.rx.jdbc;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
@@ -31,43 +33,85 @@ final class QuerySelectOnSubscribe<T> implements OnSubscribe<T> {
      */
     static <T> Observable<T> execute(QuerySelect query, List<Parameter> parameters,
             ResultSetMapper<? extends T> function) {
-        return Observable.create(new QuerySelectOnSubscribe<T>(query, parameters, function));
+        return execute(query, parameters, function, null);
+    }
+
+    /**
+     * Returns an Observable of the results of pushing one set of parameters
+     * through a select query. If <code>sharedState</code> is non-null then its
+     * connection and prepared statement are used (and created if not yet
+     * present) and are not closed when the returned Observable terminates.
+     * 
+     * @param params
+     *            one set of parameters to be run with the query
+     * @param sharedState
+     *            nullable!
+     * @return
+     */
+    static <T> Observable<T> execute(QuerySelect query, List<Parameter> parameters,
+            ResultSetMapper<? extends T> function, State sharedState) {
+        return Observable
+                .create(new QuerySelectOnSubscribe<T>(query, parameters, function, sharedState));
     }
 
     private final ResultSetMapper<? extends T> function;
     private final QuerySelect query;
     private final List<Parameter> parameters;
     private final boolean stateProvided;
+    // nullable!
+    private final State sharedState;
 
     /**
      * Constructor.
      * 
      * @param query
      * @param parameters
+     * @param sharedState
      */
     private QuerySelectOnSubscribe(QuerySelect query, List<Parameter> parameters,
-            ResultSetMapper<? extends T> function) {
+            ResultSetMapper<? extends T> function, State sharedState) {
         this.query = query;
         this.parameters = parameters;
         this.function = function;
         this.stateProvided = query.sql().equals(QuerySelect.RETURN_GENERATED_KEYS);
+        this.sharedState = sharedState;
     }
 
     @Override
     public void call(Subscriber<? super T> subscriber) {
         State state = null;
         try {
+            // the read ahead worker would use the connection of the
+            // transaction from another thread
+            Conditions.checkArgument(
+                    query.context().readAhead() == 0 || !query.context().isTransactionOpen(),
+                    "readAhead cannot be used within a transaction");
             if (stateProvided) {
                 state = (State) parameters.get(0).value();
                 setupUnsubscription(subscriber, state);
+            } else if (sharedState != null) {
+                // only the ResultSet is recorded in state so that only it is
+                // closed on termination of this execution
+                state = new State();
+                setupUnsubscription(subscriber, state);
+                prepareSharedStatement(subscriber);
+                executeQuery(subscriber, sharedState.ps, state);
             } else {
                 state = new State();
                 connectAndPrepareStatement(subscriber, state);
                 setupUnsubscription(subscriber, state);
-                executeQuery(subscriber, state);
+                executeQuery(subscriber, state.ps, state);
             }
-            subscriber.setProducer(new QuerySelectProducer<T>(function, subscriber, state.con,
-                    state.ps, state.rs));
+            AdaptiveFetchSize fetchSize = adaptiveFetchSize(state.rs);
+            if (query.context().readAhead() > 0 && !stateProvided) {
+                if (fetchSize != null)
+                    fetchSize.request(query.context().readAhead());
+                subscriber.setProducer(new QuerySelectReadAheadProducer<T>(function, subscriber,
+                        state.con, state.ps, state.rs, query.context().readAhead(),
+                        query.context().maxRows()));
+            } else
+                subscriber.setProducer(new QuerySelectProducer<T>(function, subscriber,
+                        state.con, state.ps, state.rs, fetchSize, query.context().maxRows()));
         } catch (Throwable e) {
             query.context().endTransactionObserve();
             query.context().endTransactionSubscribe();
@@ -80,6 +124,21 @@ final class QuerySelectOnSubscribe<T> implements OnSubscribe<T> {
         }
     }
 
+    /**
+     * Returns the adjuster of the fetch size of the given {@link ResultSet}
+     * or null if the fetch size is not adaptive.
+     * 
+     * @param rs
+     * @return nullable!
+     */
+    private AdaptiveFetchSize adaptiveFetchSize(ResultSet rs) {
+        if (query.context().adaptiveFetchSize() && !stateProvided && rs != null)
+            return new AdaptiveFetchSize(rs, query.context().minFetchSize(),
+                    query.context().maxFetchSize());
+        else
+            return null;
+    }
+
     private static <T> void setupUnsubscription(Subscriber<T> subscriber, final State state) {
         subscriber.add(Subscriptions.create(new Action0() {
             @Override
@@ -104,32 +163,86 @@ final class QuerySelectOnSubscribe<T> implements OnSubscribe<T> {
         if (!subscriber.isUnsubscribed()) {
             log.debug("getting connection");
             state.con = query.context().connectionProvider().get();
-            log.debug("preparing statement,sql={}", query.sql());
-            state.ps = state.con.prepareStatement(query.sql(), ResultSet.TYPE_FORWARD_ONLY,
-                    ResultSet.CONCUR_READ_ONLY);
-            if (query.context().fetchSize() != null) {
-                state.ps.setFetchSize(query.context().fetchSize());
-            }
+            state.ps = prepareStatement(state.con);
             log.debug("setting parameters");
             Util.setParameters(state.ps, parameters, query.names());
         }
     }
 
+    /**
+     * Obtains connection and creates prepared statement for the shared state
+     * if not already present then assigns parameters to the shared prepared
+     * statement.
+     * 
+     * @param subscriber
+     * 
+     * @throws SQLException
+     */
+    private void prepareSharedStatement(Subscriber<? super T> subscriber) throws SQLException {
+        if (!subscriber.isUnsubscribed()) {
+            if (sharedState.ps == null) {
+                log.debug("getting connection for reuse");
+                sharedState.con = query.context().connectionProvider().get();
+                sharedState.ps = prepareStatement(sharedState.con);
+            } else {
+                log.debug("reusing prepared statement, sql={}", query.sql());
+            }
+            log.debug("setting parameters");
+            Util.setParameters(sharedState.ps, parameters, query.names());
+        }
+    }
+
+    private PreparedStatement prepareStatement(Connection con) throws SQLException {
+        log.debug("preparing statement,sql={}", query.sql());
+        PreparedStatement ps = con.prepareStatement(query.sql(), ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        int maxRows = query.context().maxRows();
+        if (maxRows > 0) {
+            ps.setMaxRows(maxRows);
+        }
+        if (query.context().adaptiveFetchSize()) {
+            ps.setFetchSize(capFetchSize(query.context().minFetchSize(), maxRows));
+        } else if (query.context().fetchSize() != null) {
+            ps.setFetchSize(capFetchSize(query.context().fetchSize(), maxRows));
+        } else if (maxRows > 0) {
+            ps.setFetchSize(maxRows);
+        }
+        return ps;
+    }
+
+    /**
+     * Returns the fetch size limited to <code>maxRows</code> if that is set.
+     * Non-positive fetch sizes have driver specific meanings (for example
+     * streaming with MySQL) and are returned unchanged.
+     * 
+     * @param fetchSize
+     * @param maxRows
+     * @return capped fetch size
+     */
+    private static int capFetchSize(int fetchSize, int maxRows) {
+        if (maxRows > 0 && fetchSize > maxRows)
+            return maxRows;
+        else
+            return fetchSize;
+    }
+
     /**
      * Executes the prepared statement.
      * 
      * @param subscriber
+     * @param ps
      * @param state
      * 
      * @throws SQLException
      */
-    private void executeQuery(Subscriber<? super T> subscriber, State state) throws SQLException {
+    private void executeQuery(Subscriber<? super T> subscriber, PreparedStatement ps,
+            State state) throws SQLException {
         if (!subscriber.isUnsubscribed()) {
             try {
                 log.debug("executing sql={}, parameters {}", query.sql(), parameters);
                 state.rs = query.resultSetTransform()
-                        .call(query.context().resultSetTransform().call(state.ps.executeQuery()));
-                log.debug("executed ps={}", state.ps);
+                        .call(query.context().resultSetTransform().call(ps.executeQuery()));
+                log.debug("executed ps={}", ps);
             } catch (SQLException e) {
                 throw new SQLException("failed to run sql=" + query.sql(), e);
             }
@@ -153,7 +266,7 @@ final class QuerySelectOnSubscribe<T> implements OnSubscribe<T> {
      * 
      * @param state
      */
-    private static void closeQuietly(State state) {
+    static void closeQuietly(State state) {
         // ensure only closed once and avoid race conditions
         if (state.closed.compareAndSet(false, true)) {
             // set the state fields to null after closing for garbage
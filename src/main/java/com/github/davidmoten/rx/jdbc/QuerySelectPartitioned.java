@@ -0,0 +1,347 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static com.github.davidmoten.rx.jdbc.Conditions.checkArgument;
+import static com.github.davidmoten.rx.jdbc.Conditions.checkNotNull;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.davidmoten.rx.Functions;
+import com.github.davidmoten.rx.jdbc.tuple.Tuples;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+/**
+ * A select query whose rows are read by several queries at once, each
+ * restricted to a range of values of a partition column and each on its own
+ * connection, with the results merged.
+ */
+public final class QuerySelectPartitioned {
+
+    /**
+     * The placeholder in the sql template that is replaced by the range
+     * condition of each partition.
+     */
+    public static final String RANGE = "{range}";
+
+    private QuerySelectPartitioned() {
+        // prevent instantiation
+    }
+
+    /**
+     * Builds a partitioned select. The sql template must contain
+     * {@link QuerySelectPartitioned#RANGE} (exactly once) where a condition on the partition
+     * column is to be inserted, for example
+     * <code>select * from person where {range}</code>. The partitions are
+     * determined by one of:
+     * <ul>
+     * <li>{@link #boundaries(Object...)}: explicit split points</li>
+     * <li>{@link #boundariesFrom(String)}: split points returned by a query
+     * (for example a sampling query)</li>
+     * <li>{@link #partitions(int)}: equal width ranges between the minimum and
+     * maximum of the (numeric) partition column</li>
+     * </ul>
+     * The first partition also includes rows with a null partition column
+     * and the first and last partitions are open-ended so no rows are missed
+     * whatever the split points.
+     */
+    public static final class Builder {
+
+        private final Database db;
+        private final String sqlTemplate;
+        private final String column;
+        private int partitions = 1;
+        private List<Object> boundaries;
+        private String boundariesSql;
+        private String minMaxSql;
+        private Integer maxConcurrency;
+        private Scheduler scheduler = Schedulers.io();
+
+        /**
+         * Constructor.
+         *
+         * @param sqlTemplate
+         *            select statement containing {@link #RANGE}
+         * @param column
+         *            the partition column
+         * @param db
+         */
+        public Builder(String sqlTemplate, String column, Database db) {
+            checkNotNull(sqlTemplate);
+            checkNotNull(column);
+            checkArgument(containsRangeOnce(sqlTemplate),
+                    "sql must contain " + RANGE + " exactly once");
+            this.sqlTemplate = sqlTemplate;
+            this.column = column;
+            this.db = db;
+        }
+
+        /**
+         * Splits the range between the minimum and maximum values of the
+         * partition column into <code>partitions</code> ranges of equal width.
+         * The minimum and maximum are found with
+         * <code>select min(column), max(column)</code> over the query (as a
+         * derived table) so the partition column must be selected by the
+         * query. Otherwise use {@link #partitions(int, String)}.
+         *
+         * @param partitions
+         *            number of partitions
+         * @return this
+         */
+        public Builder partitions(int partitions) {
+            return partitions(partitions, null);
+        }
+
+        /**
+         * As for {@link #partitions(int)} but the minimum and maximum values
+         * of the partition column are the first two columns returned by
+         * <code>minMaxSql</code>, for example
+         * <code>select min(id), max(id) from person</code>.
+         *
+         * @param partitions
+         *            number of partitions
+         * @param minMaxSql
+         *            query returning the minimum and maximum of the partition
+         *            column. Nullable!
+         * @return this
+         */
+        public Builder partitions(int partitions, String minMaxSql) {
+            checkArgument(partitions > 0, "partitions must be positive");
+            this.partitions = partitions;
+            this.minMaxSql = minMaxSql;
+            return this;
+        }
+
+        /**
+         * Uses the given ascending split points of the partition column. A
+         * partition is run for each range between consecutive split points
+         * plus the ranges below the first and above the last split point.
+         *
+         * @param splitPoints
+         *            ascending values of the partition column
+         * @return this
+         */
+        public Builder boundaries(Object... splitPoints) {
+            this.boundaries = Arrays.asList(splitPoints);
+            return this;
+        }
+
+        /**
+         * Uses the values of the first column of the rows returned by the
+         * given query (in ascending order) as split points (see
+         * {@link #boundaries(Object...)}). For example a query that samples
+         * every nth value of an indexed partition column gives partitions of
+         * similar size even if values are unevenly distributed.
+         *
+         * @param sql
+         *            query returning ascending split points
+         * @return this
+         */
+        public Builder boundariesFrom(String sql) {
+            checkNotNull(sql);
+            this.boundariesSql = sql;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of partitions to run at once. Defaults to
+         * the number of partitions.
+         *
+         * @param maxConcurrency
+         *            maximum partitions to run at once
+         * @return this
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler each partition is subscribed on. Defaults to
+         * {@link Schedulers#io()}.
+         *
+         * @param scheduler
+         * @return this
+         */
+        public Builder scheduler(Scheduler scheduler) {
+            checkNotNull(scheduler);
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Transforms the rows of all partitions using the given function. Rows
+         * are emitted as they arrive from each partition so are in no
+         * particular order.
+         *
+         * @param function
+         * @return the results of the query as an Observable
+         */
+        public <T> Observable<T> get(ResultSetMapper<? extends T> function) {
+            return merged(Functions.<ResultSetMapper<? extends T>> constant0(function));
+        }
+
+        /**
+         * Returns the merged results of the partitions using a mapper from
+         * <code>mapperFactory</code> for each partition so that mappers that
+         * cache per {@link ResultSet} state are not shared across threads.
+         */
+        private <T> Observable<T> merged(
+                final Func0<? extends ResultSetMapper<? extends T>> mapperFactory) {
+            return splitPoints().concatMap(new Func1<List<Object>, Observable<T>>() {
+                @Override
+                public Observable<T> call(List<Object> splitPoints) {
+                    List<Observable<T>> list = new ArrayList<Observable<T>>();
+                    for (int i = 0; i <= splitPoints.size(); i++) {
+                        list.add(Builder.this.<T> partition(splitPoints, i,
+                                mapperFactory.call()));
+                    }
+                    int n = maxConcurrency == null ? list.size() : maxConcurrency;
+                    return Observable.merge(list, n);
+                }
+            });
+        }
+
+        /**
+         * Automaps the rows of all partitions to instances of
+         * <code>cls</code>. See {@link QuerySelect.Builder#autoMap(Class)}.
+         *
+         * @param cls
+         * @return the results of the query as an Observable
+         */
+        public <T> Observable<T> autoMap(final Class<T> cls) {
+            return merged(new Func0<ResultSetMapper<T>>() {
+                @Override
+                public ResultSetMapper<T> call() {
+                    return Util.autoMap(cls);
+                }
+            });
+        }
+
+        /**
+         * Automaps the first column of the rows of all partitions to
+         * <code>cls</code>.
+         *
+         * @param cls
+         * @return the results of the query as an Observable
+         */
+        public <T> Observable<T> getAs(final Class<T> cls) {
+            return merged(new Func0<ResultSetMapper<T>>() {
+                @Override
+                public ResultSetMapper<T> call() {
+                    return Tuples.single(cls);
+                }
+            });
+        }
+
+        /**
+         * Returns the select over the <code>index</code>th partition.
+         */
+        private <T> Observable<T> partition(List<Object> splitPoints, int index,
+                ResultSetMapper<? extends T> function) {
+            String range;
+            List<Object> parameters = new ArrayList<Object>(2);
+            if (splitPoints.isEmpty()) {
+                range = "1=1";
+            } else if (index == 0) {
+                range = "(" + column + " < ? or " + column + " is null)";
+                parameters.add(splitPoints.get(0));
+            } else if (index == splitPoints.size()) {
+                range = column + " >= ?";
+                parameters.add(splitPoints.get(index - 1));
+            } else {
+                range = "(" + column + " >= ? and " + column + " < ?)";
+                parameters.add(splitPoints.get(index - 1));
+                parameters.add(splitPoints.get(index));
+            }
+            String sql = sqlTemplate.replace(RANGE, range);
+            return db.select(sql).parameters(parameters.toArray()).<T> get(function)
+                    .subscribeOn(scheduler);
+        }
+
+        private String minMaxSql() {
+            if (minMaxSql != null)
+                return minMaxSql;
+            else
+                return "select min(" + column + "), max(" + column + ") from ("
+                        + sqlTemplate.replace(RANGE, "1=1") + "\n) rx_partition";
+        }
+
+        private Observable<List<Object>> splitPoints() {
+            if (boundaries != null)
+                return Observable.just(boundaries);
+            else if (boundariesSql != null)
+                return db.select(boundariesSql).get(FIRST_COLUMN).toList();
+            else if (partitions == 1)
+                return Observable.just(Collections.emptyList());
+            else
+                return db.select(minMaxSql())
+                        .get(new ResultSetMapper<List<Object>>() {
+                            @Override
+                            public List<Object> call(ResultSet rs) throws SQLException {
+                                long min = rs.getLong(1);
+                                if (rs.wasNull())
+                                    // no rows
+                                    return Collections.emptyList();
+                                long max = rs.getLong(2);
+                                return QuerySelectPartitioned.splitPoints(min, max,
+                                        partitions);
+                            }
+                        });
+        }
+    }
+
+    /**
+     * Returns true if and only if the sql template contains {@link #RANGE}
+     * exactly once. The parameters of a range condition are bound once so the
+     * condition cannot be repeated.
+     *
+     * @param sqlTemplate
+     * @return true if the template contains one placeholder
+     */
+    static boolean containsRangeOnce(String sqlTemplate) {
+        int index = sqlTemplate.indexOf(RANGE);
+        return index >= 0 && sqlTemplate.indexOf(RANGE, index + RANGE.length()) < 0;
+    }
+
+    private static final ResultSetMapper<Object> FIRST_COLUMN = new ResultSetMapper<Object>() {
+        @Override
+        public Object call(ResultSet rs) throws SQLException {
+            return rs.getObject(1);
+        }
+    };
+
+    /**
+     * Returns the distinct values that split [min, max] into
+     * <code>partitions</code> ranges of (roughly) equal width.
+     *
+     * @param min
+     * @param max
+     * @param partitions
+     * @return ascending split points
+     */
+    static List<Object> splitPoints(long min, long max, int partitions) {
+        List<Object> list = new ArrayList<Object>(partitions - 1);
+        // use double arithmetic to avoid overflow of max - min
+        double width = ((double) max - min) / partitions;
+        long previous = min;
+        for (int i = 1; i < partitions; i++) {
+            long value = min + Math.round(i * width);
+            if (value > previous && value <= max) {
+                list.add(value);
+                previous = value;
+            }
+        }
+        return list;
+    }
+
+}
@@ -4,6 +4,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -24,17 +26,42 @@ class QuerySelectProducer<T> implements Producer {
     private final Connection con;
     private final PreparedStatement ps;
     private final ResultSet rs;
+
+    /**
+     * Non-null if rows are emitted in chunks (lists).
+     */
+    private final ResultSetMapperChunk<?> chunk;
+
+    /**
+     * Non-null if the fetch size is adjusted to requests.
+     */
+    private final AdaptiveFetchSize fetchSize;
+
+    /**
+     * Maximum number of rows to read, zero if unlimited.
+     */
+    private final int maxRows;
+
+    private long rowsRead;
+
     private volatile boolean keepGoing = true;
 
     private final AtomicLong requested = new AtomicLong(0);
 
     QuerySelectProducer(ResultSetMapper<? extends T> function, Subscriber<? super T> subscriber,
-            Connection con, PreparedStatement ps, ResultSet rs) {
+            Connection con, PreparedStatement ps, ResultSet rs, AdaptiveFetchSize fetchSize,
+            int maxRows) {
         this.function = function;
         this.subscriber = subscriber;
         this.con = con;
         this.ps = ps;
         this.rs = rs;
+        if (function instanceof ResultSetMapperChunk)
+            this.chunk = (ResultSetMapperChunk<?>) function;
+        else
+            this.chunk = null;
+        this.fetchSize = fetchSize;
+        this.maxRows = maxRows;
     }
 
     @Override
@@ -52,6 +79,7 @@ class QuerySelectProducer<T> implements Producer {
     private void requestAll() {
         // fast path
         try {
+            requestRows(Long.MAX_VALUE);
             while (keepGoing) {
                 processRow(subscriber);
             }
@@ -71,6 +99,7 @@ class QuerySelectProducer<T> implements Producer {
                 while (true) {
                     long r = requested.get();
                     long numToEmit = r;
+                    requestRows(r);
 
                     while (keepGoing && --numToEmit >= 0) {
                         processRow(subscriber);
@@ -91,6 +120,25 @@ class QuerySelectProducer<T> implements Producer {
         }
     }
 
+    /**
+     * Adjusts the fetch size (if adaptive) for <code>n</code> requested
+     * items.
+     * 
+     * @param n
+     *            requested items
+     * @throws SQLException
+     */
+    private void requestRows(long n) throws SQLException {
+        if (fetchSize != null) {
+            if (chunk == null || n == Long.MAX_VALUE)
+                fetchSize.request(n);
+            else if (n > Long.MAX_VALUE / chunk.size)
+                fetchSize.request(Long.MAX_VALUE);
+            else
+                fetchSize.request(n * chunk.size);
+        }
+    }
+
     private void closeAndHandleException(Throwable e) {
         try {
             closeQuietly();
@@ -110,13 +158,61 @@ class QuerySelectProducer<T> implements Producer {
         checkSubscription(subscriber);
         if (!keepGoing)
             return;
-        if (rs.next()) {
+        if (chunk != null)
+            processChunk(subscriber);
+        else if (nextRow()) {
             log.trace("onNext");
             subscriber.onNext(function.call(rs));
+            if (limitReached())
+                // don't wait for another request to find out the cursor is
+                // finished
+                keepGoing = false;
         } else
             keepGoing = false;
     }
 
+    /**
+     * Moves the cursor to the next row unless the row limit has been reached.
+     * 
+     * @return true if and only if there is a current row to read
+     * @throws SQLException
+     */
+    private boolean nextRow() throws SQLException {
+        if (limitReached() || !rs.next())
+            return false;
+        rowsRead++;
+        if (fetchSize != null)
+            fetchSize.rowRead();
+        return true;
+    }
+
+    private boolean limitReached() {
+        return maxRows > 0 && rowsRead >= maxRows;
+    }
+
+    /**
+     * Emits the next (up to) chunk size rows of the {@link ResultSet} as one
+     * list.
+     * 
+     * @param subscriber
+     * 
+     * @throws SQLException
+     */
+    @SuppressWarnings("unchecked")
+    private void processChunk(Subscriber<? super T> subscriber) throws SQLException {
+        List<Object> list = new ArrayList<Object>(chunk.size);
+        while (list.size() < chunk.size && nextRow()) {
+            list.add(chunk.mapper.call(rs));
+        }
+        if (list.size() < chunk.size || limitReached())
+            keepGoing = false;
+        if (!list.isEmpty()) {
+            log.trace("onNext chunk");
+            // when chunking T is List of the chunk mapper type
+            subscriber.onNext((T) list);
+        }
+    }
+
     /**
      * Tells observer that stream is complete and closes resources.
      * 
@@ -0,0 +1,268 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.rx.RxUtil;
+
+import rx.Producer;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.exceptions.Exceptions;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+
+/**
+ * Producer for a select query that reads and maps rows of the
+ * {@link ResultSet} on a separate worker into a queue (bounded by a count of
+ * buffered rows) ahead of downstream requests. Requests are served
+ * from the queue and the worker refills the queue as it is drained so that
+ * network round trips of the driver overlap with downstream processing while
+ * no more than <code>bufferSize</code> rows are held in memory.
+ */
+final class QuerySelectReadAheadProducer<T> implements Producer {
+
+    private static final Logger log = LoggerFactory.getLogger(QuerySelectReadAheadProducer.class);
+
+    /**
+     * Stands in for null mapped values which cannot be queued.
+     */
+    private static final Object NULL = new Object();
+
+    private final ResultSetMapper<? extends T> function;
+    private final Subscriber<? super T> subscriber;
+    private final Connection con;
+    private final PreparedStatement ps;
+    private final ResultSet rs;
+
+    /**
+     * Non-null if rows are emitted in chunks (lists).
+     */
+    private final ResultSetMapperChunk<?> chunk;
+
+    private final int bufferSize;
+
+    /**
+     * Maximum number of rows to read, zero if unlimited. Accessed by the
+     * fetcher only as is rowsRead.
+     */
+    private final int maxRows;
+    private long rowsRead;
+    private final Queue<Object> queue;
+
+    /**
+     * Number of items in the queue. Incremented by the fetcher, decremented by
+     * the consumer.
+     */
+    private final AtomicInteger buffered = new AtomicInteger();
+
+    private final AtomicLong requested = new AtomicLong();
+
+    /**
+     * Work-in-progress counter for emitting to the subscriber.
+     */
+    private final AtomicInteger drainWip = new AtomicInteger();
+
+    /**
+     * Work-in-progress counter for reading from the ResultSet.
+     */
+    private final AtomicInteger fetchWip = new AtomicInteger();
+
+    private final Worker worker;
+
+    // written by fetcher before setting done
+    private Throwable error;
+    private volatile boolean done;
+
+    // accessed in drain only
+    private boolean terminated;
+
+    QuerySelectReadAheadProducer(ResultSetMapper<? extends T> function,
+            Subscriber<? super T> subscriber, Connection con, PreparedStatement ps, ResultSet rs,
+            int bufferSize, int maxRows) {
+        this.function = function;
+        this.subscriber = subscriber;
+        this.con = con;
+        this.ps = ps;
+        this.rs = rs;
+        if (function instanceof ResultSetMapperChunk)
+            this.chunk = (ResultSetMapperChunk<?>) function;
+        else
+            this.chunk = null;
+        this.bufferSize = bufferSize;
+        this.maxRows = maxRows;
+        this.queue = new ConcurrentLinkedQueue<Object>();
+        this.worker = Schedulers.io().createWorker();
+        subscriber.add(worker);
+    }
+
+    @Override
+    public void request(long n) {
+        if (n > 0) {
+            RxUtil.getAndAddRequest(requested, n);
+            scheduleFetch();
+            drain();
+        }
+    }
+
+    private void scheduleFetch() {
+        if (!done && fetchWip.getAndIncrement() == 0) {
+            worker.schedule(fetch);
+        }
+    }
+
+    private final Action0 fetch = new Action0() {
+        @Override
+        public void call() {
+            int missed = 1;
+            while (true) {
+                fill();
+                missed = fetchWip.addAndGet(-missed);
+                if (missed == 0)
+                    return;
+            }
+        }
+    };
+
+    /**
+     * Reads rows into the queue until it is full or the ResultSet is
+     * exhausted. Runs on the worker only.
+     */
+    private void fill() {
+        try {
+            while (!done && buffered.get() < bufferSize) {
+                if (subscriber.isUnsubscribed()) {
+                    log.debug("unsubscribing");
+                    done = true;
+                    return;
+                }
+                Object item = next();
+                if (item == null) {
+                    closeQuietly();
+                    done = true;
+                } else {
+                    queue.offer(item);
+                    buffered.incrementAndGet();
+                }
+                drain();
+            }
+        } catch (Throwable e) {
+            Exceptions.throwIfFatal(e);
+            closeQuietly();
+            error = e;
+            done = true;
+            drain();
+        }
+    }
+
+    /**
+     * Returns the next mapped row (or chunk of rows) or null if the ResultSet
+     * is exhausted.
+     */
+    private Object next() throws Exception {
+        if (chunk != null) {
+            List<Object> list = new ArrayList<Object>(chunk.size);
+            while (list.size() < chunk.size && nextRow()) {
+                list.add(chunk.mapper.call(rs));
+            }
+            if (list.isEmpty())
+                return null;
+            else
+                return list;
+        } else if (nextRow()) {
+            Object value = function.call(rs);
+            return value == null ? NULL : value;
+        } else
+            return null;
+    }
+
+    /**
+     * Moves the cursor to the next row unless the row limit has been reached.
+     */
+    private boolean nextRow() throws Exception {
+        if (maxRows > 0 && rowsRead >= maxRows || !rs.next())
+            return false;
+        rowsRead++;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        if (drainWip.getAndIncrement() != 0)
+            return;
+        int missed = 1;
+        while (true) {
+            if (terminated)
+                return;
+            long r = requested.get();
+            long e = 0;
+            while (e != r) {
+                if (subscriber.isUnsubscribed())
+                    return;
+                boolean d = done;
+                Object item = queue.poll();
+                if (item == null) {
+                    if (d) {
+                        terminate();
+                        return;
+                    }
+                    break;
+                }
+                buffered.decrementAndGet();
+                scheduleFetch();
+                log.trace("onNext");
+                subscriber.onNext(item == NULL ? null : (T) item);
+                e++;
+            }
+            if (e == r && done && queue.isEmpty()) {
+                // nothing more to emit
+                terminate();
+                return;
+            }
+            if (e != 0 && r != Long.MAX_VALUE)
+                requested.addAndGet(-e);
+            missed = drainWip.addAndGet(-missed);
+            if (missed == 0)
+                return;
+        }
+    }
+
+    private void terminate() {
+        terminated = true;
+        if (subscriber.isUnsubscribed()) {
+            log.debug("unsubscribed");
+        } else if (error != null) {
+            log.debug("onError: {}", error.getMessage());
+            Exceptions.throwOrReport(error, subscriber);
+        } else {
+            log.debug("onCompleted");
+            subscriber.onCompleted();
+        }
+        worker.unsubscribe();
+    }
+
+    /**
+     * Closes connection resources (connection, prepared statement and result
+     * set).
+     */
+    private void closeQuietly() {
+        log.debug("closing rs");
+        Util.closeQuietly(rs);
+        log.debug("closing ps");
+        Util.closeQuietly(ps);
+        log.debug("closing con");
+        Util.closeQuietlyIfAutoCommit(con);
+        log.debug("closed");
+    }
+
+}
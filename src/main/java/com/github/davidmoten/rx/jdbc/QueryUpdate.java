@@ -1,11 +1,12 @@
 package com.github.davidmoten.rx.jdbc;
 
-import static com.github.davidmoten.rx.jdbc.Conditions.checkArgument;
 import static com.github.davidmoten.rx.jdbc.Conditions.checkNotNull;
 import static com.github.davidmoten.rx.jdbc.Queries.bufferedParameters;
 
 import java.sql.ResultSet;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.github.davidmoten.rx.Transformers;
 import com.github.davidmoten.rx.jdbc.NamedParameters.JdbcQuery;
@@ -20,8 +21,11 @@ import com.github.davidmoten.rx.jdbc.tuple.Tuples;
 
 import rx.Observable;
 import rx.Observable.Transformer;
+import rx.Scheduler;
+import rx.functions.Action1;
 import rx.functions.Func1;
 import rx.functions.Func2;
+import rx.schedulers.Schedulers;
 
 /**
  * Always emits an Observable<Integer> of size 1 containing the number of
@@ -62,9 +66,7 @@ final public class QueryUpdate<T> implements Query {
         checkNotNull(parameters);
         checkNotNull(depends);
         checkNotNull(context);
-        checkArgument(context.batchSize() <= 1 || returnGeneratedKeysFunction == null,
-                "Cannot return generated keys from a batched update");
-        this.jdbcQuery = NamedParameters.parse(sql);
+        this.jdbcQuery = JdbcQueryCache.INSTANCE.get(sql);
         this.parameters = parameters;
         this.depends = depends;
         this.context = context;
@@ -101,6 +103,14 @@ final public class QueryUpdate<T> implements Query {
         return jdbcQuery.names();
     }
 
+    int parametersCount() {
+        return jdbcQuery.parametersCount();
+    }
+
+    JdbcQuery.Kind kind() {
+        return jdbcQuery.kind();
+    }
+
     /**
      * Returns the results of an update query. Should be an {@link Observable}
      * of size 1 containing the number of records affected by the update (or
@@ -124,15 +134,22 @@ final public class QueryUpdate<T> implements Query {
 
     static <T> Observable<T> get(QueryUpdate<T> queryUpdate) {
         if (queryUpdate.context().batchSize() > 1) {
-            return bufferedParameters(queryUpdate) //
-                    // mark the last parameter list as such
-                    .compose(Transformers.mapLast(toFinalArrayList))//
+            Observable<List<Parameter>> parameterLists = bufferedParameters(queryUpdate);
+            if (queryUpdate.context().flushIntervalMs() == 0)
+                // mark the last parameter list as such
+                parameterLists = parameterLists.compose(Transformers.mapLast(toFinalArrayList))
+                        // mapLast may emit the last list on completion without
+                        // a request when parameters arrive asynchronously
+                        .onBackpressureBuffer();
+            // else marking would hold back each list until the next arrives
+            // so the remaining batch is executed on completion instead
+            return QueryUpdateBatch.execute(queryUpdate, parameterLists,
                     // execute query for each set of parameters
-                    .concatMap(queryUpdate.executeOnce());
+                    queryUpdate.executeOnce());
         } else {
-            return bufferedParameters(queryUpdate) //
-                    // execute query for each set of parameters
-                    .concatMap(queryUpdate.executeOnce());
+            // execute query for each set of parameters
+            return Queries.executeAll(bufferedParameters(queryUpdate), queryUpdate.executeOnce(),
+                    queryUpdate.context());
         }
     }
 
@@ -147,12 +164,12 @@ final public class QueryUpdate<T> implements Query {
         return new Func1<List<Parameter>, Observable<T>>() {
             @Override
             public Observable<T> call(final List<Parameter> params) {
-                if (jdbcQuery.sql().equals(QueryUpdateOnSubscribe.BEGIN_TRANSACTION)) {
+                JdbcQuery.Kind kind = jdbcQuery.kind();
+                if (kind == JdbcQuery.Kind.BEGIN_TRANSACTION) {
                     context.beginTransactionSubscribe();
                 }
                 Observable<T> result = createUpdate(params).subscribeOn(context.scheduler());
-                if (jdbcQuery.sql().equals(QueryUpdateOnSubscribe.COMMIT)
-                        || jdbcQuery.sql().equals(QueryUpdateOnSubscribe.ROLLBACK))
+                if (kind == JdbcQuery.Kind.COMMIT || kind == JdbcQuery.Kind.ROLLBACK)
                     context.endTransactionSubscribe();
                 return result;
             }
@@ -177,11 +194,19 @@ final public class QueryUpdate<T> implements Query {
     final public static class Builder {
 
         private static final int DEFAULT_BATCH_SIZE = 1;
+        static final int[] DEFAULT_MULTI_ROW_BUCKETS = new int[] { 1, 8, 32, 128 };
         /**
          * Standard query builder.
          */
         private final QueryBuilder builder;
         private int batchSize = DEFAULT_BATCH_SIZE;
+        private int maxConcurrency = 1;
+        private boolean preserveOrder = true;
+        private CommitPolicy commitPolicy;
+        private long flushIntervalMs;
+        private Scheduler flushScheduler;
+        private Action1<? super BatchFlush> flushListener;
+        private int[] multiRowBuckets;
 
         /**
          * Constructor.
@@ -306,15 +331,15 @@ final public class QueryUpdate<T> implements Query {
          * {@link ResultSet}. Not all jdbc drivers support this functionality
          * and some have limitations in their support (h2 for instance only
          * returns the last generated key when multiple inserts happen in the
-         * one statement).
+         * one statement). With a batch size greater than one the keys of each
+         * batch are emitted in order of the parameters when the batch is
+         * executed (see {@link #rowCounts()}).
          * 
          * @return a builder used to specify how to process the generated keys
          *         ResultSet
          */
         public ReturnGeneratedKeysBuilder returnGeneratedKeys() {
-            Conditions.checkArgument(batchSize == 1,
-                    "Cannot return generated keys if batchSize > 1");
-            return new ReturnGeneratedKeysBuilder(builder);
+            return new ReturnGeneratedKeysBuilder(builder, context());
         }
 
         /**
@@ -324,14 +349,50 @@ final public class QueryUpdate<T> implements Query {
          * @return Observable of counts of rows affected.
          */
         public Observable<Integer> count() {
+            return new QueryUpdate<Integer>(builder.sql(), builder.parameters(), builder.depends(),
+                    context(), null).count();
+        }
+
+        /**
+         * Returns an {@link Observable} with the count of rows affected by each
+         * parameter set in order of the parameters. Unbatched this is the same
+         * as {@link #count()}. With a batch size greater than one (outside of
+         * a transaction only) the counts of a batch are emitted when the batch
+         * is executed rather than as one total. A count may be
+         * {@link java.sql.Statement#SUCCESS_NO_INFO} if the driver does not
+         * report it, as is the case for rows of multi-row inserts that do not
+         * all report one row affected.
+         * 
+         * @return Observable of counts of rows affected per parameter set
+         */
+        public Observable<Integer> rowCounts() {
+            return new QueryUpdate<Integer>(builder.sql(), builder.parameters(), builder.depends(),
+                    context().rowCounts(true), null).count();
+        }
+
+        private QueryContext context() {
             QueryContext ctxt;
             if (batchSize > 1) {
                 ctxt = builder.context().batched(batchSize);
+                if (commitPolicy != null)
+                    ctxt = ctxt.commitPolicy(commitPolicy);
+                if (flushIntervalMs > 0)
+                    ctxt = ctxt.flushInterval(flushIntervalMs, flushScheduler);
+                if (flushListener != null)
+                    ctxt = ctxt.flushListener(flushListener);
+                if (multiRowBuckets != null)
+                    ctxt = ctxt.multiRowInsert(multiRowBuckets);
             } else {
                 ctxt = builder.context();
             }
-            return new QueryUpdate<Integer>(builder.sql(), builder.parameters(), builder.depends(),
-                    ctxt, null).count();
+            if (maxConcurrency > 1) {
+                // batches are accumulated on one connection so are not run
+                // concurrently
+                Conditions.checkArgument(batchSize <= 1,
+                        "maxConcurrency > 1 cannot be combined with batchSize > 1");
+                ctxt = ctxt.maxConcurrency(maxConcurrency, preserveOrder);
+            }
+            return ctxt;
         }
 
         /**
@@ -394,18 +455,178 @@ final public class QueryUpdate<T> implements Query {
             return this;
         }
 
+        /**
+         * Sets the number of parameter sets that are sent to the database in
+         * one jdbc batch. Within a transaction the batches are committed with
+         * the transaction. Otherwise the update obtains its own connection
+         * and commits according to {@link #commitPolicy(CommitPolicy)}.
+         * 
+         * @param batchSize
+         *            parameter sets per batch
+         * @return this
+         */
         public Builder batchSize(int batchSize) {
             this.batchSize = batchSize;
             return this;
         }
+
+        /**
+         * Sets when a batched update (see {@link #batchSize(int)}) that is not
+         * run within a transaction commits. Defaults to
+         * {@link CommitPolicy#PER_BATCH}.
+         * 
+         * @param commitPolicy
+         * @return this
+         */
+        public Builder commitPolicy(CommitPolicy commitPolicy) {
+            Conditions.checkNotNull(commitPolicy);
+            this.commitPolicy = commitPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time that a parameter set of a batched update (see
+         * {@link #batchSize(int)}) waits in a partially filled batch. A batch
+         * is executed when it reaches the batch size or when the interval has
+         * passed since its first parameter set was added, whichever comes
+         * first, and is committed according to
+         * {@link #commitPolicy(CommitPolicy)}. Parameter sets are added to the
+         * batch as they arrive and the count of a timed flush is emitted when
+         * the timer executes the batch, as is its error if it fails. Cannot be
+         * used within a transaction. The timer runs on
+         * {@link Schedulers#io()}.
+         * 
+         * @param duration
+         * @param unit
+         * @return this
+         */
+        public Builder flushInterval(long duration, TimeUnit unit) {
+            return flushInterval(duration, unit, Schedulers.io());
+        }
+
+        /**
+         * Sets the maximum time that a parameter set of a batched update waits
+         * in a partially filled batch (see
+         * {@link #flushInterval(long, TimeUnit)}) with the timer running on
+         * the given scheduler.
+         * 
+         * @param duration
+         * @param unit
+         * @param scheduler
+         * @return this
+         */
+        public Builder flushInterval(long duration, TimeUnit unit, Scheduler scheduler) {
+            Conditions.checkArgument(duration > 0, "flush interval must be positive");
+            Conditions.checkNotNull(scheduler);
+            this.flushIntervalMs = Math.max(1, unit.toMillis(duration));
+            this.flushScheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Sets a listener that is notified of the size, count and latency of
+         * each batch executed by a batched update that is not run within a
+         * transaction. The listener is called while the batch is held so
+         * should return quickly.
+         * 
+         * @param listener
+         * @return this
+         */
+        public Builder onFlush(Action1<? super BatchFlush> listener) {
+            Conditions.checkNotNull(listener);
+            this.flushListener = listener;
+            return this;
+        }
+
+        /**
+         * Executes each batch of a batched insert (see {@link #batchSize(int)})
+         * as multi-row insert statements with 1, 8, 32 or 128 rows each. See
+         * {@link #multiRowInsert(int...)}.
+         * 
+         * @return this
+         */
+        public Builder multiRowInsert() {
+            return multiRowInsert(DEFAULT_MULTI_ROW_BUCKETS);
+        }
+
+        /**
+         * Executes each batch of a batched insert (see {@link #batchSize(int)})
+         * as multi-row insert statements rather than with jdbc batching, which
+         * many drivers send as one statement execution per row. The sql must
+         * be of the form <code>insert into t(a,b) values (?,?)</code> and is
+         * rewritten to <code>insert into t(a,b) values (?,?),(?,?),...</code>.
+         * A batch is split into statements of the largest bucket size that
+         * fits (and single row statements for any remainder) so that only a
+         * few distinct statements are prepared. The number of parameters of
+         * the largest statement must be within the limits of the database
+         * (for example 32767 for some drivers). Cannot be used within a
+         * transaction.
+         * 
+         * @param buckets
+         *            ascending positive numbers of rows per statement
+         * @return this
+         */
+        public Builder multiRowInsert(int... buckets) {
+            Conditions.checkArgument(buckets.length > 0, "at least one bucket size required");
+            for (int i = 0; i < buckets.length; i++)
+                Conditions.checkArgument(buckets[i] > 0 && (i == 0 || buckets[i] > buckets[i - 1]),
+                        "bucket sizes must be positive and ascending");
+            Conditions.checkArgument(
+                    Util.multiRowInsert(JdbcQueryCache.INSTANCE.get(builder.sql()).sql(),
+                            1) != null,
+                    "multi-row insert requires sql of the form insert into t(a,b) values (?,?)");
+            this.multiRowBuckets = Arrays.copyOf(buckets, buckets.length);
+            return this;
+        }
+
+        /**
+         * Runs the update for up to <code>maxConcurrency</code> sets of
+         * parameters at once, each on its own connection, emitting the counts
+         * in the order of the parameters. If the database runs queries on the
+         * current thread then the executions run on
+         * {@link rx.schedulers.Schedulers#io()}. Executions within a
+         * transaction always run one after another. Cannot be combined with a
+         * batch size greater than one (an {@link IllegalArgumentException} is
+         * thrown when the update is built).
+         * 
+         * @param maxConcurrency
+         *            maximum number of executions to run at once
+         * @return this
+         */
+        public Builder maxConcurrency(int maxConcurrency) {
+            return maxConcurrency(maxConcurrency, true);
+        }
+
+        /**
+         * As for {@link #maxConcurrency(int)} but if <code>preserveOrder</code>
+         * is false then results are emitted as they arrive from any execution.
+         * 
+         * @param maxConcurrency
+         *            maximum number of executions to run at once
+         * @param preserveOrder
+         *            if true results are emitted in parameter order
+         * @return this
+         */
+        public Builder maxConcurrency(int maxConcurrency, boolean preserveOrder) {
+            Conditions.checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+            this.maxConcurrency = maxConcurrency;
+            this.preserveOrder = preserveOrder;
+            return this;
+        }
     }
 
     public static class ReturnGeneratedKeysBuilder {
 
         private final QueryBuilder builder;
+        private final QueryContext context;
 
         public ReturnGeneratedKeysBuilder(QueryBuilder builder) {
+            this(builder, builder.context());
+        }
+
+        ReturnGeneratedKeysBuilder(QueryBuilder builder, QueryContext context) {
             this.builder = builder;
+            this.context = context;
         }
 
         /**
@@ -416,7 +637,7 @@ final public class QueryUpdate<T> implements Query {
          */
         public <T> Observable<T> get(ResultSetMapper<? extends T> function) {
             return QueryUpdate.get(new QueryUpdate<T>(builder.sql(), builder.parameters(),
-                    builder.depends(), builder.context(), function));
+                    builder.depends(), context, function));
         }
 
         /**
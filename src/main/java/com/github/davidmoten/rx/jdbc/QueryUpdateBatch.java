@@ -0,0 +1,470 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.rx.jdbc.BatchFlush.Trigger;
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+import rx.Observable;
+import rx.Scheduler.Worker;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.subjects.UnicastSubject;
+
+/**
+ * Executes the parameter sets of a batched update that is not run within a
+ * transaction. A connection is obtained for the subscription and parameter
+ * sets are added to a jdbc batch that is executed every
+ * <code>batchSize</code> sets, after the flush interval if one is set, and
+ * after the last set, and committed according to the {@link CommitPolicy}.
+ * Uncommitted work is rolled back if the subscription terminates early or
+ * with an error. Batches of inserts can be executed as multi-row insert
+ * statements instead of jdbc batches.
+ *
+ * <p>
+ * By default a count is emitted for each parameter set, being the total count
+ * of the batches it caused to be executed (zero if none), and the count of a
+ * batch executed by the flush timer is emitted when the timer executes it. If
+ * counts per parameter set or generated keys are requested then those of each
+ * executed batch are emitted in order of the parameters instead. Results are
+ * emitted by the batch while it holds its lock so that those of the parameter
+ * sets and of the timer are serialized.
+ */
+final class QueryUpdateBatch {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryUpdateBatch.class);
+
+    private final QueryUpdate<?> query;
+    private final int batchSize;
+    private final CommitPolicy commitPolicy;
+    private final long flushIntervalMs;
+    private final Action1<? super BatchFlush> flushListener;
+    // nullable
+    private final int[] multiRowBuckets;
+    private final boolean rowCounts;
+    // nullable
+    private final ResultSetMapper<?> keysMapper;
+
+    /**
+     * True if the query runs within a transaction (and so is executed by the
+     * transaction batching mechanism). Null until the first parameter set
+     * arrives, by which time the dependencies that might have begun the
+     * transaction have completed.
+     */
+    private Boolean transactional;
+
+    // guarded by this
+    private Connection con;
+    private PreparedStatement ps;
+    // parameters of the batch when executed as multi-row inserts
+    private final List<List<Parameter>> rows = new ArrayList<List<Parameter>>();
+    // multi-row insert statements by number of rows
+    private final Map<Integer, PreparedStatement> multiRowStatements = new HashMap<Integer, PreparedStatement>();
+    private boolean restoreAutoCommit;
+    private int added;
+    private long firstAddedTime;
+    private boolean uncommitted;
+    private boolean closed;
+    private Worker worker;
+    private Subscription timer;
+    // total count of batches executed since results were last emitted
+    private int flushedCount;
+    private boolean flushed;
+    // row counts or keys of batches executed since results were last emitted
+    private final List<Object> results = new ArrayList<Object>();
+    // failure of a timed flush
+    private SQLException error;
+    // results emitted as batches are executed, buffered till requested
+    private final UnicastSubject<Object> output = UnicastSubject.create();
+
+    private QueryUpdateBatch(QueryUpdate<?> query) {
+        this.query = query;
+        this.batchSize = query.context().batchSize();
+        this.commitPolicy = query.context().commitPolicy();
+        this.flushIntervalMs = query.context().flushIntervalMs();
+        this.flushListener = query.context().flushListener();
+        this.multiRowBuckets = query.context().multiRowBuckets();
+        this.rowCounts = query.context().rowCounts();
+        this.keysMapper = query.returnGeneratedKeysFunction();
+    }
+
+    /**
+     * Returns the results of executing each parameter set of the batched
+     * update, using <code>transactional</code> to execute them if the
+     * query runs within a transaction.
+     */
+    static <T> Observable<T> execute(final QueryUpdate<T> query,
+            final Observable<List<Parameter>> parameterLists,
+            final Func1<List<Parameter>, Observable<T>> transactional) {
+        return Observable.using(new Func0<QueryUpdateBatch>() {
+            @Override
+            public QueryUpdateBatch call() {
+                return new QueryUpdateBatch(query);
+            }
+        }, new Func1<QueryUpdateBatch, Observable<T>>() {
+            @Override
+            public Observable<T> call(QueryUpdateBatch batch) {
+                return parameterLists.concatMap(batch.executeOnce(transactional))
+                        .concatWith(batch.<T> finish())
+                        // the results of a batch not run within a transaction
+                        // are emitted by the batch when it is executed
+                        .mergeWith(batch.<T> output());
+            }
+        }, CLOSE);
+    }
+
+    private static final Action1<QueryUpdateBatch> CLOSE = new Action1<QueryUpdateBatch>() {
+        @Override
+        public void call(QueryUpdateBatch batch) {
+            batch.close();
+        }
+    };
+
+    private <T> Func1<List<Parameter>, Observable<T>> executeOnce(
+            final Func1<List<Parameter>, Observable<T>> transactional) {
+        return new Func1<List<Parameter>, Observable<T>>() {
+            @Override
+            public Observable<T> call(final List<Parameter> params) {
+                if (QueryUpdateBatch.this.transactional == null) {
+                    QueryUpdateBatch.this.transactional = query.context().isTransactionOpen();
+                    if (QueryUpdateBatch.this.transactional && (flushIntervalMs > 0
+                            || multiRowBuckets != null || rowCounts || keysMapper != null))
+                        return Observable.error(new SQLRuntimeException(
+                                "a flush interval, multi-row insert, row counts or generated keys cannot be used with batching within a transaction"));
+                }
+                if (QueryUpdateBatch.this.transactional)
+                    return transactional.call(params);
+                else
+                    return run(new Callable<Void>() {
+                        @Override
+                        public Void call() throws SQLException {
+                            add(params);
+                            return null;
+                        }
+                    });
+            }
+        };
+    }
+
+    /**
+     * Returns an Observable that on subscription runs the callable on the
+     * query scheduler and completes (or emits its error).
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Observable<T> run(Callable<?> callable) {
+        return (Observable<T>) Observable.fromCallable(callable)
+                .subscribeOn(query.context().scheduler()).ignoreElements();
+    }
+
+    /**
+     * Returns the results of the batches as they are executed.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Observable<T> output() {
+        return (Observable<T>) (Observable<?>) output;
+    }
+
+    /**
+     * Adds the parameter set to the batch executing the batch if it is full or
+     * the set is the last one, and emits the results of batches executed
+     * since results were last emitted.
+     *
+     * @param params
+     * @throws SQLException
+     */
+    private synchronized void add(List<Parameter> params) throws SQLException {
+        try {
+            if (closed)
+                return;
+            if (error != null)
+                throw error;
+            if (con == null) {
+                con = query.context().connectionProvider().get();
+                if (con.getAutoCommit()) {
+                    con.setAutoCommit(false);
+                    restoreAutoCommit = true;
+                }
+            }
+            if (multiRowBuckets != null)
+                rows.add(Util.orderedParameters(params, query.names()));
+            else {
+                if (ps == null) {
+                    log.debug("preparing batch statement sql={}", query.sql());
+                    ps = prepare(query.sql());
+                }
+                Util.setParameters(ps, params, query.names());
+                ps.addBatch();
+            }
+            added++;
+            uncommitted = true;
+            if (added == 1) {
+                firstAddedTime = System.nanoTime();
+                startTimer();
+            }
+            if (params instanceof ArrayListFinal)
+                flush(Trigger.END, true);
+            else if (added == batchSize)
+                flush(Trigger.SIZE, commitPolicy == CommitPolicy.PER_BATCH);
+            if (isCountOnly())
+                // the total is emitted for every parameter set
+                flushed = true;
+            emitResults();
+        } catch (SQLException e) {
+            throw new SQLException("failed to execute sql=" + query.sql(), e);
+        }
+    }
+
+    private PreparedStatement prepare(String sql) throws SQLException {
+        if (keysMapper == null)
+            return con.prepareStatement(sql);
+        else
+            return con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    private boolean isCountOnly() {
+        return !rowCounts && keysMapper == null;
+    }
+
+    /**
+     * Emits the results of the batches executed since results were last
+     * emitted. That is the total count of the batches if any were executed, or
+     * their row counts or generated keys. Called with the lock held.
+     */
+    private void emitResults() {
+        if (!isCountOnly()) {
+            for (Object result : results)
+                output.onNext(result);
+            results.clear();
+        } else if (flushed)
+            output.onNext(flushedCount);
+        flushedCount = 0;
+        flushed = false;
+    }
+
+    /**
+     * Returns an Observable that executes and commits what remains of the
+     * batch when the parameter sets complete, emits the results of the
+     * batches executed since the last parameter set and completes the output.
+     */
+    private <T> Observable<T> finish() {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @Override
+            public Observable<T> call() {
+                if (transactional == null || transactional) {
+                    completeOutput();
+                    return Observable.empty();
+                }
+                return run(new Callable<Void>() {
+                    @Override
+                    public Void call() throws SQLException {
+                        finishBatch();
+                        return null;
+                    }
+                });
+            }
+        });
+    }
+
+    private synchronized void completeOutput() {
+        output.onCompleted();
+    }
+
+    private synchronized void finishBatch() throws SQLException {
+        try {
+            if (closed)
+                return;
+            if (error != null)
+                throw error;
+            if (added > 0)
+                flush(Trigger.END, true);
+            else if (uncommitted)
+                commit();
+            emitResults();
+            output.onCompleted();
+        } catch (SQLException e) {
+            throw new SQLException("failed to execute sql=" + query.sql(), e);
+        }
+    }
+
+    private void startTimer() {
+        if (flushIntervalMs == 0)
+            return;
+        if (worker == null)
+            worker = query.context().flushScheduler().createWorker();
+        timer = worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                flushTimed();
+            }
+        }, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void flushTimed() {
+        if (closed || added == 0 || error != null)
+            return;
+        try {
+            flush(Trigger.TIME, commitPolicy == CommitPolicy.PER_BATCH);
+            // emitted now as the next parameter set may be a long time coming
+            emitResults();
+        } catch (SQLException e) {
+            log.debug("timed flush failed", e);
+            error = e;
+            output.onError(new SQLException("failed to execute sql=" + query.sql(), e));
+        }
+    }
+
+    /**
+     * Executes the batch, commits it if requested and records its results to
+     * be emitted.
+     */
+    private void flush(Trigger trigger, boolean commit) throws SQLException {
+        if (timer != null) {
+            timer.unsubscribe();
+            timer = null;
+        }
+        int rows = added;
+        added = 0;
+        log.debug("executing batch of {} triggered by {}", rows, trigger);
+        long start = System.nanoTime();
+        int count;
+        if (multiRowBuckets == null) {
+            int[] counts = ps.executeBatch();
+            count = sum(counts);
+            if (rowCounts)
+                for (int x : counts)
+                    results.add(x);
+            if (keysMapper != null)
+                addKeys(ps);
+        } else
+            count = executeMultiRow();
+        if (commit)
+            commit();
+        flushedCount += count;
+        flushed = true;
+        if (flushListener != null) {
+            long now = System.nanoTime();
+            BatchFlush event = new BatchFlush(trigger, rows, count, commit,
+                    now - firstAddedTime, now - start);
+            try {
+                flushListener.call(event);
+            } catch (RuntimeException e) {
+                log.warn("flush listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Inserts the rows of the batch with statements of the largest bucket
+     * size that fits the rows remaining (or single row statements).
+     *
+     * @return count of rows affected
+     */
+    private int executeMultiRow() throws SQLException {
+        int count = 0;
+        int i = 0;
+        while (i < rows.size()) {
+            int n = 1;
+            for (int size : multiRowBuckets)
+                if (size <= rows.size() - i)
+                    n = size;
+            PreparedStatement statement = multiRowStatement(n);
+            List<Parameter> params = new ArrayList<Parameter>();
+            for (List<Parameter> row : rows.subList(i, i + n))
+                params.addAll(row);
+            Util.setParameters(statement, params, true);
+            int c = Math.max(0, statement.executeUpdate());
+            count += c;
+            if (rowCounts)
+                // the rows of one statement are only known individually if
+                // each affected one row
+                for (int j = 0; j < n; j++)
+                    results.add(c == n ? 1 : Statement.SUCCESS_NO_INFO);
+            if (keysMapper != null)
+                addKeys(statement);
+            i += n;
+        }
+        rows.clear();
+        return count;
+    }
+
+    private PreparedStatement multiRowStatement(int n) throws SQLException {
+        PreparedStatement statement = multiRowStatements.get(n);
+        if (statement == null) {
+            String sql = Util.multiRowInsert(query.sql(), n);
+            log.debug("preparing multi-row insert statement of {} rows", n);
+            statement = prepare(sql);
+            multiRowStatements.put(n, statement);
+        }
+        return statement;
+    }
+
+    private void addKeys(PreparedStatement statement) throws SQLException {
+        ResultSet rs = statement.getGeneratedKeys();
+        try {
+            ResultSet transformed = query.context().resultSetTransform().call(rs);
+            while (transformed.next())
+                results.add(keysMapper.call(transformed));
+        } finally {
+            Util.closeQuietly(rs);
+        }
+    }
+
+    private void commit() throws SQLException {
+        con.commit();
+        uncommitted = false;
+        log.debug("committed batch");
+        query.context().resultCaches().updated(query.sql(), false);
+    }
+
+    private synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        if (worker != null)
+            worker.unsubscribe();
+        if (con == null)
+            return;
+        try {
+            if (uncommitted) {
+                log.debug("rolling back uncommitted batch");
+                con.rollback();
+            }
+            if (restoreAutoCommit)
+                con.setAutoCommit(true);
+        } catch (SQLException e) {
+            log.warn(e.getMessage(), e);
+        } finally {
+            Util.closeQuietly(ps);
+            for (PreparedStatement statement : multiRowStatements.values())
+                Util.closeQuietly(statement);
+            Util.closeQuietly(con);
+        }
+    }
+
+    private static int sum(int[] counts) {
+        int sum = 0;
+        for (int x : counts) {
+            // drivers may report Statement.SUCCESS_NO_INFO (-2) for each row
+            if (x > 0)
+                sum += x;
+        }
+        return sum;
+    }
+
+}
@@ -8,6 +8,7 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.davidmoten.rx.jdbc.NamedParameters.JdbcQuery;
 import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
 
 import rx.Observable;
@@ -110,7 +111,7 @@ final class QueryUpdateOnSubscribe<T> implements OnSubscribe<T> {
     }
 
     private boolean isBeginTransaction() {
-        return query.sql().equals(BEGIN_TRANSACTION);
+        return query.kind() == JdbcQuery.Kind.BEGIN_TRANSACTION;
     }
 
     @SuppressWarnings("unchecked")
@@ -137,7 +138,7 @@ final class QueryUpdateOnSubscribe<T> implements OnSubscribe<T> {
      * @return if is commit
      */
     private boolean isCommit() {
-        return query.sql().equals(COMMIT);
+        return query.kind() == JdbcQuery.Kind.COMMIT;
     }
 
     /**
@@ -146,7 +147,7 @@ final class QueryUpdateOnSubscribe<T> implements OnSubscribe<T> {
      * @return if is rollback
      */
     private boolean isRollback() {
-        return query.sql().equals(ROLLBACK);
+        return query.kind() == JdbcQuery.Kind.ROLLBACK;
     }
 
     /**
@@ -166,6 +167,7 @@ final class QueryUpdateOnSubscribe<T> implements OnSubscribe<T> {
         debug("committing");
         Conditions.checkTrue(!Util.isAutoCommit(state.con));
         Util.commit(state.con);
+        query.context().resultCaches().transactionEnded();
         // must close before onNext so that connection is released and is
         // available to a query that might process the onNext
         close(state);
@@ -191,6 +193,7 @@ final class QueryUpdateOnSubscribe<T> implements OnSubscribe<T> {
         query.context().endTransactionObserve();
         Conditions.checkTrue(!Util.isAutoCommit(state.con));
         Util.rollback(state.con);
+        query.context().resultCaches().transactionEnded();
         // must close before onNext so that connection is released and is
         // available to a query that might process the onNext
         close(state);
@@ -212,16 +215,18 @@ final class QueryUpdateOnSubscribe<T> implements OnSubscribe<T> {
         if (subscriber.isUnsubscribed()) {
             return;
         }
-        if (query.context().batchSize() > 1 && !query.context().isTransactionOpen()) {
-            throw new SQLRuntimeException("batching can only be performed within a transaction");
-        }
         int keysOption;
         if (query.returnGeneratedKeys()) {
             keysOption = Statement.RETURN_GENERATED_KEYS;
         } else {
             keysOption = Statement.NO_GENERATED_KEYS;
         }
-        state.ps = state.con.prepareStatement(query.sql(), keysOption);
+        if (state.con instanceof ConnectionBatch && query.context().batchSize() > 1)
+            // one batched statement per sql is kept for the transaction
+            state.ps = ((ConnectionBatch) state.con).prepareBatch(query.sql(), keysOption,
+                    query.context().batchSize());
+        else
+            state.ps = state.con.prepareStatement(query.sql(), keysOption);
         Util.setParameters(state.ps, parameters, query.names());
 
         if (subscriber.isUnsubscribed())
@@ -238,6 +243,8 @@ final class QueryUpdateOnSubscribe<T> implements OnSubscribe<T> {
                 count = state.ps.executeUpdate();
             }
             debug("executed ps={}", state.ps);
+            query.context().resultCaches().updated(query.sql(),
+                    query.context().isTransactionOpen());
             if (query.returnGeneratedKeys()) {
                 debug("getting generated keys");
                 ResultSet rs = state.ps.getGeneratedKeys();
@@ -0,0 +1,369 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static com.github.davidmoten.rx.jdbc.Conditions.checkArgument;
+import static com.github.davidmoten.rx.jdbc.Conditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.observables.GroupedObservable;
+import rx.schedulers.Schedulers;
+
+/**
+ * A batched update whose parameter sets are partitioned by key into several
+ * lanes that run at once, each with its own connection, batch and commits.
+ * Parameter sets with the same key are always executed by the same lane in
+ * the order they arrive.
+ */
+public final class QueryUpdatePartitioned {
+
+    private QueryUpdatePartitioned() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the lane of parameter sets with the given key.
+     *
+     * @param key
+     *            nullable key
+     * @param lanes
+     *            number of lanes
+     * @return lane index between 0 and lanes - 1
+     */
+    static int lane(Object key, int lanes) {
+        int h = key == null ? 0 : key.hashCode();
+        // spread the high bits as keys such as sequential longs may differ
+        // only there
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % lanes;
+    }
+
+    private static final class Keyed {
+        final int lane;
+        final List<?> values;
+
+        Keyed(int lane, List<?> values) {
+            this.lane = lane;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Builds a partitioned update. Each lane is a batched update that is not
+     * run within a transaction (see {@link QueryUpdate.Builder#batchSize(int)})
+     * so obtains its own connection from the database's connection provider,
+     * which should therefore be a pool of at least as many connections as
+     * there are lanes. Each lane buffers a limited number of parameter sets so
+     * that the source is only requested from as fast as the slowest lane
+     * executes them.
+     */
+    public static final class Builder {
+
+        private final Database db;
+        private final String sql;
+        private int lanes = 4;
+        private int batchSize = 100;
+        private CommitPolicy commitPolicy;
+        private long flushInterval;
+        private TimeUnit flushIntervalUnit;
+        private int[] multiRowBuckets;
+        private int bufferSize = 128;
+        private Scheduler scheduler = Schedulers.io();
+        private Action1<? super LaneStatistics> laneListener;
+        private Func1<Integer, Observable<Keyed>> parameters;
+
+        /**
+         * Constructor.
+         *
+         * @param sql
+         *            update statement
+         * @param db
+         */
+        public Builder(String sql, Database db) {
+            checkNotNull(sql);
+            this.sql = sql;
+            this.db = db;
+        }
+
+        /**
+         * Sets the parameter sets of the update and the key they are
+         * partitioned by.
+         *
+         * @param source
+         *            the items to write
+         * @param key
+         *            returns the key of an item. Items with equal keys are
+         *            written in order by the same lane
+         * @param values
+         *            returns the parameter values of an item in order of the
+         *            parameters of the sql. An item with the wrong number of
+         *            values fails the update with an
+         *            {@link IllegalArgumentException}
+         * @return this
+         */
+        public <T> Builder parameters(final Observable<T> source, final Func1<? super T, ?> key,
+                final Func1<? super T, ? extends List<?>> values) {
+            checkNotNull(source);
+            checkNotNull(key);
+            checkNotNull(values);
+            final int count = JdbcQueryCache.INSTANCE.get(sql).parametersCount();
+            this.parameters = new Func1<Integer, Observable<Keyed>>() {
+                @Override
+                public Observable<Keyed> call(final Integer lanes) {
+                    return source.map(new Func1<T, Keyed>() {
+                        @Override
+                        public Keyed call(T t) {
+                            List<?> list = values.call(t);
+                            // the values of all items of a lane are flattened
+                            // into one parameter stream so a list of the wrong
+                            // size would shift the parameters of every later
+                            // item of the lane
+                            checkArgument(list.size() == count, "expected " + count
+                                    + " parameter values but was given " + list.size());
+                            return new Keyed(lane(key.call(t), lanes), list);
+                        }
+                    });
+                }
+            };
+            return this;
+        }
+
+        /**
+         * Sets the number of lanes (and so connections) that write at once.
+         * Defaults to 4.
+         *
+         * @param lanes
+         * @return this
+         */
+        public Builder lanes(int lanes) {
+            checkArgument(lanes > 0, "lanes must be positive");
+            this.lanes = lanes;
+            return this;
+        }
+
+        /**
+         * Sets the number of parameter sets in each batch of a lane. Defaults
+         * to 100.
+         *
+         * @param batchSize
+         *            parameter sets per batch (greater than one)
+         * @return this
+         */
+        public Builder batchSize(int batchSize) {
+            checkArgument(batchSize > 1, "batchSize must be greater than one");
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets when each lane commits. See
+         * {@link QueryUpdate.Builder#commitPolicy(CommitPolicy)}.
+         *
+         * @param commitPolicy
+         * @return this
+         */
+        public Builder commitPolicy(CommitPolicy commitPolicy) {
+            checkNotNull(commitPolicy);
+            this.commitPolicy = commitPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time a parameter set waits in a partially filled
+         * batch of a lane. See
+         * {@link QueryUpdate.Builder#flushInterval(long, TimeUnit)}.
+         *
+         * @param duration
+         * @param unit
+         * @return this
+         */
+        public Builder flushInterval(long duration, TimeUnit unit) {
+            checkArgument(duration > 0, "flush interval must be positive");
+            checkNotNull(unit);
+            this.flushInterval = duration;
+            this.flushIntervalUnit = unit;
+            return this;
+        }
+
+        /**
+         * Executes the batches of each lane as multi-row inserts with 1, 8, 32
+         * or 128 rows each. See {@link QueryUpdate.Builder#multiRowInsert()}.
+         *
+         * @return this
+         */
+        public Builder multiRowInsert() {
+            return multiRowInsert(QueryUpdate.Builder.DEFAULT_MULTI_ROW_BUCKETS);
+        }
+
+        /**
+         * Executes the batches of each lane as multi-row inserts. See
+         * {@link QueryUpdate.Builder#multiRowInsert(int...)}.
+         *
+         * @param buckets
+         *            ascending positive numbers of rows per statement
+         * @return this
+         */
+        public Builder multiRowInsert(int... buckets) {
+            checkArgument(buckets.length > 0, "at least one bucket size required");
+            for (int i = 0; i < buckets.length; i++)
+                checkArgument(buckets[i] > 0 && (i == 0 || buckets[i] > buckets[i - 1]),
+                        "bucket sizes must be positive and ascending");
+            checkArgument(
+                    Util.multiRowInsert(JdbcQueryCache.INSTANCE.get(sql).sql(), 1) != null,
+                    "multi-row insert requires sql of the form insert into t(a,b) values (?,?)");
+            this.multiRowBuckets = Arrays.copyOf(buckets, buckets.length);
+            return this;
+        }
+
+        /**
+         * Sets the number of parameter sets each lane buffers ahead of its
+         * writes. Defaults to 128.
+         *
+         * @param bufferSize
+         * @return this
+         */
+        public Builder bufferSize(int bufferSize) {
+            checkArgument(bufferSize > 0, "bufferSize must be positive");
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler that the lanes run on. Defaults to
+         * {@link Schedulers#io()}.
+         *
+         * @param scheduler
+         * @return this
+         */
+        public Builder scheduler(Scheduler scheduler) {
+            checkNotNull(scheduler);
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Sets a listener that is notified with the cumulative statistics of a
+         * lane each time the lane executes a batch. The listener may be called
+         * from the threads of several lanes at once.
+         *
+         * @param listener
+         * @return this
+         */
+        public Builder onLaneStatistics(Action1<? super LaneStatistics> listener) {
+            checkNotNull(listener);
+            this.laneListener = listener;
+            return this;
+        }
+
+        /**
+         * Returns an {@link Observable} of the counts of rows affected by the
+         * batches of all lanes, emitted as the batches are executed. The
+         * update runs on subscription.
+         *
+         * @return counts of rows affected
+         */
+        public Observable<Integer> count() {
+            checkArgument(parameters != null, "parameters must be set");
+            final int n = lanes;
+            return parameters.call(n) //
+                    .groupBy(new Func1<Keyed, Integer>() {
+                        @Override
+                        public Integer call(Keyed k) {
+                            return k.lane;
+                        }
+                    }) //
+                    .flatMap(new Func1<GroupedObservable<Integer, Keyed>, Observable<Integer>>() {
+                        @Override
+                        public Observable<Integer> call(GroupedObservable<Integer, Keyed> group) {
+                            return laneUpdate(group.getKey(), group);
+                        }
+                    }, n);
+        }
+
+        /**
+         * Runs the update, blocking till completion, and returns the total of
+         * the counts of rows affected.
+         *
+         * @return total count of rows affected
+         */
+        public int execute() {
+            return count().reduce(0, new Func2<Integer, Integer, Integer>() {
+                @Override
+                public Integer call(Integer a, Integer b) {
+                    return a + b;
+                }
+            }).toBlocking().single();
+        }
+
+        private Observable<Integer> laneUpdate(final int index, final Observable<Keyed> group) {
+            return Observable.defer(new Func0<Observable<Integer>>() {
+                @Override
+                public Observable<Integer> call() {
+                    Observable<Object> values = group
+                            // write on the lane's own thread with a bounded
+                            // buffer so the slowest lane limits requests
+                            .observeOn(scheduler, bufferSize)
+                            .concatMapIterable(new Func1<Keyed, Iterable<?>>() {
+                                @Override
+                                public Iterable<?> call(Keyed k) {
+                                    return k.values;
+                                }
+                            });
+                    QueryUpdate.Builder update = db.update(sql).batchSize(batchSize)
+                            .parameters(values);
+                    if (commitPolicy != null)
+                        update = update.commitPolicy(commitPolicy);
+                    if (flushInterval > 0)
+                        update = update.flushInterval(flushInterval, flushIntervalUnit);
+                    if (multiRowBuckets != null)
+                        update = update.multiRowInsert(multiRowBuckets);
+                    if (laneListener != null)
+                        update = update.onFlush(new LaneRecorder(index, laneListener));
+                    return update.count();
+                }
+            });
+        }
+
+    }
+
+    /**
+     * Accumulates the batches executed by a lane and reports its statistics.
+     */
+    private static final class LaneRecorder implements Action1<BatchFlush> {
+
+        private final int lane;
+        private final Action1<? super LaneStatistics> listener;
+        private final long startTime = System.nanoTime();
+
+        // guarded by this
+        private long batches;
+        private long rows;
+        private long count;
+
+        LaneRecorder(int lane, Action1<? super LaneStatistics> listener) {
+            this.lane = lane;
+            this.listener = listener;
+        }
+
+        @Override
+        public void call(BatchFlush flush) {
+            LaneStatistics statistics;
+            synchronized (this) {
+                batches++;
+                rows += flush.rows();
+                count += flush.count();
+                statistics = new LaneStatistics(lane, batches, rows, count,
+                        System.nanoTime() - startTime);
+            }
+            listener.call(statistics);
+        }
+    }
+
+}
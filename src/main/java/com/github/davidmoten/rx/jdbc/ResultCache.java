@@ -0,0 +1,162 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+
+/**
+ * Bounded least-recently-used cache of the mapped results of select query
+ * executions for one {@link CachePolicy}. Results are stored only when an
+ * execution completes and no invalidation happened while it ran.
+ */
+final class ResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultCache.class);
+
+    private static final class Entry {
+        final List<?> values;
+        final long expiryTime;
+        final int weight;
+
+        Entry(List<?> values, long expiryTime) {
+            this.values = values;
+            this.expiryTime = expiryTime;
+            this.weight = Math.max(1, values.size());
+        }
+    }
+
+    private final CachePolicy policy;
+
+    // guarded by itself
+    private final LinkedHashMap<Object, Entry> cache = new LinkedHashMap<Object, Entry>(16,
+            0.75f, true);
+
+    // guarded by cache
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+    private long loads;
+    private long totalLoadTimeNanos;
+
+    ResultCache(CachePolicy policy) {
+        this.policy = policy;
+    }
+
+    CachePolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Returns an Observable that on subscription emits the cached results
+     * for the given key or otherwise subscribes to <code>source</code> and
+     * caches its results if it completes.
+     *
+     * @param key
+     *            identifies equivalent executions
+     * @param source
+     *            the execution
+     * @return cached execution
+     */
+    <T> Observable<T> cached(final Object key, final Observable<T> source) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Observable<T> call() {
+                final long version;
+                synchronized (cache) {
+                    Entry entry = cache.get(key);
+                    if (entry != null && entry.expiryTime <= policy.now()) {
+                        remove(key);
+                        expirations++;
+                        entry = null;
+                    }
+                    if (entry != null) {
+                        hits++;
+                        return Observable.from((List<T>) entry.values);
+                    }
+                    misses++;
+                    version = invalidations;
+                }
+                final long start = System.nanoTime();
+                final List<T> list = new ArrayList<T>();
+                return source.doOnNext(new Action1<T>() {
+                    @Override
+                    public void call(T t) {
+                        list.add(t);
+                    }
+                }).doOnCompleted(new Action0() {
+                    @Override
+                    public void call() {
+                        put(key, list, version, System.nanoTime() - start);
+                    }
+                });
+            }
+        });
+    }
+
+    private void put(Object key, List<?> values, long version, long loadTimeNanos) {
+        synchronized (cache) {
+            if (invalidations != version) {
+                log.debug("not caching results invalidated during load of {}", key);
+                return;
+            }
+            loads++;
+            totalLoadTimeNanos += loadTimeNanos;
+            long ttl = policy.ttlMs();
+            long now = policy.now();
+            long expiryTime = ttl > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttl;
+            remove(key);
+            Entry entry = new Entry(values, expiryTime);
+            cache.put(key, entry);
+            weight += entry.weight;
+            // iterate entries because get would reorder an access-ordered map
+            Iterator<Map.Entry<Object, Entry>> it = cache.entrySet().iterator();
+            while (cache.size() > policy.maxEntries() || weight > policy.maxWeight()) {
+                weight -= it.next().getValue().weight;
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    // call holding the lock on cache
+    private void remove(Object key) {
+        Entry entry = cache.remove(key);
+        if (entry != null)
+            weight -= entry.weight;
+    }
+
+    /**
+     * Removes all entries and prevents the results of executions in flight
+     * from being stored.
+     */
+    void invalidate() {
+        synchronized (cache) {
+            log.debug("invalidating {}", policy);
+            cache.clear();
+            weight = 0;
+            invalidations++;
+        }
+    }
+
+    ResultCacheStatistics statistics() {
+        synchronized (cache) {
+            return new ResultCacheStatistics(cache.size(), weight, hits, misses, evictions,
+                    expirations, invalidations, loads, totalLoadTimeNanos);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.github.davidmoten.rx.jdbc;
+
+/**
+ * Immutable snapshot of the statistics of a cache of select query results
+ * (see {@link CachePolicy}).
+ */
+public final class ResultCacheStatistics {
+
+    private final int entries;
+    private final long weight;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+    private final long invalidations;
+    private final long loads;
+    private final long totalLoadTimeNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param entries
+     *            current number of entries
+     * @param weight
+     *            current total weight (rows) of the entries
+     * @param hits
+     *            number of executions served from the cache
+     * @param misses
+     *            number of executions that queried the database
+     * @param evictions
+     *            number of entries removed to keep within the size bounds
+     * @param expirations
+     *            number of entries removed because their ttl had passed
+     * @param invalidations
+     *            number of times the cache was invalidated
+     * @param loads
+     *            number of query results stored in the cache
+     * @param totalLoadTimeNanos
+     *            total time taken by the queries whose results were stored
+     */
+    public ResultCacheStatistics(int entries, long weight, long hits, long misses,
+            long evictions, long expirations, long invalidations, long loads,
+            long totalLoadTimeNanos) {
+        this.entries = entries;
+        this.weight = weight;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.invalidations = invalidations;
+        this.loads = loads;
+        this.totalLoadTimeNanos = totalLoadTimeNanos;
+    }
+
+    public int entries() {
+        return entries;
+    }
+
+    public long weight() {
+        return weight;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    public long expirations() {
+        return expirations;
+    }
+
+    public long invalidations() {
+        return invalidations;
+    }
+
+    public long loads() {
+        return loads;
+    }
+
+    public long totalLoadTimeNanos() {
+        return totalLoadTimeNanos;
+    }
+
+    /**
+     * Returns the mean time taken by the queries whose results were stored or
+     * 0 if none.
+     *
+     * @return mean load time in nanoseconds
+     */
+    public long averageLoadTimeNanos() {
+        return loads == 0 ? 0 : totalLoadTimeNanos / loads;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultCacheStatistics [entries=" + entries + ", weight=" + weight + ", hits="
+                + hits + ", misses=" + misses + ", evictions=" + evictions + ", expirations="
+                + expirations + ", invalidations=" + invalidations + ", loads=" + loads
+                + ", averageLoadTimeNanos=" + averageLoadTimeNanos() + "]";
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The result caches of a {@link Database}, one per {@link CachePolicy}, and
+ * their invalidation by updates.
+ */
+final class ResultCaches {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultCaches.class);
+
+    /**
+     * Marks a statement whose table could not be determined.
+     */
+    private static final String ALL_TABLES = "*";
+
+    private final ConcurrentMap<CachePolicy, ResultCache> caches = new ConcurrentHashMap<CachePolicy, ResultCache>();
+
+    /**
+     * Tables updated within transactions that are not yet committed or rolled
+     * back.
+     */
+    private final Set<String> updatedInTransaction = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Returns the cache for the given policy, creating it if required.
+     *
+     * @param policy
+     * @return cache
+     */
+    ResultCache get(CachePolicy policy) {
+        ResultCache cache = caches.get(policy);
+        if (cache != null)
+            return cache;
+        cache = new ResultCache(policy);
+        ResultCache existing = caches.putIfAbsent(policy, cache);
+        return existing != null ? existing : cache;
+    }
+
+    /**
+     * Notifies that the given insert, update, delete or other statement has
+     * been executed.
+     *
+     * @param sql
+     *            the statement executed
+     * @param inTransaction
+     *            true if the statement is not yet committed
+     */
+    void updated(String sql, boolean inTransaction) {
+        if (caches.isEmpty())
+            return;
+        String table = Util.updatedTable(sql);
+        if (table == null)
+            table = ALL_TABLES;
+        invalidate(table);
+        if (inTransaction)
+            // reads of other connections made before the commit must not be
+            // cached either
+            updatedInTransaction.add(table);
+    }
+
+    /**
+     * Notifies that a transaction has been committed or rolled back.
+     */
+    void transactionEnded() {
+        for (String table : updatedInTransaction) {
+            updatedInTransaction.remove(table);
+            invalidate(table);
+        }
+    }
+
+    /**
+     * Invalidates the caches whose policies declare the given table (or all
+     * tables).
+     *
+     * @param table
+     *            normalized table name or {@link #ALL_TABLES}
+     */
+    private void invalidate(String table) {
+        log.debug("invalidating caches of table {}", table);
+        for (ResultCache cache : caches.values()) {
+            Set<String> tables = cache.policy().tables();
+            if (!tables.isEmpty() && (table == ALL_TABLES || tables.contains(table)))
+                cache.invalidate();
+        }
+    }
+
+    /**
+     * Invalidates the caches whose policies declare the given table.
+     *
+     * @param table
+     *            table name (case insensitive)
+     */
+    void invalidateTable(String table) {
+        invalidate(CachePolicy.normalizeTable(table));
+    }
+
+    /**
+     * Invalidates all caches.
+     */
+    void invalidateAll() {
+        for (ResultCache cache : caches.values())
+            cache.invalidate();
+    }
+
+    ResultCacheStatistics statistics(CachePolicy policy) {
+        return get(policy).statistics();
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+/**
+ * Immutable snapshot of the column metadata of a {@link ResultSet} (column
+ * count, sql types and labels) taken once per result set so that mappers do
+ * not call {@link ResultSet#getMetaData()} for every row or cell.
+ */
+final class ResultSetColumns {
+
+    /**
+     * The result set the snapshot was taken from. Used by mappers to detect
+     * that a new result set is being mapped.
+     */
+    final ResultSet rs;
+
+    private final int[] types;
+    private final String[] labels;
+
+    /**
+     * Column indexes (1-based) keyed by upper case column label.
+     */
+    private final Map<String, Integer> indexes;
+
+    private ResultSetColumns(ResultSet rs, int[] types, String[] labels,
+            Map<String, Integer> indexes) {
+        this.rs = rs;
+        this.types = types;
+        this.labels = labels;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Returns a snapshot of the column metadata of the given result set.
+     * 
+     * @param rs
+     *            result set
+     * @return column metadata snapshot
+     */
+    static ResultSetColumns snapshot(ResultSet rs) {
+        try {
+            ResultSetMetaData metadata = rs.getMetaData();
+            int n = metadata.getColumnCount();
+            int[] types = new int[n];
+            String[] labels = new String[n];
+            Map<String, Integer> indexes = new HashMap<String, Integer>();
+            for (int i = 1; i <= n; i++) {
+                types[i - 1] = metadata.getColumnType(i);
+                labels[i - 1] = metadata.getColumnLabel(i);
+                indexes.put(labels[i - 1].toUpperCase(), i);
+            }
+            return new ResultSetColumns(rs, types, labels, indexes);
+        } catch (SQLException e) {
+            throw new SQLRuntimeException(e);
+        }
+    }
+
+    int count() {
+        return types.length;
+    }
+
+    /**
+     * Returns the sql type of a column.
+     * 
+     * @param i
+     *            column index (1-based)
+     * @return sql type from {@link java.sql.Types}
+     */
+    int type(int i) {
+        return types[i - 1];
+    }
+
+    /**
+     * Returns the label of a column.
+     * 
+     * @param i
+     *            column index (1-based)
+     * @return column label
+     */
+    String label(int i) {
+        return labels[i - 1];
+    }
+
+    /**
+     * Returns the index (1-based) of the column with the given label (case
+     * insensitive) or null if not present.
+     * 
+     * @param label
+     *            column label
+     * @return column index or null
+     */
+    Integer index(String label) {
+        return indexes.get(label.toUpperCase());
+    }
+
+    /**
+     * Returns true if and only if the column types are the same as those of
+     * <code>other</code>.
+     * 
+     * @param other
+     * @return true if column types are equal
+     */
+    boolean hasSameTypes(ResultSetColumns other) {
+        return Arrays.equals(types, other.types);
+    }
+
+}
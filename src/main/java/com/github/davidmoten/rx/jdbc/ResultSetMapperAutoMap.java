@@ -0,0 +1,92 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import com.github.davidmoten.rx.jdbc.AutoMapCache.AutoMapConstructor;
+
+/**
+ * Maps the columns of a {@link ResultSet} row to the parameters of a
+ * constructor of a concrete class. See
+ * {@link QuerySelect.Builder#autoMap(Class)}.
+ *
+ * <p>
+ * The constructor (shared across queries via {@link AutoMapCaches}) and a
+ * {@link ColumnDecoder} per column are resolved once per result set (and
+ * reused across result sets with the same column types) so that mapping a row
+ * does not involve reflective lookups or metadata calls.
+ */
+final class ResultSetMapperAutoMap<T> implements ResultSetMapper<T> {
+
+    private final Class<T> cls;
+
+    /**
+     * The mapping plan for the most recently seen result set. Immutable so
+     * can be shared safely between threads.
+     */
+    private volatile Plan plan;
+
+    ResultSetMapperAutoMap(Class<T> cls) {
+        this.cls = cls;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T call(ResultSet rs) throws SQLException {
+        Plan p = plan(rs);
+        Class<?>[] types = p.constructor.types;
+        Object[] args = new Object[types.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = Util.autoMap(p.decoders[i].decode(rs, i + 1), types[i]);
+        }
+        try {
+            return (T) p.constructor.newInstance(args);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("problem with parameters="
+                    + Util.getTypeInfo(Arrays.asList(args)) + ", rs types=" + Util.getRowInfo(rs)
+                    + ". Be sure not to use primitives in a constructor when calling autoMap().",
+                    e);
+        }
+    }
+
+    private Plan plan(ResultSet rs) {
+        Plan p = plan;
+        if (p != null && p.columns.rs == rs)
+            return p;
+        ResultSetColumns columns = ResultSetColumns.snapshot(rs);
+        if (p != null && p.columns.hasSameTypes(columns))
+            p = new Plan(columns, p.constructor, p.decoders);
+        else
+            p = compile(columns);
+        plan = p;
+        return p;
+    }
+
+    private Plan compile(ResultSetColumns columns) {
+        int n = columns.count();
+        AutoMapConstructor c = AutoMapCaches.INSTANCE.get(cls).constructor(n);
+        if (c == null)
+            throw new RuntimeException(
+                    "constructor with number of parameters=" + n + "  not found in " + cls);
+        ColumnDecoder[] decoders = new ColumnDecoder[n];
+        for (int i = 0; i < n; i++) {
+            decoders[i] = Util.columnDecoder(columns.type(i + 1), c.types[i]);
+        }
+        return new Plan(columns, c, decoders);
+    }
+
+    private static final class Plan {
+        final ResultSetColumns columns;
+        final AutoMapConstructor constructor;
+        final ColumnDecoder[] decoders;
+
+        Plan(ResultSetColumns columns, AutoMapConstructor constructor,
+                ColumnDecoder[] decoders) {
+            this.columns = columns;
+            this.constructor = constructor;
+            this.decoders = decoders;
+        }
+    }
+
+}
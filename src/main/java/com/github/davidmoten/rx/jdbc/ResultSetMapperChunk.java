@@ -0,0 +1,35 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Marks a select query as emitting lists of up to <code>size</code> rows
+ * mapped by <code>mapper</code>. {@link QuerySelectProducer} recognizes this
+ * mapper and fills each list directly from the {@link ResultSet} so that one
+ * emission (and one unit of requested demand) covers a whole chunk.
+ */
+final class ResultSetMapperChunk<T> implements ResultSetMapper<List<T>> {
+
+    final ResultSetMapper<? extends T> mapper;
+    final int size;
+
+    ResultSetMapperChunk(ResultSetMapper<? extends T> mapper, int size) {
+        Conditions.checkNotNull(mapper);
+        Conditions.checkArgument(size > 0, "size must be positive");
+        this.mapper = mapper;
+        this.size = size;
+    }
+
+    /**
+     * Maps the current row only. Used if this mapper is not run by
+     * {@link QuerySelectProducer} (for example returning generated keys).
+     */
+    @Override
+    public List<T> call(ResultSet rs) throws SQLException {
+        return Collections.<T> singletonList(mapper.call(rs));
+    }
+
+}
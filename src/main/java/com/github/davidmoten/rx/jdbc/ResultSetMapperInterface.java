@@ -0,0 +1,139 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.github.davidmoten.rx.jdbc.Util.Col;
+import com.github.davidmoten.rx.jdbc.Util.IndexedCol;
+import com.github.davidmoten.rx.jdbc.Util.NamedCol;
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+/**
+ * Maps a {@link ResultSet} row to an implementation of an interface annotated
+ * with {@link com.github.davidmoten.rx.jdbc.annotations.Column} and
+ * {@link com.github.davidmoten.rx.jdbc.annotations.Index}. See
+ * {@link QuerySelect.Builder#autoMap(Class)}.
+ *
+ * <p>
+ * The proxy class and the slot of each interface method are resolved once per
+ * interface (see {@link AutoMapCaches}) and the column index and
+ * {@link ColumnDecoder} for each slot once per result set so that mapping a
+ * row only reads the columns into an Object[] and creates the proxy instance
+ * (and its handler) over it. Getters are answered from the array by a slot
+ * found by identity of the called method, without hashing.
+ */
+final class ResultSetMapperInterface<T> implements ResultSetMapper<T> {
+
+    private final Class<T> cls;
+
+    /**
+     * Column indexes and decoders for the most recently seen result set.
+     * Immutable so can be shared safely between threads.
+     */
+    private volatile Plan plan;
+
+    ResultSetMapperInterface(Class<T> cls) {
+        this.cls = cls;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T call(ResultSet rs) throws SQLException {
+        Plan p = plan(rs);
+        AutoMapCache m = p.mapping;
+        Object[] values = new Object[m.cols.length];
+        for (int i = 0; i < values.length; i++) {
+            Class<?> returnType = m.cols[i].returnType();
+            values[i] = Util.autoMap(p.decoders[i].decode(rs, p.indexes[i]), returnType);
+        }
+        try {
+            return (T) m.proxyConstructor.newInstance(new Values(m.proxySlots, values));
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Plan plan(ResultSet rs) {
+        Plan p = plan;
+        if (p != null && p.columns.rs == rs)
+            return p;
+        AutoMapCache m = AutoMapCaches.INSTANCE.get(cls);
+        ResultSetColumns columns = ResultSetColumns.snapshot(rs);
+        Col[] cols = m.cols;
+        int[] indexes = new int[cols.length];
+        ColumnDecoder[] decoders = new ColumnDecoder[cols.length];
+        for (int i = 0; i < cols.length; i++) {
+            Col column = cols[i];
+            Integer index;
+            if (column instanceof NamedCol) {
+                String name = ((NamedCol) column).name;
+                index = columns.index(name);
+                if (index == null) {
+                    throw new SQLRuntimeException(
+                            "query column names do not include '" + name + "'");
+                }
+            } else {
+                index = ((IndexedCol) column).index;
+            }
+            indexes[i] = index;
+            decoders[i] = Util.columnDecoder(columns.type(index),
+                    column.returnType());
+        }
+        p = new Plan(columns, m, indexes, decoders);
+        plan = p;
+        return p;
+    }
+
+    @Override
+    public String toString() {
+        return "ResultSetMapperInterface [cls=" + cls + "]";
+    }
+
+    private static final class Plan {
+        final ResultSetColumns columns;
+        final AutoMapCache mapping;
+        final int[] indexes;
+        final ColumnDecoder[] decoders;
+
+        Plan(ResultSetColumns columns, AutoMapCache mapping, int[] indexes,
+                ColumnDecoder[] decoders) {
+            this.columns = columns;
+            this.mapping = mapping;
+            this.indexes = indexes;
+            this.decoders = decoders;
+        }
+    }
+
+    /**
+     * Answers interface method calls on a mapped row from its slot in the
+     * values array. The slot is found by identity of the method (see
+     * {@link AutoMapCache.ProxySlots}) rather than by hashing it.
+     */
+    private static final class Values implements InvocationHandler {
+
+        private final AutoMapCache.ProxySlots slots;
+        private final Object[] values;
+
+        Values(AutoMapCache.ProxySlots slots, Object[] values) {
+            this.slots = slots;
+            this.values = values;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            int slot = slots.slot(m);
+            if (slot < 0)
+                return null;
+            else
+                return values[slot];
+        }
+    }
+
+}
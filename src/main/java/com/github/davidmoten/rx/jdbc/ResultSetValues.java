@@ -0,0 +1,122 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+
+import rx.functions.Func1;
+
+/**
+ * Reads the leading columns of a {@link ResultSet} row converted to given
+ * classes (as per {@link Util#autoMap(Object, Class)}). Column metadata and
+ * the way each column is read are resolved once per result set so that
+ * reading a row makes one driver call per column. Used by the tuple mappers
+ * in {@link com.github.davidmoten.rx.jdbc.tuple.Tuples} through
+ * {@link Util#columnValues(Class...)} and {@link Util#allColumnValues(Class)}.
+ */
+final class ResultSetValues implements Func1<ResultSet, Object[]> {
+
+    /**
+     * Target classes of the leading columns. Empty if {@link #all} is set.
+     */
+    private final Class<?>[] classes;
+
+    /**
+     * If non-null all columns are read and converted to this class.
+     */
+    private final Class<?> all;
+
+    /**
+     * Snapshot for the most recently seen result set. Immutable so can be
+     * shared safely between threads.
+     */
+    private volatile Snapshot snapshot;
+
+    private ResultSetValues(Class<?>[] classes, Class<?> all) {
+        this.classes = classes;
+        this.all = all;
+    }
+
+    /**
+     * Returns a reader of the first <code>classes.length</code> columns where
+     * column <code>i</code> is converted to <code>classes[i-1]</code>.
+     * 
+     * @param classes
+     *            target classes
+     * @return reader
+     */
+    static ResultSetValues of(Class<?>... classes) {
+        return new ResultSetValues(classes, null);
+    }
+
+    /**
+     * Returns a reader of all columns with every column converted to
+     * <code>cls</code>.
+     * 
+     * @param cls
+     *            target class
+     * @return reader
+     */
+    static ResultSetValues all(Class<?> cls) {
+        return new ResultSetValues(new Class<?>[0], cls);
+    }
+
+    /**
+     * Returns the converted values of the current row of <code>rs</code>.
+     * 
+     * @param rs
+     *            result set positioned on a row
+     * @return column values
+     */
+    @Override
+    public Object[] call(ResultSet rs) {
+        Snapshot s = snapshot(rs);
+        Object[] values = new Object[s.classes.length];
+        try {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Util.autoMap(s.decoders[i].decode(rs, i + 1), s.classes[i]);
+            }
+        } catch (SQLException e) {
+            throw new SQLRuntimeException(e);
+        }
+        return values;
+    }
+
+    private Snapshot snapshot(ResultSet rs) {
+        Snapshot s = snapshot;
+        if (s != null && s.columns.rs == rs)
+            return s;
+        ResultSetColumns columns = ResultSetColumns.snapshot(rs);
+        Class<?>[] cls;
+        if (all != null) {
+            cls = new Class<?>[columns.count()];
+            for (int i = 0; i < cls.length; i++)
+                cls[i] = all;
+        } else if (classes.length > columns.count())
+            throw new SQLRuntimeException("expected at least " + classes.length
+                    + " columns but query returned " + columns.count());
+        else
+            cls = classes;
+        ColumnDecoder[] decoders = new ColumnDecoder[cls.length];
+        for (int i = 0; i < cls.length; i++) {
+            decoders[i] = Util.columnDecoder(columns.type(i + 1), cls[i]);
+        }
+        s = new Snapshot(columns, cls, decoders);
+        snapshot = s;
+        return s;
+    }
+
+    private static final class Snapshot {
+        final ResultSetColumns columns;
+        final Class<?>[] classes;
+        final ColumnDecoder[] decoders;
+
+        Snapshot(ResultSetColumns columns, Class<?>[] classes, ColumnDecoder[] decoders) {
+            this.columns = columns;
+            this.classes = classes;
+            this.decoders = decoders;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.github.davidmoten.rx.jdbc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Func0;
+
+/**
+ * Shares the results of an execution of a select query with subscriptions to
+ * identical executions (same key) that arrive while it is in flight so that
+ * the database is queried only once. Once an execution terminates the next
+ * subscription with its key starts a new execution.
+ */
+final class SelectCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(SelectCoalescer.class);
+
+    private final ConcurrentMap<Object, Observable<?>> inFlight = new ConcurrentHashMap<Object, Observable<?>>();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Returns an Observable that on subscription joins the in-flight
+     * execution with the given key or otherwise subscribes to
+     * <code>source</code> and shares its results with subscriptions that
+     * join before it terminates.
+     * 
+     * @param key
+     *            identifies equivalent executions
+     * @param source
+     *            the execution
+     * @return coalesced execution
+     */
+    <T> Observable<T> coalesce(final Object key, final Observable<T> source) {
+        return Observable.defer(new Func0<Observable<T>>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Observable<T> call() {
+                Observable<T> existing = (Observable<T>) inFlight.get(key);
+                if (existing != null) {
+                    return joined(key, existing);
+                }
+                final Observable<?>[] shared = new Observable<?>[1];
+                Action0 remove = new Action0() {
+                    @Override
+                    public void call() {
+                        inFlight.remove(key, shared[0]);
+                    }
+                };
+                Observable<T> o = source.doOnTerminate(remove).doOnUnsubscribe(remove).replay()
+                        .refCount();
+                shared[0] = o;
+                existing = (Observable<T>) inFlight.putIfAbsent(key, o);
+                if (existing != null) {
+                    return joined(key, existing);
+                } else {
+                    executions.incrementAndGet();
+                    return o;
+                }
+            }
+        });
+    }
+
+    private <T> Observable<T> joined(Object key, Observable<T> existing) {
+        log.debug("coalesced {}", key);
+        coalesced.incrementAndGet();
+        return existing;
+    }
+
+    CoalescingStatistics statistics() {
+        return new CoalescingStatistics(inFlight.size(), executions.get(), coalesced.get());
+    }
+
+}
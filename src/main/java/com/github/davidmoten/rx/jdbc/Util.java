@@ -7,9 +7,6 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.Writer;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.sql.Blob;
@@ -28,6 +25,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
@@ -254,12 +253,10 @@ public final class Util {
      * @return
      */
     static <T> ResultSetMapper<T> autoMap(final Class<T> cls) {
-        return new ResultSetMapper<T>() {
-            @Override
-            public T call(ResultSet rs) {
-                return autoMap(rs, cls);
-            }
-        };
+        if (cls.isInterface())
+            return new ResultSetMapperInterface<T>(cls);
+        else
+            return new ResultSetMapperAutoMap<T>(cls);
     }
 
     /**
@@ -272,30 +269,14 @@ public final class Util {
      *            the class of the resultant instance
      * @return an automapped instance
      */
-    @SuppressWarnings("unchecked")
     static <T> T autoMap(ResultSet rs, Class<T> cls) {
         try {
-            if (cls.isInterface()) {
-                return autoMapInterface(rs, cls);
-            } else {
-                int n = rs.getMetaData().getColumnCount();
-                for (Constructor<?> c : cls.getDeclaredConstructors()) {
-                    if (n == c.getParameterTypes().length) {
-                        return autoMap(rs, (Constructor<T>) c);
-                    }
-                }
-                throw new RuntimeException(
-                        "constructor with number of parameters=" + n + "  not found in " + cls);
-            }
+            return autoMap(cls).call(rs);
         } catch (SQLException e) {
             throw new SQLRuntimeException(e);
         }
     }
 
-    private static <T> T autoMapInterface(ResultSet rs, Class<T> cls) {
-        return ProxyService.newInstance(rs, cls);
-    }
-
     static interface Col {
         Class<?> returnType();
     }
@@ -342,57 +323,6 @@ public final class Util {
 
     }
 
-    private static class ProxyService<T> implements java.lang.reflect.InvocationHandler {
-
-        private final Map<String, Object> values = new HashMap<String, Object>();
-
-        ProxyService(ResultSet rs, Class<T> cls) {
-            // load information from cache about the result set
-            if (Database.rsCache.get() == null || Database.rsCache.get().rs != rs)
-                Database.rsCache.set(new ResultSetCache(rs));
-            Map<String, Integer> colIndexes = Database.rsCache.get().colIndexes;
-
-            // load information from cache about the class
-            if (Database.autoMapCache.get() == null || Database.autoMapCache.get().cls != cls)
-                Database.autoMapCache.set(new AutoMapCache(cls));
-            Map<String, Col> methodCols = Database.autoMapCache.get().methodCols;
-
-            // calculate values for all the interface methods and put them in a
-            // map
-            for (Method m : cls.getMethods()) {
-                String methodName = m.getName();
-                Col column = methodCols.get(methodName);
-                Integer index;
-                if (column instanceof NamedCol) {
-                    String name = ((NamedCol) column).name;
-                    index = colIndexes.get(name.toUpperCase());
-                    if (index == null) {
-                        throw new SQLRuntimeException(
-                                "query column names do not include '" + name + "'");
-                    }
-                } else {
-                    IndexedCol col = ((IndexedCol) column);
-                    index = col.index;
-                }
-                Object value = autoMap(getObject(rs, column.returnType(), index),
-                        column.returnType());
-                values.put(methodName, value);
-            }
-        }
-
-        @SuppressWarnings("unchecked")
-        public static <T> T newInstance(ResultSet rs, Class<T> cls) {
-
-            return (T) java.lang.reflect.Proxy.newProxyInstance(cls.getClassLoader(),
-                    new Class[] { cls }, new ProxyService<T>(rs, cls));
-        }
-
-        @Override
-        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
-            return values.get(m.getName());
-        }
-    }
-
     static String camelCaseToUnderscore(String camelCased) {
         // guava has best solution for this with CaseFormat class
         // but don't want to add dependency just for this method
@@ -408,34 +338,6 @@ public final class Util {
             return value[0];
     }
 
-    /**
-     * Converts the ResultSet column values into parameters to the given
-     * constructor (with number of parameters equals the number of columns) of
-     * type <code>T</code> then returns an instance of type <code>T</code>. See
-     * See {@link Builder#autoMap(Class)}.
-     * 
-     * @param rs
-     *            the result set row
-     * @param c
-     *            constructor to use for instantiation
-     * @return automapped instance
-     */
-    private static <T> T autoMap(ResultSet rs, Constructor<T> c) {
-        Class<?>[] types = c.getParameterTypes();
-        List<Object> list = new ArrayList<Object>();
-        for (int i = 0; i < types.length; i++) {
-            list.add(autoMap(getObject(rs, types[i], i + 1), types[i]));
-        }
-        try {
-            return newInstance(c, list);
-        } catch (RuntimeException e) {
-            throw new RuntimeException(
-                    "problem with parameters=" + getTypeInfo(list) + ", rs types=" + getRowInfo(rs)
-                            + ". Be sure not to use primitives in a constructor when calling autoMap().",
-                    e);
-        }
-    }
-
     static <T> void setSqlFromQueryAnnotation(Class<T> cls, QueryBuilder builder) {
         if (builder.sql() == null) {
             com.github.davidmoten.rx.jdbc.annotations.Query query = cls
@@ -455,7 +357,7 @@ public final class Util {
      * @param list
      * @return
      */
-    private static String getTypeInfo(List<Object> list) {
+    static String getTypeInfo(List<Object> list) {
 
         StringBuilder s = new StringBuilder();
         for (Object o : list) {
@@ -472,7 +374,7 @@ public final class Util {
         return s.toString();
     }
 
-    private static String getRowInfo(ResultSet rs) {
+    static String getRowInfo(ResultSet rs) {
         StringBuilder s = new StringBuilder();
         try {
             ResultSetMetaData md = rs.getMetaData();
@@ -491,29 +393,6 @@ public final class Util {
         return s.toString();
     }
 
-    /**
-     * 
-     * @param c
-     *            constructor to use
-     * @param parameters
-     *            constructor parameters
-     * @return
-     */
-    @SuppressWarnings("unchecked")
-    private static <T> T newInstance(Constructor<?> c, List<Object> parameters) {
-        try {
-            return (T) c.newInstance(parameters.toArray());
-        } catch (InstantiationException e) {
-            throw new RuntimeException(e);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        } catch (IllegalArgumentException e) {
-            throw new RuntimeException(e);
-        } catch (InvocationTargetException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     /**
      * Converts from java.sql Types to common java types like java.util.Date and
      * numeric types. See {@link Builder#autoMap(Class)}.
@@ -606,39 +485,145 @@ public final class Util {
         return autoMap(getObject(rs, cls, i), cls);
     }
 
+    /**
+     * Returns a function that reads the first <code>classes.length</code>
+     * columns of the current row of a {@link ResultSet} where column
+     * <code>i</code> is converted to <code>classes[i-1]</code>. Column
+     * metadata is read once per {@link ResultSet}.
+     * 
+     * @param classes
+     *            target classes
+     * @return reader of column values
+     */
+    public static Func1<ResultSet, Object[]> columnValues(Class<?>... classes) {
+        return ResultSetValues.of(classes);
+    }
+
+    /**
+     * Returns a function that reads all columns of the current row of a
+     * {@link ResultSet} with every column converted to <code>cls</code>.
+     * Column metadata is read once per {@link ResultSet}.
+     * 
+     * @param cls
+     *            target class
+     * @return reader of column values
+     */
+    public static Func1<ResultSet, Object[]> allColumnValues(Class<?> cls) {
+        return ResultSetValues.all(cls);
+    }
+
     private static <T> Object getObject(final ResultSet rs, Class<T> cls, int i) {
         try {
-            if (rs.getObject(i) == null) {
-                return null;
-            }
-            final int type = rs.getMetaData().getColumnType(i);
-            // TODO java.util.Calendar support
-            // TODO XMLGregorian Calendar support
-            if (type == Types.DATE)
-                return rs.getDate(i, Calendar.getInstance());
-            else if (type == Types.TIME)
-                return rs.getTime(i, Calendar.getInstance());
-            else if (type == Types.TIMESTAMP)
-                return rs.getTimestamp(i, Calendar.getInstance());
-            else if (type == Types.CLOB && cls.equals(String.class)) {
-                return toString(rs.getClob(i));
-            } else if (type == Types.CLOB && Reader.class.isAssignableFrom(cls)) {
-                Clob c = rs.getClob(i);
-                Reader r = c.getCharacterStream();
-                return createFreeOnCloseReader(c, r);
-            } else if (type == Types.BLOB && cls.equals(byte[].class)) {
-                return toBytes(rs.getBlob(i));
-            } else if (type == Types.BLOB && InputStream.class.isAssignableFrom(cls)) {
-                final Blob b = rs.getBlob(i);
-                final InputStream is = rs.getBlob(i).getBinaryStream();
-                return createFreeOnCloseInputStream(b, is);
-            } else
-                return rs.getObject(i);
+            return columnDecoder(rs.getMetaData().getColumnType(i), cls).decode(rs, i);
         } catch (SQLException e) {
             throw new SQLRuntimeException(e);
         }
     }
 
+    /**
+     * Returns a {@link ColumnDecoder} that reads a column of the given sql
+     * type with one driver call per cell (the null check is made on the value
+     * returned).
+     *
+     * @param type
+     *            sql type of the column from {@link Types}
+     * @param cls
+     *            the class the value will be mapped to
+     * @return decoder for the column
+     */
+    static ColumnDecoder columnDecoder(int type, Class<?> cls) {
+        // TODO java.util.Calendar support
+        // TODO XMLGregorian Calendar support
+        if (type == Types.DATE)
+            return DECODE_DATE;
+        else if (type == Types.TIME)
+            return DECODE_TIME;
+        else if (type == Types.TIMESTAMP)
+            return DECODE_TIMESTAMP;
+        else if (type == Types.CLOB && cls.equals(String.class))
+            return DECODE_CLOB_TO_STRING;
+        else if (type == Types.CLOB && Reader.class.isAssignableFrom(cls))
+            return DECODE_CLOB_TO_READER;
+        else if (type == Types.BLOB && cls.equals(byte[].class))
+            return DECODE_BLOB_TO_BYTES;
+        else if (type == Types.BLOB && InputStream.class.isAssignableFrom(cls))
+            return DECODE_BLOB_TO_INPUT_STREAM;
+        else
+            return DECODE_OBJECT;
+    }
+
+    private static final ColumnDecoder DECODE_DATE = new ColumnDecoder() {
+        @Override
+        public Object decode(ResultSet rs, int i) throws SQLException {
+            return rs.getDate(i, Calendar.getInstance());
+        }
+    };
+
+    private static final ColumnDecoder DECODE_TIME = new ColumnDecoder() {
+        @Override
+        public Object decode(ResultSet rs, int i) throws SQLException {
+            return rs.getTime(i, Calendar.getInstance());
+        }
+    };
+
+    private static final ColumnDecoder DECODE_TIMESTAMP = new ColumnDecoder() {
+        @Override
+        public Object decode(ResultSet rs, int i) throws SQLException {
+            return rs.getTimestamp(i, Calendar.getInstance());
+        }
+    };
+
+    private static final ColumnDecoder DECODE_CLOB_TO_STRING = new ColumnDecoder() {
+        @Override
+        public Object decode(ResultSet rs, int i) throws SQLException {
+            Clob c = rs.getClob(i);
+            if (c == null)
+                return null;
+            else
+                return Util.toString(c);
+        }
+    };
+
+    private static final ColumnDecoder DECODE_CLOB_TO_READER = new ColumnDecoder() {
+        @Override
+        public Object decode(ResultSet rs, int i) throws SQLException {
+            Clob c = rs.getClob(i);
+            if (c == null)
+                return null;
+            else
+                return createFreeOnCloseReader(c, c.getCharacterStream());
+        }
+    };
+
+    private static final ColumnDecoder DECODE_BLOB_TO_BYTES = new ColumnDecoder() {
+        @Override
+        public Object decode(ResultSet rs, int i) throws SQLException {
+            Blob b = rs.getBlob(i);
+            if (b == null)
+                return null;
+            else
+                return toBytes(b);
+        }
+    };
+
+    private static final ColumnDecoder DECODE_BLOB_TO_INPUT_STREAM = new ColumnDecoder() {
+        @Override
+        public Object decode(ResultSet rs, int i) throws SQLException {
+            Blob b = rs.getBlob(i);
+            if (b == null)
+                return null;
+            else
+                return createFreeOnCloseInputStream(b, b.getBinaryStream());
+        }
+    };
+
+    private static final ColumnDecoder DECODE_OBJECT = new ColumnDecoder() {
+        @Override
+        public Object decode(ResultSet rs, int i) throws SQLException {
+            return rs.getObject(i);
+        }
+    };
+
     /**
      * Returns the bytes of a {@link Blob} and frees the blob resource.
      * 
@@ -904,8 +889,160 @@ public final class Util {
         return ResultSetMapperToOne.INSTANCE;
     }
 
-    public static void setNamedParameters(PreparedStatement ps, List<Parameter> parameters,
-            List<String> names) throws SQLException {
+    private static final class ResultSetMapperToCount {
+        static final ResultSetMapper<Long> INSTANCE = new ResultSetMapper<Long>() {
+            @Override
+            public Long call(ResultSet rs) throws SQLException {
+                return rs.getLong(1);
+            }
+        };
+    }
+
+    /**
+     * Returns a mapper of the first column of a row to a Long (as returned by
+     * a <code>count(*)</code> query).
+     * 
+     * @return mapper to Long count
+     */
+    static ResultSetMapper<Long> toCount() {
+        return ResultSetMapperToCount.INSTANCE;
+    }
+
+    /**
+     * Returns sql that counts on the server the rows returned by the given
+     * select statement or null if the sql is not a plain select statement
+     * that can be wrapped as a derived table. Parameters (including named
+     * parameters) of the original sql are retained in the same order.
+     * 
+     * @param sql
+     *            select statement
+     * @return count sql or null
+     */
+    static String countSql(String sql) {
+        String s = sql.trim();
+        while (s.endsWith(";"))
+            s = s.substring(0, s.length() - 1).trim();
+        if (!s.regionMatches(true, 0, "select", 0, 6) || s.length() == 6
+                || !Character.isWhitespace(s.charAt(6))
+                || s.toLowerCase().matches("(?s).*\\bfor\\s+update\\b.*"))
+            return null;
+        else
+            // a line comment at the end of the sql must not swallow the
+            // closing bracket so a new line is used
+            return "select count(*) from (" + s + "\n) rx_count";
+    }
+
+    /**
+     * Returns <code>n</code> comma separated jdbc parameter placeholders.
+     * 
+     * @param n
+     *            number of parameters
+     * @return placeholders like <code>?,?,?</code>
+     */
+    static String questionMarks(int n) {
+        StringBuilder s = new StringBuilder(2 * n);
+        for (int i = 0; i < n; i++) {
+            if (i > 0)
+                s.append(',');
+            s.append('?');
+        }
+        return s.toString();
+    }
+
+    private static final Pattern UPDATED_TABLE = Pattern.compile(
+            "^\\s*(?:insert\\s+into|update|delete\\s+from|delete|merge\\s+into|replace\\s+into|truncate\\s+table|truncate)\\s+([\\w.\"`\\[\\]]+)",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Returns the table (normalized as for {@link CachePolicy}) written to by
+     * the given insert, update, delete, merge or truncate statement or null if
+     * the table cannot be determined.
+     * 
+     * @param sql
+     *            update statement
+     * @return table name or null
+     */
+    static String updatedTable(String sql) {
+        Matcher m = UPDATED_TABLE.matcher(sql);
+        if (m.find())
+            return CachePolicy.normalizeTable(m.group(1));
+        else
+            return null;
+    }
+
+    private static final Pattern INSERT_VALUES = Pattern.compile(
+            "^(\\s*insert\\s+into\\s+[^(\\s]+\\s*(?:\\([^)]*\\))?\\s*values\\s*)(\\(.*\\))\\s*;?\\s*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * Returns the given single row insert statement rewritten to insert
+     * <code>rows</code> rows, for example
+     * <code>insert into t(a,b) values (?,?),(?,?)</code> for two rows, or
+     * null if the statement is not of the form
+     * <code>insert into t(a,b) values (...)</code> with nothing following
+     * the values.
+     * 
+     * @param sql
+     *            single row insert statement
+     * @param rows
+     *            number of rows
+     * @return multi-row insert statement or null
+     */
+    static String multiRowInsert(String sql, int rows) {
+        Matcher m = INSERT_VALUES.matcher(sql);
+        if (!m.matches())
+            return null;
+        String tuple = m.group(2);
+        // the values must be one parenthesized tuple
+        int depth = 0;
+        boolean quoted = false;
+        for (int i = 0; i < tuple.length(); i++) {
+            char ch = tuple.charAt(i);
+            if (ch == '\'')
+                quoted = !quoted;
+            else if (!quoted && ch == '(')
+                depth++;
+            else if (!quoted && ch == ')') {
+                depth--;
+                if (depth == 0 && i < tuple.length() - 1)
+                    return null;
+            }
+        }
+        if (depth != 0 || quoted)
+            return null;
+        StringBuilder s = new StringBuilder(m.group(1).length() + rows * (tuple.length() + 1));
+        s.append(m.group(1));
+        for (int i = 0; i < rows; i++) {
+            if (i > 0)
+                s.append(',');
+            s.append(tuple);
+        }
+        return s.toString();
+    }
+
+    /**
+     * Returns the parameters in the order of the given names or the
+     * parameters themselves if there are no names.
+     * 
+     * @param parameters
+     * @param names
+     * @return parameters in order of use
+     * @throws SQLException
+     *             if a parameter is unnamed or a name has no parameter
+     */
+    static List<Parameter> orderedParameters(List<Parameter> parameters, List<String> names)
+            throws SQLException {
+        if (names.isEmpty()) {
+            for (Parameter p : parameters)
+                if (p.hasName())
+                    throw new SQLException("named parameter found but sql does not contain names");
+            return parameters;
+        } else
+            return namedParameters(parameters, names);
+    }
+
+    private static List<Parameter> namedParameters(List<Parameter> parameters, List<String> names)
+            throws SQLException {
         Map<String, Parameter> map = new HashMap<String, Parameter>();
         for (Parameter p : parameters) {
             if (p.hasName()) {
@@ -923,7 +1060,12 @@ public final class Util {
             Parameter p = map.get(name);
             list.add(p);
         }
-        Util.setParameters(ps, list, true);
+        return list;
+    }
+
+    public static void setNamedParameters(PreparedStatement ps, List<Parameter> parameters,
+            List<String> names) throws SQLException {
+        Util.setParameters(ps, namedParameters(parameters, names), true);
     }
 
     static void setParameters(PreparedStatement ps, List<Parameter> parameters, List<String> names)
@@ -1,14 +1,13 @@
 package com.github.davidmoten.rx.jdbc.tuple;
 
-import static com.github.davidmoten.rx.jdbc.Util.mapObject;
-
 import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.github.davidmoten.rx.jdbc.ResultSetMapper;
-import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
+import com.github.davidmoten.rx.jdbc.Util;
+
+import rx.functions.Func1;
 
 /**
  * Utility methods for tuples.
@@ -23,12 +22,13 @@ public final class Tuples {
     }
 
     public static <T> ResultSetMapper<T> single(final Class<T> cls) {
+        final Func1<ResultSet, Object[]> values = Util.columnValues(cls);
         return new ResultSetMapper<T>() {
 
             @SuppressWarnings("unchecked")
             @Override
             public T call(ResultSet rs) {
-                return (T) mapObject(rs, cls, 1);
+                return (T) values.call(rs)[0];
             }
 
         };
@@ -36,24 +36,27 @@ public final class Tuples {
 
     public static <T1, T2> ResultSetMapper<Tuple2<T1, T2>> tuple(final Class<T1> cls1,
             final Class<T2> cls2) {
+        final Func1<ResultSet, Object[]> values = Util.columnValues(cls1, cls2);
         return new ResultSetMapper<Tuple2<T1, T2>>() {
 
             @SuppressWarnings("unchecked")
             @Override
             public Tuple2<T1, T2> call(ResultSet rs) {
-                return new Tuple2<T1, T2>((T1) mapObject(rs, cls1, 1), (T2) mapObject(rs, cls2, 2));
+                Object[] v = values.call(rs);
+                return new Tuple2<T1, T2>((T1) v[0], (T2) v[1]);
             }
         };
     }
 
     public static <T1, T2, T3> ResultSetMapper<Tuple3<T1, T2, T3>> tuple(final Class<T1> cls1,
             final Class<T2> cls2, final Class<T3> cls3) {
+        final Func1<ResultSet, Object[]> values = Util.columnValues(cls1, cls2, cls3);
         return new ResultSetMapper<Tuple3<T1, T2, T3>>() {
             @SuppressWarnings("unchecked")
             @Override
             public Tuple3<T1, T2, T3> call(ResultSet rs) {
-                return new Tuple3<T1, T2, T3>((T1) mapObject(rs, cls1, 1),
-                        (T2) mapObject(rs, cls2, 2), (T3) mapObject(rs, cls3, 3));
+                Object[] v = values.call(rs);
+                return new Tuple3<T1, T2, T3>((T1) v[0], (T2) v[1], (T3) v[2]);
             }
         };
     }
@@ -61,13 +64,13 @@ public final class Tuples {
     public static <T1, T2, T3, T4> ResultSetMapper<Tuple4<T1, T2, T3, T4>> tuple(
             final Class<T1> cls1, final Class<T2> cls2, final Class<T3> cls3,
             final Class<T4> cls4) {
+        final Func1<ResultSet, Object[]> values = Util.columnValues(cls1, cls2, cls3, cls4);
         return new ResultSetMapper<Tuple4<T1, T2, T3, T4>>() {
             @SuppressWarnings("unchecked")
             @Override
             public Tuple4<T1, T2, T3, T4> call(ResultSet rs) {
-                return new Tuple4<T1, T2, T3, T4>((T1) mapObject(rs, cls1, 1),
-                        (T2) mapObject(rs, cls2, 2), (T3) mapObject(rs, cls3, 3),
-                        (T4) mapObject(rs, cls4, 4));
+                Object[] v = values.call(rs);
+                return new Tuple4<T1, T2, T3, T4>((T1) v[0], (T2) v[1], (T3) v[2], (T4) v[3]);
             }
         };
     }
@@ -75,13 +78,14 @@ public final class Tuples {
     public static <T1, T2, T3, T4, T5> ResultSetMapper<Tuple5<T1, T2, T3, T4, T5>> tuple(
             final Class<T1> cls1, final Class<T2> cls2, final Class<T3> cls3, final Class<T4> cls4,
             final Class<T5> cls5) {
+        final Func1<ResultSet, Object[]> values = Util.columnValues(cls1, cls2, cls3, cls4, cls5);
         return new ResultSetMapper<Tuple5<T1, T2, T3, T4, T5>>() {
             @SuppressWarnings("unchecked")
             @Override
             public Tuple5<T1, T2, T3, T4, T5> call(ResultSet rs) {
-                return new Tuple5<T1, T2, T3, T4, T5>((T1) mapObject(rs, cls1, 1),
-                        (T2) mapObject(rs, cls2, 2), (T3) mapObject(rs, cls3, 3),
-                        (T4) mapObject(rs, cls4, 4), (T5) mapObject(rs, cls5, 5));
+                Object[] v = values.call(rs);
+                return new Tuple5<T1, T2, T3, T4, T5>((T1) v[0], (T2) v[1], (T3) v[2],
+                        (T4) v[3], (T5) v[4]);
             }
         };
     }
@@ -90,14 +94,15 @@ public final class Tuples {
             final Class<T1> cls1, final Class<T2> cls2, final Class<T3> cls3, final Class<T4> cls4,
             final Class<T5> cls5, final Class<T6> cls6) {
 
+        final Func1<ResultSet, Object[]> values = Util.columnValues(cls1, cls2, cls3, cls4, cls5,
+                cls6);
         return new ResultSetMapper<Tuple6<T1, T2, T3, T4, T5, T6>>() {
             @SuppressWarnings("unchecked")
             @Override
             public Tuple6<T1, T2, T3, T4, T5, T6> call(ResultSet rs) {
-                return new Tuple6<T1, T2, T3, T4, T5, T6>((T1) mapObject(rs, cls1, 1),
-                        (T2) mapObject(rs, cls2, 2), (T3) mapObject(rs, cls3, 3),
-                        (T4) mapObject(rs, cls4, 4), (T5) mapObject(rs, cls5, 5),
-                        (T6) mapObject(rs, cls6, 6));
+                Object[] v = values.call(rs);
+                return new Tuple6<T1, T2, T3, T4, T5, T6>((T1) v[0], (T2) v[1], (T3) v[2],
+                        (T4) v[3], (T5) v[4], (T6) v[5]);
             }
         };
     }
@@ -106,38 +111,27 @@ public final class Tuples {
             final Class<T1> cls1, final Class<T2> cls2, final Class<T3> cls3, final Class<T4> cls4,
             final Class<T5> cls5, final Class<T6> cls6, final Class<T7> cls7) {
 
+        final Func1<ResultSet, Object[]> values = Util.columnValues(cls1, cls2, cls3, cls4, cls5,
+                cls6, cls7);
         return new ResultSetMapper<Tuple7<T1, T2, T3, T4, T5, T6, T7>>() {
             @SuppressWarnings("unchecked")
             @Override
             public Tuple7<T1, T2, T3, T4, T5, T6, T7> call(ResultSet rs) {
-                return new Tuple7<T1, T2, T3, T4, T5, T6, T7>((T1) mapObject(rs, cls1, 1),
-                        (T2) mapObject(rs, cls2, 2), (T3) mapObject(rs, cls3, 3),
-                        (T4) mapObject(rs, cls4, 4), (T5) mapObject(rs, cls5, 5),
-                        (T6) mapObject(rs, cls6, 6), (T7) mapObject(rs, cls7, 7));
+                Object[] v = values.call(rs);
+                return new Tuple7<T1, T2, T3, T4, T5, T6, T7>((T1) v[0], (T2) v[1],
+                        (T3) v[2], (T4) v[3], (T5) v[4], (T6) v[5], (T7) v[6]);
             }
         };
     }
 
     public static <T> ResultSetMapper<TupleN<T>> tupleN(final Class<T> cls) {
+        final Func1<ResultSet, Object[]> values = Util.allColumnValues(cls);
         return new ResultSetMapper<TupleN<T>>() {
+            @SuppressWarnings("unchecked")
             @Override
             public TupleN<T> call(ResultSet rs) {
-                return toTupleN(cls, rs);
+                return new TupleN<T>((List<T>) (List<?>) Arrays.asList(values.call(rs)));
             }
         };
     }
-
-    @SuppressWarnings("unchecked")
-    private static <T> TupleN<T> toTupleN(final Class<T> cls, ResultSet rs) {
-        try {
-            int n = rs.getMetaData().getColumnCount();
-            List<T> list = new ArrayList<T>();
-            for (int i = 1; i <= n; i++) {
-                list.add((T) mapObject(rs, cls, i));
-            }
-            return new TupleN<T>(list);
-        } catch (SQLException e) {
-            throw new SQLRuntimeException(e);
-        }
-    }
 }
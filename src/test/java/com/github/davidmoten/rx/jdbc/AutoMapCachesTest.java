@@ -0,0 +1,98 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.jdbc.annotations.Column;
+
+public class AutoMapCachesTest {
+
+    static interface Name {
+        @Column
+        String name();
+    }
+
+    static interface Score {
+        @Column
+        int score();
+    }
+
+    static class Person {
+        Person(String name) {
+        }
+    }
+
+    @Test
+    public void testSameInstanceReturnedAcrossThreads() throws Exception {
+        final AutoMapCaches caches = new AutoMapCaches(10);
+        final AutoMapCache m = caches.get(Name.class);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<AutoMapCache>> futures = new ArrayList<Future<AutoMapCache>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<AutoMapCache>() {
+                    @Override
+                    public AutoMapCache call() {
+                        return caches.get(Name.class);
+                    }
+                }));
+            }
+            for (Future<AutoMapCache> f : futures) {
+                assertSame(m, f.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        CacheStatistics stats = caches.statistics();
+        assertEquals(1, stats.size());
+        assertEquals(1, stats.misses());
+        assertEquals(8, stats.hits());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedWhenFull() {
+        AutoMapCaches caches = new AutoMapCaches(2);
+        AutoMapCache name = caches.get(Name.class);
+        caches.get(Score.class);
+        // make Name most recently used
+        caches.get(Name.class);
+        caches.get(Person.class);
+        CacheStatistics stats = caches.statistics();
+        assertEquals(2, stats.size());
+        assertEquals(1, stats.evictions());
+        assertSame(name, caches.get(Name.class));
+        // Score was evicted
+        caches.get(Score.class);
+        assertEquals(4, caches.statistics().misses());
+    }
+
+    @Test
+    public void testConstructorsOfConcreteClassKeyedByParameterCount() {
+        AutoMapCache m = new AutoMapCaches(2).get(Person.class);
+        assertEquals(String.class, m.constructor(1).types[0]);
+        assertEquals(null, m.constructor(2));
+    }
+
+    @Test
+    public void testProxySlotsMatchMethodsOfTheProxyClass() throws Exception {
+        AutoMapCache m = new AutoMapCaches(2).get(Name.class);
+        Class<?> proxyClass = m.proxyConstructor.getDeclaringClass();
+        // the proxy passes its handler Method instances of the interface
+        Method name = Name.class.getMethod("name");
+        assertEquals(0, m.proxySlots.slot(name));
+        assertEquals(0, m.proxySlots.slot(name));
+        assertEquals(-1, m.proxySlots.slot(Object.class.getMethod("hashCode")));
+        assertEquals(Name.class, proxyClass.getInterfaces()[0]);
+    }
+
+}
@@ -8,7 +8,13 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
@@ -20,7 +26,11 @@ import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
 import com.github.davidmoten.rx.testing.TestingHelper;
 
 import rx.Observable;
+import rx.functions.Action1;
 import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
 
 public final class BatchingTest {
 
@@ -49,23 +59,6 @@ public final class BatchingTest {
         assertEquals(numPeopleBefore + 5, numPeople);
     }
 
-    @Test
-    public void testBatchingCanOnlyBeUsedWithinATransaction() {
-        Database db = DatabaseCreator.db();
-        Observable<String> names = Observable.just("NANCY", "WARREN", "ALFRED", "BARRY", "ROBERTO");
-
-        Observable<Integer> count = db.update("insert into person(name,score) values(?,0)")
-                // set batch size
-                .batchSize(3)
-                // get parameters from last query
-                .parameters(names)
-                // go
-                .count().count();
-        count //
-                .to(TestingHelper.<Integer> test()) //
-                .assertError(SQLRuntimeException.class);
-    }
-
     @Test
     public void testMocked() throws SQLException {
         String sql = "insert into person(name,score) values(?, 0)";
@@ -124,6 +117,510 @@ public final class BatchingTest {
         assertEquals(1 + 2 + 3 + 4 + 5, records.get());
     }
 
+    @Test
+    public void testBatchingWithoutTransactionCommits() {
+        Database db = DatabaseCreator.db();
+        int numPeopleBefore = db.select("select count(*) from person") //
+                .getAs(Integer.class) //
+                .toBlocking().single();
+        Observable<String> names = Observable.just("NANCY", "WARREN", "ALFRED", "BARRY", "ROBERTO");
+
+        int count = db.update("insert into person(name,score) values(?,0)")
+                // set batch size
+                .batchSize(3)
+                // get parameters from last query
+                .parameters(names)
+                // go
+                .execute();
+        assertEquals(5, count);
+        int numPeople = db.select("select count(*) from person") //
+                .getAs(Integer.class) //
+                .toBlocking().single();
+        assertEquals(numPeopleBefore + 5, numPeople);
+    }
+
+    @Test
+    public void testMockedWithoutTransactionCommitsPerBatch() throws SQLException {
+        String sql = "insert into person(name,score) values(?, 0)";
+        final Connection con = Mockito.mock(Connection.class);
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        Mockito.when(con.prepareStatement(sql)).thenReturn(ps);
+        Mockito.when(ps.executeBatch()) //
+                .thenReturn(new int[] { 1, 1, 1 }) //
+                .thenReturn(new int[] { 1, 1 });
+        Mockito.when(con.getAutoCommit()).thenReturn(true);
+        Mockito.when(con.isClosed()).thenReturn(false);
+        Database db = Database.from(createConnectionProvider(con));
+        Observable<String> names = Observable.just("NANCY", "WARREN", "ALFRED", "BARRY", "ROBERTO");
+        List<Integer> counts = db.update(sql).batchSize(3).parameters(names).count().toList()
+                .toBlocking().single();
+        assertEquals(Arrays.asList(0, 0, 3, 0, 2), counts);
+        InOrder in = Mockito.inOrder(con, ps);
+        in.verify(con).getAutoCommit();
+        in.verify(con).setAutoCommit(false);
+        in.verify(con).prepareStatement(sql);
+        in.verify(ps, Mockito.calls(3)).addBatch();
+        in.verify(ps).executeBatch();
+        in.verify(con).commit();
+        in.verify(ps, Mockito.calls(2)).addBatch();
+        in.verify(ps).executeBatch();
+        in.verify(con).commit();
+        in.verify(con).setAutoCommit(true);
+        in.verify(con).close();
+        Mockito.verify(con, Mockito.never()).rollback();
+    }
+
+    @Test
+    public void testMockedWithoutTransactionCommitsAtEnd() throws SQLException {
+        String sql = "insert into person(name,score) values(?, 0)";
+        final Connection con = Mockito.mock(Connection.class);
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        Mockito.when(con.prepareStatement(sql)).thenReturn(ps);
+        Mockito.when(ps.executeBatch()) //
+                .thenReturn(new int[] { 1, 1, 1 }) //
+                .thenReturn(new int[] { 1, 1 });
+        Mockito.when(con.getAutoCommit()).thenReturn(true);
+        Database db = Database.from(createConnectionProvider(con));
+        Observable<String> names = Observable.just("NANCY", "WARREN", "ALFRED", "BARRY", "ROBERTO");
+        assertEquals(5, db.update(sql).batchSize(3).commitPolicy(CommitPolicy.AT_END)
+                .parameters(names).execute());
+        InOrder in = Mockito.inOrder(con, ps);
+        in.verify(ps).executeBatch();
+        in.verify(ps).executeBatch();
+        in.verify(con).commit();
+        Mockito.verify(con, Mockito.times(1)).commit();
+        Mockito.verify(con, Mockito.never()).rollback();
+    }
+
+    @Test
+    public void testMockedWithoutTransactionRollsBackOnError() throws SQLException {
+        String sql = "insert into person(name,score) values(?, 0)";
+        final Connection con = Mockito.mock(Connection.class);
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        Mockito.when(con.prepareStatement(sql)).thenReturn(ps);
+        Mockito.when(ps.executeBatch()) //
+                .thenReturn(new int[] { 1, 1, 1 }) //
+                .thenThrow(new SQLException("boo"));
+        Mockito.when(con.getAutoCommit()).thenReturn(true);
+        Database db = Database.from(createConnectionProvider(con));
+        Observable<String> names = Observable.just("NANCY", "WARREN", "ALFRED", "BARRY", "ROBERTO");
+        db.update(sql).batchSize(3).commitPolicy(CommitPolicy.AT_END).parameters(names).count()
+                .to(TestingHelper.<Integer> test()) //
+                .assertError(SQLException.class);
+        Mockito.verify(con, Mockito.never()).commit();
+        Mockito.verify(con).rollback();
+        Mockito.verify(con).setAutoCommit(true);
+        Mockito.verify(con).close();
+    }
+
+    @Test
+    public void testMockedFlushesByTimeAndSize() throws SQLException {
+        String sql = "insert into person(name,score) values(?, 0)";
+        final Connection con = Mockito.mock(Connection.class);
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        Mockito.when(con.prepareStatement(sql)).thenReturn(ps);
+        Mockito.when(ps.executeBatch()) //
+                .thenReturn(new int[] { 1 }) //
+                .thenReturn(new int[] { 1, 1, 1 }) //
+                .thenReturn(new int[] { 1 });
+        Mockito.when(con.getAutoCommit()).thenReturn(true);
+        Database db = Database.from(createConnectionProvider(con));
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<String> names = PublishSubject.create();
+        final List<BatchFlush> flushes = new ArrayList<BatchFlush>();
+        TestSubscriber<Integer> ts = TestSubscriber.create();
+        db.update(sql) //
+                .batchSize(3) //
+                .flushInterval(100, TimeUnit.MILLISECONDS, scheduler) //
+                .onFlush(new Action1<BatchFlush>() {
+                    @Override
+                    public void call(BatchFlush flush) {
+                        flushes.add(flush);
+                    }
+                }) //
+                .parameters(names) //
+                .count() //
+                .subscribe(ts);
+        names.onNext("NANCY");
+        ts.assertValues(0);
+        Mockito.verify(ps, Mockito.never()).executeBatch();
+        scheduler.advanceTimeBy(99, TimeUnit.MILLISECONDS);
+        Mockito.verify(ps, Mockito.never()).executeBatch();
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        Mockito.verify(ps, Mockito.times(1)).executeBatch();
+        Mockito.verify(con, Mockito.times(1)).commit();
+        // the count of the timed flush is emitted by the flush
+        ts.assertValues(0, 1);
+        names.onNext("WARREN");
+        names.onNext("ALFRED");
+        names.onNext("BARRY");
+        // the size flush cancels the timer of its batch
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        Mockito.verify(ps, Mockito.times(2)).executeBatch();
+        names.onNext("ROBERTO");
+        names.onCompleted();
+        ts.assertValues(0, 1, 0, 0, 3, 0, 1);
+        ts.assertCompleted();
+        Mockito.verify(ps, Mockito.times(3)).executeBatch();
+        Mockito.verify(con, Mockito.times(3)).commit();
+        Mockito.verify(con).close();
+        assertEquals(3, flushes.size());
+        assertEquals(BatchFlush.Trigger.TIME, flushes.get(0).trigger());
+        assertEquals(1, flushes.get(0).rows());
+        assertEquals(BatchFlush.Trigger.SIZE, flushes.get(1).trigger());
+        assertEquals(3, flushes.get(1).rows());
+        assertEquals(3, flushes.get(1).count());
+        assertTrue(flushes.get(1).committed());
+        assertEquals(BatchFlush.Trigger.END, flushes.get(2).trigger());
+        assertEquals(1, flushes.get(2).rows());
+    }
+
+    @Test
+    public void testMockedTimedFlushesCommitAtEnd() throws SQLException {
+        String sql = "insert into person(name,score) values(?, 0)";
+        final Connection con = Mockito.mock(Connection.class);
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        Mockito.when(con.prepareStatement(sql)).thenReturn(ps);
+        Mockito.when(ps.executeBatch()).thenReturn(new int[] { 1 });
+        Mockito.when(con.getAutoCommit()).thenReturn(true);
+        Database db = Database.from(createConnectionProvider(con));
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<String> names = PublishSubject.create();
+        TestSubscriber<Integer> ts = TestSubscriber.create();
+        db.update(sql) //
+                .batchSize(3) //
+                .commitPolicy(CommitPolicy.AT_END) //
+                .flushInterval(100, TimeUnit.MILLISECONDS, scheduler) //
+                .parameters(names) //
+                .count() //
+                .subscribe(ts);
+        names.onNext("NANCY");
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        Mockito.verify(ps, Mockito.times(1)).executeBatch();
+        Mockito.verify(con, Mockito.never()).commit();
+        // the count of the timed flush is emitted before it is committed
+        ts.assertValues(0, 1);
+        ts.assertNotCompleted();
+        names.onCompleted();
+        ts.assertValues(0, 1);
+        ts.assertCompleted();
+        Mockito.verify(con, Mockito.times(1)).commit();
+        Mockito.verify(con, Mockito.never()).rollback();
+    }
+
+    @Test
+    public void testMockedTimedFlushErrorIsEmittedByTheFlush() throws SQLException {
+        String sql = "insert into person(name,score) values(?, 0)";
+        final Connection con = Mockito.mock(Connection.class);
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        Mockito.when(con.prepareStatement(sql)).thenReturn(ps);
+        Mockito.when(ps.executeBatch()).thenThrow(new SQLException("boo"));
+        Mockito.when(con.getAutoCommit()).thenReturn(true);
+        Database db = Database.from(createConnectionProvider(con));
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<String> names = PublishSubject.create();
+        TestSubscriber<Integer> ts = TestSubscriber.create();
+        db.update(sql) //
+                .batchSize(3) //
+                .flushInterval(100, TimeUnit.MILLISECONDS, scheduler) //
+                .parameters(names) //
+                .count() //
+                .subscribe(ts);
+        names.onNext("NANCY");
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        // reported without waiting for another parameter set
+        ts.assertError(SQLException.class);
+        assertFalse(names.hasObservers());
+        Mockito.verify(con).rollback();
+        Mockito.verify(con).close();
+    }
+
+    @Test
+    public void testFlushIntervalCannotBeUsedWithinATransaction() {
+        Database db = DatabaseCreator.db();
+        db.update("insert into person(name,score) values(?,0)") //
+                .dependsOn(db.beginTransaction()) //
+                .batchSize(3) //
+                .flushInterval(100, TimeUnit.MILLISECONDS) //
+                .parameters("NANCY", "WARREN") //
+                .count() //
+                .to(TestingHelper.<Integer> test()) //
+                .assertError(SQLRuntimeException.class);
+        db.rollback().subscribe();
+    }
+
+    @Test
+    public void testUnmockedFlushInterval() {
+        Database db = DatabaseCreator.db();
+        int numPeopleBefore = db.select("select count(*) from person") //
+                .getAs(Integer.class) //
+                .toBlocking().single();
+        int count = db.update("insert into person(name,score) values(?,0)") //
+                .batchSize(3) //
+                .flushInterval(10, TimeUnit.MILLISECONDS) //
+                .parameters("NANCY", "WARREN", "ALFRED", "BARRY", "ROBERTO") //
+                .execute();
+        assertEquals(5, count);
+        int numPeople = db.select("select count(*) from person") //
+                .getAs(Integer.class) //
+                .toBlocking().single();
+        assertEquals(numPeopleBefore + 5, numPeople);
+    }
+
+    @Test
+    public void testMockedMultiRowInsert() throws SQLException {
+        String sql = "insert into person(name,score) values(?, 0)";
+        final Connection con = Mockito.mock(Connection.class);
+        PreparedStatement ps4 = Mockito.mock(PreparedStatement.class);
+        PreparedStatement ps1 = Mockito.mock(PreparedStatement.class);
+        Mockito.when(con.prepareStatement(
+                "insert into person(name,score) values(?, 0),(?, 0),(?, 0),(?, 0)"))
+                .thenReturn(ps4);
+        Mockito.when(con.prepareStatement(sql)).thenReturn(ps1);
+        Mockito.when(ps4.executeUpdate()).thenReturn(4);
+        Mockito.when(ps1.executeUpdate()).thenReturn(1);
+        Mockito.when(con.getAutoCommit()).thenReturn(true);
+        Database db = Database.from(createConnectionProvider(con));
+        Observable<String> names = Observable.just("NANCY", "WARREN", "ALFRED", "BARRY", "ROBERTO",
+                "SARAH", "DOUG");
+        List<Integer> counts = db.update(sql).batchSize(6).multiRowInsert(1, 4).parameters(names)
+                .count().toList().toBlocking().single();
+        assertEquals(Arrays.asList(0, 0, 0, 0, 0, 6, 1), counts);
+        // each statement is prepared once
+        Mockito.verify(con, Mockito.times(1)).prepareStatement(
+                "insert into person(name,score) values(?, 0),(?, 0),(?, 0),(?, 0)");
+        Mockito.verify(con, Mockito.times(1)).prepareStatement(sql);
+        Mockito.verify(ps4, Mockito.times(1)).executeUpdate();
+        Mockito.verify(ps4).setObject(4, "BARRY");
+        Mockito.verify(ps1, Mockito.times(3)).executeUpdate();
+        Mockito.verify(ps1, Mockito.never()).addBatch();
+        Mockito.verify(con, Mockito.times(2)).commit();
+        Mockito.verify(ps4).close();
+        Mockito.verify(ps1).close();
+    }
+
+    @Test
+    public void testUnmockedMultiRowInsert() {
+        Database db = DatabaseCreator.db();
+        int numPeopleBefore = db.select("select count(*) from person") //
+                .getAs(Integer.class) //
+                .toBlocking().single();
+        Observable<Object> parameters = Observable.range(1, 45)
+                .concatMap(new Func1<Integer, Observable<Object>>() {
+                    @Override
+                    public Observable<Object> call(Integer n) {
+                        return Observable.<Object> just("person" + n, n);
+                    }
+                });
+        int count = db.update("insert into person(name,score) values(?,?)") //
+                .batchSize(20) //
+                .multiRowInsert() //
+                .parameters(parameters) //
+                .execute();
+        assertEquals(45, count);
+        int numPeople = db.select("select count(*) from person") //
+                .getAs(Integer.class) //
+                .toBlocking().single();
+        assertEquals(numPeopleBefore + 45, numPeople);
+        assertEquals(45, (int) db.select("select score from person where name = ?")
+                .parameter("person45").getAs(Integer.class).toBlocking().single());
+    }
+
+    @Test
+    public void testUnmockedMultiRowInsertWithNamedParameters() {
+        Database db = DatabaseCreator.db();
+        Map<String, Object> nancy = new HashMap<String, Object>();
+        nancy.put("score", 7);
+        nancy.put("name", "NANCY");
+        Map<String, Object> warren = new HashMap<String, Object>();
+        warren.put("score", 8);
+        warren.put("name", "WARREN");
+        int count = db.update("insert into person(name,score) values(:name,:score)") //
+                .batchSize(3) //
+                .multiRowInsert() //
+                .parameters(Observable.just(nancy, warren)) //
+                .execute();
+        assertEquals(2, count);
+        assertEquals(8, (int) db.select("select score from person where name = ?")
+                .parameter("WARREN").getAs(Integer.class).toBlocking().single());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMultiRowInsertRequiresSingleRowInsert() {
+        DatabaseCreator.db().update("update person set score = ?").batchSize(3).multiRowInsert();
+    }
+
+    @Test
+    public void testMultiRowInsertCannotBeUsedWithinATransaction() {
+        Database db = DatabaseCreator.db();
+        db.update("insert into person(name,score) values(?,0)") //
+                .dependsOn(db.beginTransaction()) //
+                .batchSize(3) //
+                .multiRowInsert() //
+                .parameters("NANCY", "WARREN") //
+                .count() //
+                .to(TestingHelper.<Integer> test()) //
+                .assertError(SQLRuntimeException.class);
+        db.rollback().subscribe();
+    }
+
+    @Test
+    public void testInterleavedStatementsWithinTransactionAreBatchedInDependencyOrder() {
+        final Database db = DatabaseCreator.db();
+        db.update("create table orders (id int primary key)").execute();
+        db.update(
+                "create table order_line (order_id int not null references orders(id), line int not null)")
+                .execute();
+        final Observable<Boolean> begin = db.beginTransaction();
+        Observable<Integer> count = Observable.range(1, 7)
+                .publish(new Func1<Observable<Integer>, Observable<Integer>>() {
+                    @Override
+                    public Observable<Integer> call(Observable<Integer> ids) {
+                        return Observable.merge(
+                                db.update("insert into orders(id) values(?)") //
+                                        .dependsOn(begin) //
+                                        .batchSize(5) //
+                                        .parameters(ids) //
+                                        .count(),
+                                // the lines batch fills first but the orders
+                                // they reference must be inserted before them
+                                db.update("insert into order_line(order_id, line) values(?, 1)") //
+                                        .batchSize(2) //
+                                        .parameters(ids) //
+                                        .count());
+                    }
+                }) //
+                .toList() //
+                .map(new Func1<List<Integer>, Integer>() {
+                    @Override
+                    public Integer call(List<Integer> list) {
+                        return sum(list);
+                    }
+                });
+        final AtomicInteger records = new AtomicInteger();
+        db.commit(count.doOnNext(Actions.setAtomic(records))).toBlocking().single();
+        assertEquals(14, records.get());
+        assertEquals(7, (int) db.select("select count(*) from order_line").getAs(Integer.class)
+                .toBlocking().single());
+    }
+
+    @Test
+    public void testInterleavedStatementsReportTheirOwnCounts() {
+        final Database db = DatabaseCreator.db();
+        db.update("create table orders (id int primary key)").execute();
+        db.update(
+                "create table order_line (order_id int not null references orders(id), line int not null)")
+                .execute();
+        final Observable<Boolean> begin = db.beginTransaction();
+        final List<Integer> orderCounts = new CopyOnWriteArrayList<Integer>();
+        final List<Integer> lineCounts = new CopyOnWriteArrayList<Integer>();
+        Observable<Integer> count = Observable.range(1, 7)
+                .publish(new Func1<Observable<Integer>, Observable<Integer>>() {
+                    @Override
+                    public Observable<Integer> call(Observable<Integer> ids) {
+                        return Observable.merge(
+                                db.update("insert into orders(id) values(?)") //
+                                        .dependsOn(begin) //
+                                        .batchSize(5) //
+                                        .parameters(ids) //
+                                        .count() //
+                                        .doOnNext(Actions.addTo(orderCounts)),
+                                // each filled lines batch also executes the
+                                // pending orders batch
+                                db.update("insert into order_line(order_id, line) values(?, 1)") //
+                                        .batchSize(2) //
+                                        .parameters(ids) //
+                                        .count() //
+                                        .doOnNext(Actions.addTo(lineCounts)));
+                    }
+                }) //
+                .count();
+        db.commit(count).toBlocking().single();
+        assertEquals(7, sum(orderCounts));
+        assertEquals(7, sum(lineCounts));
+    }
+
+    @Test
+    public void testBatchFlushedByAnotherStatementIsReportedByItsOwnUpdate() {
+        final Database db = DatabaseCreator.db();
+        final Observable<Boolean> begin = db.beginTransaction();
+        final List<Integer> insertCounts = new CopyOnWriteArrayList<Integer>();
+        final List<Integer> fredCounts = new CopyOnWriteArrayList<Integer>();
+        Observable<Integer> count = Observable.just("NANCY", "WARREN", "ALFRED")
+                .publish(new Func1<Observable<String>, Observable<Integer>>() {
+                    @Override
+                    public Observable<Integer> call(Observable<String> names) {
+                        return Observable.merge(
+                                db.update("insert into person(name,score) values(?,0)") //
+                                        .dependsOn(begin) //
+                                        .batchSize(10) //
+                                        .parameters(names) //
+                                        .count() //
+                                        .doOnNext(Actions.addTo(insertCounts)),
+                                // preparing this unbatched statement on the
+                                // connection executes the pending inserts
+                                db.update(
+                                        "update person set score = score + 1 where name = 'FRED' and name <> ?") //
+                                        .parameters(names) //
+                                        .count() //
+                                        .doOnNext(Actions.addTo(fredCounts)));
+                    }
+                }) //
+                .count();
+        db.commit(count).toBlocking().single();
+        // the inserts flushed by the other statement are reported by the
+        // insert update (on its next execution)
+        assertEquals(Arrays.asList(0, 1, 2), insertCounts);
+        assertEquals(Arrays.asList(1, 1, 1), fredCounts);
+        assertEquals(3, (int) db.select("select count(*) from person where score = 0")
+                .getAs(Integer.class).toBlocking().single());
+    }
+
+    @Test
+    public void testMockedInterleavedStatementsWithinTransaction() throws SQLException {
+        String sqlOrder = "insert into orders(id) values(?)";
+        String sqlLine = "insert into order_line(order_id, line) values(?, 1)";
+        final Connection con = Mockito.mock(Connection.class);
+        PreparedStatement psOrder = Mockito.mock(PreparedStatement.class);
+        PreparedStatement psLine = Mockito.mock(PreparedStatement.class);
+        Mockito.when(con.prepareStatement(sqlOrder, Statement.NO_GENERATED_KEYS))
+                .thenReturn(psOrder);
+        Mockito.when(con.prepareStatement(sqlLine, Statement.NO_GENERATED_KEYS))
+                .thenReturn(psLine);
+        Mockito.when(psOrder.executeBatch()).thenReturn(new int[] { 1, 1 });
+        Mockito.when(psLine.executeBatch()).thenReturn(new int[] { 1, 1 });
+        Mockito.when(con.getAutoCommit()).thenReturn(false);
+        final Database db = Database.from(createConnectionProvider(con));
+        final Observable<Boolean> begin = db.beginTransaction();
+        Observable<Integer> count = Observable.range(1, 4)
+                .publish(new Func1<Observable<Integer>, Observable<Integer>>() {
+                    @Override
+                    public Observable<Integer> call(Observable<Integer> ids) {
+                        return Observable.merge(
+                                db.update(sqlOrder).dependsOn(begin).batchSize(10)
+                                        .parameters(ids).count(),
+                                db.update(sqlLine).batchSize(2).parameters(ids).count());
+                    }
+                }).count();
+        db.commit(count).toBlocking().single();
+        // one statement per sql
+        Mockito.verify(con, Mockito.times(1)).prepareStatement(sqlOrder,
+                Statement.NO_GENERATED_KEYS);
+        Mockito.verify(con, Mockito.times(1)).prepareStatement(sqlLine,
+                Statement.NO_GENERATED_KEYS);
+        // each flush executes the orders batch before the lines batch
+        InOrder in = Mockito.inOrder(psOrder, psLine);
+        in.verify(psOrder, Mockito.calls(2)).addBatch();
+        in.verify(psOrder).executeBatch();
+        in.verify(psLine).executeBatch();
+        in.verify(psOrder, Mockito.calls(2)).addBatch();
+        in.verify(psOrder).executeBatch();
+        in.verify(psLine).executeBatch();
+        Mockito.verify(psOrder, Mockito.times(4)).addBatch();
+        Mockito.verify(psLine, Mockito.times(4)).addBatch();
+        Mockito.verify(con).commit();
+    }
+
     private static int sum(List<Integer> list) {
         int sum = 0;
         for (Integer n : list) {
@@ -132,8 +629,8 @@ public final class BatchingTest {
         return sum;
     }
 
-    @Test(expected = IllegalArgumentException.class)
-    public void cannotReturnGeneratedKeysWhenBatching() {
+    @Test
+    public void cannotReturnGeneratedKeysWhenBatchingWithinATransaction() {
         Database db = DatabaseCreator.db();
         Observable<String> names = Observable.just("NANCY");
 
@@ -143,7 +640,76 @@ public final class BatchingTest {
                 // get parameters from last query
                 .parameters(names)
                 //
-                .returnGeneratedKeys();
+                .returnGeneratedKeys() //
+                .getAs(Integer.class) //
+                .to(TestingHelper.<Integer> test()) //
+                .assertError(SQLRuntimeException.class);
+        db.rollback().subscribe();
+    }
+
+    @Test
+    public void testReturnGeneratedKeysWhenBatching() {
+        Database db = DatabaseCreator.db();
+        List<Integer> keys = db.update("insert into note(text) values(?)") //
+                .batchSize(3) //
+                .parameters("a", "b", "c", "d", "e") //
+                .returnGeneratedKeys() //
+                .getAs(Integer.class) //
+                .toList().toBlocking().single();
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), keys);
+    }
+
+    @Test
+    public void testReturnGeneratedKeysWhenBatchingWithMultiRowInsert() {
+        Database db = DatabaseCreator.db();
+        List<Integer> keys = db.update("insert into note(text) values(?)") //
+                .batchSize(10) //
+                .multiRowInsert(1, 4) //
+                .parameters("a", "b", "c", "d", "e", "f") //
+                .returnGeneratedKeys() //
+                .getAs(Integer.class) //
+                .toList().toBlocking().single();
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), keys);
+    }
+
+    @Test
+    public void testRowCountsWhenBatching() {
+        Database db = DatabaseCreator.db();
+        List<Integer> counts = db.update("update person set score = ? where name = ?") //
+                .batchSize(2) //
+                .parameters(1, "FRED", 2, "NOBODY", 3, "JOSEPH") //
+                .rowCounts() //
+                .toList().toBlocking().single();
+        assertEquals(Arrays.asList(1, 0, 1), counts);
+    }
+
+    @Test
+    public void testMockedRowCountsWhenBatching() throws SQLException {
+        String sql = "insert into person(name,score) values(?, 0)";
+        final Connection con = Mockito.mock(Connection.class);
+        PreparedStatement ps = Mockito.mock(PreparedStatement.class);
+        Mockito.when(con.prepareStatement(sql)).thenReturn(ps);
+        Mockito.when(ps.executeBatch()) //
+                .thenReturn(new int[] { 1, 1, 1 }) //
+                .thenReturn(new int[] { 1, Statement.SUCCESS_NO_INFO });
+        Mockito.when(con.getAutoCommit()).thenReturn(true);
+        Database db = Database.from(createConnectionProvider(con));
+        Observable<String> names = Observable.just("NANCY", "WARREN", "ALFRED", "BARRY", "ROBERTO");
+        List<Integer> counts = db.update(sql).batchSize(3).parameters(names).rowCounts().toList()
+                .toBlocking().single();
+        assertEquals(Arrays.asList(1, 1, 1, 1, Statement.SUCCESS_NO_INFO), counts);
+    }
+
+    @Test
+    public void testRowCountsWhenBatchingWithMultiRowInsert() {
+        Database db = DatabaseCreator.db();
+        List<Integer> counts = db.update("insert into person(name,score) values(?,0)") //
+                .batchSize(5) //
+                .multiRowInsert(1, 4) //
+                .parameters("NANCY", "WARREN", "ALFRED", "BARRY", "ROBERTO") //
+                .rowCounts() //
+                .toList().toBlocking().single();
+        assertEquals(Arrays.asList(1, 1, 1, 1, 1), counts);
     }
 
     private static ConnectionProvider createConnectionProvider(final Connection con) {
@@ -36,6 +36,65 @@ public class Benchmarks {
                 .toBlocking().single();
     }
 
+    private static final ResultSetMapper<Integer> SCORE = new ResultSetMapper<Integer>() {
+        @Override
+        public Integer call(ResultSet rs) throws SQLException {
+            return rs.getInt(1);
+        }
+    };
+
+    public final PreparedSelect<Integer> scoreByName = db
+            .prepare("select score from person where name = ?").mapper(SCORE);
+
+    @Benchmark
+    public Integer selectByKeyUsingBuilder() {
+        return db.select("select score from person where name = ?").parameter("FRED").get(SCORE)
+                .toBlocking().single();
+    }
+
+    @Benchmark
+    public Integer selectByKeyUsingPreparedSelect() {
+        return scoreByName.execute("FRED").toBlocking().single();
+    }
+
+    @Benchmark
+    public Integer selectByKeyUsingRawJdbc() {
+        try (PreparedStatement ps = con
+                .prepareStatement("select score from person where name = ?");) {
+            ps.setString(1, "FRED");
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final Observable<Object> INSERT_PARAMETERS = Observable.range(1, 256)
+            .concatMap(new Func1<Integer, Observable<Object>>() {
+                @Override
+                public Observable<Object> call(Integer n) {
+                    return Observable.<Object> just("name" + n, n);
+                }
+            });
+
+    @Benchmark
+    public int insertUsingJdbcBatching() {
+        int count = db.update("insert into insert_benchmark(name, score) values(?,?)")
+                .batchSize(256).parameters(INSERT_PARAMETERS).execute();
+        db.update("delete from insert_benchmark").execute();
+        return count;
+    }
+
+    @Benchmark
+    public int insertUsingMultiRowInsert() {
+        int count = db.update("insert into insert_benchmark(name, score) values(?,?)")
+                .batchSize(256).multiRowInsert().parameters(INSERT_PARAMETERS).execute();
+        db.update("delete from insert_benchmark").execute();
+        return count;
+    }
+
     @Benchmark
     public void selectUsingRawJdbc() {
         try (PreparedStatement ps = con.prepareStatement("select name from person");) {
@@ -53,6 +112,7 @@ public class Benchmarks {
     private static Connection createConnection() {
         Connection con = new ConnectionNonClosing(DatabaseCreator.nextConnection());
         Database db = Database.from(con);
+        db.update("create table insert_benchmark(name varchar(50), score int)").execute();
         // insert another 1000 people
         db.update("insert into person(name, score) values(?,?)").parameters(
                 Observable.range(1, 1000).concatMap(new Func1<Integer, Observable<Object>>() {
@@ -0,0 +1,72 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ConnectionProviderStatementCachingTest {
+
+    @Test
+    public void testStatementReusedWhenSameQueryRunTwiceOnSameConnection() {
+        ConnectionProviderStatementCaching cp = new ConnectionProviderStatementCaching(
+                new ConnectionProviderNonClosing(DatabaseCreator.nextConnection()), 10);
+        Database db = Database.from(cp);
+        for (String name : Arrays.asList("FRED", "JOSEPH", "MARMADUKE")) {
+            db.select("select score from person where name=?") //
+                    .parameter(name) //
+                    .getAs(Integer.class) //
+                    .toBlocking().single();
+        }
+        assertEquals(1, cp.misses());
+        assertEquals(2, cp.hits());
+        assertEquals(1, cp.size());
+        db.close();
+        assertEquals(0, cp.size());
+    }
+
+    @Test
+    public void testSelectAndUpdateWithSameSqlAreCachedSeparately() {
+        ConnectionProviderStatementCaching cp = new ConnectionProviderStatementCaching(
+                new ConnectionProviderNonClosing(DatabaseCreator.nextConnection()), 10);
+        Database db = Database.from(cp);
+        db.update("update person set score = score + 1").count().toBlocking().single();
+        db.update("update person set score = score + 1").count().toBlocking().single();
+        db.select("select score from person where name=?").parameter("FRED")
+                .getAs(Integer.class).toBlocking().single();
+        assertEquals(2, cp.misses());
+        assertEquals(1, cp.hits());
+        assertEquals(2, cp.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedStatementEvicted() {
+        ConnectionProviderStatementCaching cp = new ConnectionProviderStatementCaching(
+                new ConnectionProviderNonClosing(DatabaseCreator.nextConnection()), 1);
+        Database db = Database.from(cp);
+        db.select("select name from person").count().toBlocking().single();
+        db.select("select score from person").count().toBlocking().single();
+        db.select("select name from person").count().toBlocking().single();
+        assertEquals(3, cp.misses());
+        assertEquals(0, cp.hits());
+        assertEquals(2, cp.evictions());
+        assertEquals(1, cp.size());
+    }
+
+    @Test
+    public void testStatementCachingWithConnectionPool() {
+        Database db = Database.builder().url(DatabaseCreator.nextUrl()).pool(1, 1)
+                .statementCacheSize(10).build();
+        db.update("create table thing (id int primary key)").count().toBlocking().single();
+        int count = db.update("insert into thing(id) values(?)").parameters(1, 2, 3, 4).count()
+                .count().toBlocking().single();
+        assertEquals(4, count);
+        ConnectionProviderStatementCaching cp = (ConnectionProviderStatementCaching) db
+                .getConnectionProvider();
+        assertEquals(2, cp.misses());
+        assertEquals(3, cp.hits());
+        db.close();
+    }
+
+}
@@ -10,6 +10,7 @@ import static com.github.davidmoten.rx.jdbc.TestingUtil.countDown;
 import static java.util.Arrays.asList;
 import static org.easymock.EasyMock.createMock;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static rx.Observable.just;
@@ -46,6 +47,7 @@ import com.github.davidmoten.rx.RxUtil;
 import com.github.davidmoten.rx.jdbc.annotations.Column;
 import com.github.davidmoten.rx.jdbc.annotations.Index;
 import com.github.davidmoten.rx.jdbc.annotations.Query;
+import com.github.davidmoten.rx.jdbc.exceptions.SQLRuntimeException;
 import com.github.davidmoten.rx.jdbc.exceptions.TransactionAlreadyOpenException;
 import com.github.davidmoten.rx.jdbc.tuple.Tuple2;
 import com.github.davidmoten.rx.jdbc.tuple.Tuple3;
@@ -54,16 +56,22 @@ import com.github.davidmoten.rx.jdbc.tuple.Tuple5;
 import com.github.davidmoten.rx.jdbc.tuple.Tuple6;
 import com.github.davidmoten.rx.jdbc.tuple.Tuple7;
 import com.github.davidmoten.rx.jdbc.tuple.TupleN;
+import com.github.davidmoten.rx.jdbc.tuple.Tuples;
 import com.zaxxer.hikari.HikariDataSource;
 
 import rx.Observable;
 import rx.Observable.Transformer;
 import rx.Observer;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
 import rx.functions.Action0;
 import rx.functions.Action1;
+import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.observables.MathObservable;
 import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
 
 public abstract class DatabaseTestBase {
 
@@ -411,6 +419,815 @@ public abstract class DatabaseTestBase {
         assertEquals(asList(21, 34), list);
     }
 
+    @Test
+    public void testMultipleSetsOfParametersReusingStatement() throws InterruptedException {
+        CountDownConnectionProvider cp = new CountDownConnectionProvider(1, 1);
+        Database db = new Database(cp);
+        if (async)
+            db = db.asynchronous();
+        List<Integer> list = db.select("select score from person where name=?")
+                // parameters
+                .parameters("FRED", "JOSEPH", "MARMADUKE")
+                // one connection and statement
+                .reuseStatement()
+                // score as integer
+                .getAs(Integer.class)
+                // block and get
+                .toList().toBlocking().single();
+        assertEquals(asList(21, 34, 25), list);
+        assertTrue(cp.getsLatch().await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(cp.closesLatch().await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testGetChunked() {
+        List<List<String>> list = db().select("select name from person order by name")
+                .getChunked(2, Tuples.single(String.class)).toList().toBlocking().single();
+        assertEquals(asList(asList("FRED", "JOSEPH"), asList("MARMADUKE")), list);
+    }
+
+    @Test
+    public void testGetChunkedWhenRowCountIsMultipleOfChunkSize() {
+        List<List<String>> list = db().select("select name from person order by name")
+                .getChunked(3, Tuples.single(String.class)).toList().toBlocking().single();
+        assertEquals(asList(asList("FRED", "JOSEPH", "MARMADUKE")), list);
+    }
+
+    @Test
+    public void testGetChunkedBackpressureCountsChunks() {
+        TestSubscriber<List<String>> ts = TestSubscriber.create(1);
+        db().select("select name from person order by name")
+                .getChunked(2, Tuples.single(String.class)).subscribe(ts);
+        ts.awaitValueCount(1, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts.assertValue(asList("FRED", "JOSEPH"));
+        ts.assertNotCompleted();
+        ts.requestMore(1);
+        ts.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts.assertValues(asList("FRED", "JOSEPH"), asList("MARMADUKE"));
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testAutoMapChunkedWithMultipleParameterSets() {
+        List<List<Person>> list = db()
+                .select("select name,score,dob,registered from person where score > ? order by name")
+                .parameters(0, 30).autoMapChunked(Person.class, 2).toList().toBlocking()
+                .single();
+        assertEquals(3, list.size());
+        assertEquals(2, list.get(0).size());
+        assertEquals(1, list.get(1).size());
+        assertEquals("JOSEPH", list.get(2).get(0).getName());
+    }
+
+    @Test
+    public void testReadAhead() {
+        List<String> list = db().select("select name from person order by name").readAhead(2)
+                .getAs(String.class).toList().toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), list);
+    }
+
+    @Test
+    public void testReadAheadIsRejectedWithinTransaction() {
+        Database db = db();
+        Observable<String> select = db.select("select name from person order by name")
+                .dependsOn(db.beginTransaction()).readAhead(2).getAs(String.class);
+        TestSubscriber<Boolean> ts = TestSubscriber.create();
+        db.commit(select).subscribe(ts);
+        ts.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts.assertError(IllegalArgumentException.class);
+        // the transaction context is reset so the next transaction can open
+        Observable<Integer> count = db.select("select name from person")
+                .dependsOn(db.beginTransaction()).count();
+        assertTrue(db.commit(count).toBlocking().single());
+    }
+
+    @Test
+    public void testReadAheadHonoursBackpressure() {
+        TestSubscriber<String> ts = TestSubscriber.create(1);
+        db().select("select name from person order by name").readAhead(1).getAs(String.class)
+                .subscribe(ts);
+        ts.awaitValueCount(1, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts.assertValue("FRED");
+        ts.requestMore(1);
+        ts.awaitValueCount(2, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts.assertNotCompleted();
+        ts.requestMore(1);
+        ts.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts.assertValues("FRED", "JOSEPH", "MARMADUKE");
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testReadAheadEmitsNullMappedValues() {
+        List<String> list = db().select("select dob from person order by name").readAhead(8)
+                .getAs(String.class).toList().toBlocking().single();
+        assertEquals(Arrays.<String> asList(null, null, null), list);
+    }
+
+    @Test
+    public void testReadAheadWithChunksAndMultipleParameterSets() {
+        List<List<String>> list = db().select("select name from person where score > ? order by name")
+                .parameters(0, 30).readAhead(1).getChunked(2, Tuples.single(String.class))
+                .toList().toBlocking().single();
+        assertEquals(asList(asList("FRED", "JOSEPH"), asList("MARMADUKE"), asList("JOSEPH")),
+                list);
+    }
+
+    @Test
+    public void testReadAheadReleasesConnection() throws InterruptedException {
+        CountDownConnectionProvider cp = new CountDownConnectionProvider(1, 1);
+        Database db = new Database(cp);
+        if (async)
+            db = db.asynchronous();
+        assertEquals(3, (int) db.select("select name from person").readAhead(2)
+                .getAs(String.class).count().toBlocking().single());
+        assertTrue(cp.getsLatch().await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(cp.closesLatch().await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMaxRows() {
+        List<String> list = db().select("select name from person order by name").maxRows(2)
+                .getAs(String.class).toList().toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH"), list);
+    }
+
+    @Test
+    public void testMaxRowsAppliesPerParameterSet() {
+        List<String> list = db()
+                .select("select name from person where score >= ? order by name")
+                .parameters(0, 25).limit(1).getAs(String.class).toList().toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH"), list);
+    }
+
+    @Test
+    public void testMaxRowsWithReadAhead() {
+        List<String> list = db().select("select name from person order by name").maxRows(2)
+                .readAhead(5).getAs(String.class).toList().toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH"), list);
+    }
+
+    @Test
+    public void testMaxRowsCompletesWithoutFurtherRequest() {
+        TestSubscriber<String> ts = TestSubscriber.create(2);
+        db().select("select name from person order by name").maxRows(2).getAs(String.class)
+                .subscribe(ts);
+        ts.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts.assertValues("FRED", "JOSEPH");
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testExistsTrue() {
+        assertTrue(db().select("select name from person where score > ?").parameter(20)
+                .exists().toBlocking().single());
+    }
+
+    @Test
+    public void testExistsFalse() {
+        assertFalse(db().select("select name from person where score > ?").parameter(1000)
+                .exists().toBlocking().single());
+    }
+
+    @Test
+    public void testExistsDoesNotLimitLaterQueriesOfTheBuilder() {
+        QuerySelect.Builder builder = db().select("select name from person where score > ?")
+                .parameter(20);
+        assertTrue(builder.exists().toBlocking().single());
+        assertEquals(3, (int) builder.getAs(String.class).count().toBlocking().single());
+        assertEquals(3, (int) builder.count().toBlocking().single());
+    }
+
+    @Test
+    public void testCountServerSideWithParametersSumsOverParameterSets() {
+        assertEquals(4, (int) db().select("select name from person where score > ?")
+                .parameters(20, 30).countServerSide().toBlocking().single());
+    }
+
+    @Test
+    public void testCountServerSideWithNamedParameters() {
+        assertEquals(2, (int) db().select("select name from person where score > :min")
+                .parameter("min", 21).countServerSide().toBlocking().single());
+    }
+
+    @Test
+    public void testCountServerSideWithMaxRows() {
+        assertEquals(2, (int) db().select("select name from person").maxRows(2).countServerSide()
+                .toBlocking().single());
+    }
+
+    @Test
+    public void testCountServerSideWithTrailingSemicolonAndOrderBy() {
+        assertEquals(3, (int) db().select("select name from person order by name;").countServerSide()
+                .toBlocking().single());
+    }
+
+    @Test
+    public void testCountOfJoinWithDuplicateColumnNames() {
+        assertEquals(3, (int) db()
+                .select("select p.name, q.name from person p join person q on p.name = q.name")
+                .count().toBlocking().single());
+    }
+
+    @Test
+    public void testSelectMaxConcurrencyPreservesOrder() {
+        List<Integer> list = db().select("select score from person where name=?")
+                .parameters("FRED", "JOSEPH", "MARMADUKE", "FRED").maxConcurrency(3)
+                .getAs(Integer.class).toList().toBlocking().single();
+        assertEquals(asList(21, 34, 25, 21), list);
+    }
+
+    @Test
+    public void testSelectMaxConcurrencyUnordered() {
+        List<Integer> list = db().select("select score from person where name=?")
+                .parameters("FRED", "JOSEPH", "MARMADUKE").maxConcurrency(3, false)
+                .getAs(Integer.class).toSortedList().toBlocking().single();
+        assertEquals(asList(21, 25, 34), list);
+    }
+
+    @Test
+    public void testSelectMaxConcurrencyRunsExecutionsOnSeparateConnections() {
+        final Database db = db();
+        final CountDownLatch latch = new CountDownLatch(3);
+        final AtomicInteger timeouts = new AtomicInteger();
+        ConnectionProvider cp = new ConnectionProvider() {
+
+            @Override
+            public Connection get() {
+                Connection con = db.getConnectionProvider().get();
+                latch.countDown();
+                try {
+                    // only opens if three connections are obtained at once
+                    if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                        timeouts.incrementAndGet();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return con;
+            }
+
+            @Override
+            public void close() {
+                db.close();
+            }
+        };
+        List<Integer> list = Database.from(cp).select("select score from person where name=?")
+                .parameters("FRED", "JOSEPH", "MARMADUKE").maxConcurrency(3)
+                .getAs(Integer.class).toList().toBlocking().single();
+        assertEquals(asList(21, 34, 25), list);
+        assertEquals(0, timeouts.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectMaxConcurrencyWithReuseStatementThrows() {
+        db().select("select score from person where name=?").parameters("FRED")
+                .reuseStatement().maxConcurrency(2).getAs(Integer.class);
+    }
+
+    @Test
+    public void testUpdateMaxConcurrency() {
+        Database db = db();
+        List<Integer> counts = db.update("update person set score = score + 1 where name=?")
+                .parameters("FRED", "JOSEPH", "MARMADUKE").maxConcurrency(3).count().toList()
+                .toBlocking().single();
+        assertEquals(asList(1, 1, 1), counts);
+        assertEquals(asList(22, 26, 35), db.select("select score from person order by score")
+                .getAs(Integer.class).toList().toBlocking().single());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUpdateMaxConcurrencyWithBatchSizeThrows() {
+        db().update("update person set score = score + 1 where name=?")
+                .parameters("FRED", "JOSEPH").batchSize(2).maxConcurrency(2).count();
+    }
+
+    @Test
+    public void testSelectPartitionedUsingMinMax() {
+        List<String> list = db()
+                .selectPartitioned("select name, score from person where {range}", "score")
+                .partitions(2).getAs(String.class).toSortedList().toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), list);
+    }
+
+    @Test
+    public void testSelectPartitionedWithMorePartitionsThanValues() {
+        List<String> list = db()
+                .selectPartitioned("select name from person where {range} and score > 0",
+                        "score")
+                .partitions(100, "select min(score), max(score) from person").maxConcurrency(4).getAs(String.class).toSortedList()
+                .toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), list);
+    }
+
+    @Test
+    public void testSelectPartitionedUsingBoundaries() {
+        List<String> list = db()
+                .selectPartitioned("select name from person where {range}", "score")
+                .boundaries(25, 30).getAs(String.class).toSortedList().toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), list);
+    }
+
+    @Test
+    public void testSelectPartitionedUsingBoundariesQuery() {
+        List<Person> list = db()
+                .selectPartitioned("select name, score, dob, registered from person where {range}",
+                        "score")
+                .boundariesFrom("select score from person where name='MARMADUKE'")
+                .autoMap(Person.class).toList().toBlocking().single();
+        assertEquals(3, list.size());
+    }
+
+    @Test
+    public void testSelectPartitionedWhenNoRows() {
+        assertEquals(0, (int) db()
+                .selectPartitioned(
+                        "select name, score from person where {range} and score < 0", "score")
+                .partitions(4).getAs(String.class).count().toBlocking().single());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectPartitionedRequiresRangePlaceholder() {
+        db().selectPartitioned("select name from person", "score");
+    }
+
+    @Test
+    public void testSelectKeysetSinglePage() {
+        List<String> list = db().selectKeyset("select name from person where {range}", "name")
+                .getAs(String.class).toList().toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), list);
+    }
+
+    @Test
+    public void testSelectKeysetPageSizeOne() {
+        List<String> list = db().selectKeyset("select name from person where {range}", "name")
+                .pageSize(1).getAs(String.class).toList().toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), list);
+    }
+
+    @Test
+    public void testSelectKeysetPageSizeTwo() {
+        List<Integer> list = db()
+                .selectKeyset("select score from person where score > 0 and {range}", "score")
+                .pageSize(2).getAs(Integer.class).toList().toBlocking().single();
+        assertEquals(asList(21, 25, 34), list);
+    }
+
+    @Test
+    public void testSelectKeysetPageSizeEqualToRowCount() {
+        List<String> list = db().selectKeyset("select name from person where {range}", "name")
+                .pageSize(3).getAs(String.class).toList().toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), list);
+    }
+
+    @Test
+    public void testSelectKeysetHonoursBackpressure() {
+        TestSubscriber<String> ts = TestSubscriber.create(1);
+        db().selectKeyset("select name from person where {range}", "name").pageSize(2)
+                .getAs(String.class).subscribe(ts);
+        ts.awaitValueCount(1, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts.assertValue("FRED");
+        ts.requestMore(1);
+        ts.awaitValueCount(2, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts.assertNotCompleted();
+        ts.requestMore(1);
+        ts.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts.assertValues("FRED", "JOSEPH", "MARMADUKE");
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testSelectKeysetResumesAfterFailedPage() {
+        final Database db = db();
+        final AtomicInteger gets = new AtomicInteger();
+        ConnectionProvider cp = new ConnectionProvider() {
+
+            @Override
+            public Connection get() {
+                // fail getting a connection for the second page
+                if (gets.incrementAndGet() == 2)
+                    throw new SQLRuntimeException("transient failure");
+                return db.getConnectionProvider().get();
+            }
+
+            @Override
+            public void close() {
+                db.close();
+            }
+        };
+        List<String> list = Database.from(cp)
+                .selectKeyset("select name from person where {range}", "name").pageSize(1)
+                .retries(1).getAs(String.class).toList().toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), list);
+    }
+
+    @Test
+    public void testSelectKeysetEmitsErrorWhenRetriesExhausted() {
+        TestSubscriber<String> ts = TestSubscriber.create();
+        db().selectKeyset("select name from person where {range}", "nonexistent").pageSize(1)
+                .getAs(String.class).subscribe(ts);
+        ts.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts.assertNoValues();
+        ts.assertError(SQLException.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectKeysetRangePlaceholderMustNotBeRepeated() {
+        db().selectKeyset("select name from person where {range} and {range}", "name");
+    }
+
+    @Test
+    public void testCoalesceSharesInFlightExecution() throws InterruptedException {
+        Database db = db();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ResultSetMapper<String> mapper = new ResultSetMapper<String>() {
+            @Override
+            public String call(ResultSet rs) throws SQLException {
+                entered.countDown();
+                try {
+                    release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return rs.getString(1);
+            }
+        };
+        String sql = "select name from person where score > ? order by name";
+        TestSubscriber<String> ts1 = TestSubscriber.create();
+        db.select(sql).parameter(0).coalesce().get(mapper).subscribeOn(Schedulers.io())
+                .subscribe(ts1);
+        assertTrue(entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        TestSubscriber<String> ts2 = TestSubscriber.create();
+        db.select(sql).parameter(0).coalesce().get(mapper).subscribe(ts2);
+        assertEquals(1, db.selectCoalescingStatistics().inFlight());
+        release.countDown();
+        ts1.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts2.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts1.assertValues("FRED", "JOSEPH", "MARMADUKE");
+        ts2.assertValues("FRED", "JOSEPH", "MARMADUKE");
+        ts1.assertCompleted();
+        ts2.assertCompleted();
+        CoalescingStatistics stats = db.selectCoalescingStatistics();
+        assertEquals(1, stats.executions());
+        assertEquals(1, stats.coalesced());
+        assertEquals(0, stats.inFlight());
+    }
+
+    @Test
+    public void testCoalesceDoesNotShareCompletedExecution() {
+        Database db = db();
+        String sql = "select name from person order by name";
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), db.select(sql).coalesce()
+                .getAs(String.class).toList().toBlocking().single());
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), db.select(sql).coalesce()
+                .getAs(String.class).toList().toBlocking().single());
+        CoalescingStatistics stats = db.selectCoalescingStatistics();
+        assertEquals(2, stats.executions());
+        assertEquals(0, stats.coalesced());
+        assertEquals(0, stats.inFlight());
+    }
+
+    @Test
+    public void testCoalesceDoesNotShareExecutionsWithDifferentParameters() {
+        Database db = db();
+        List<String> list = db.select("select name from person where name = ?")
+                .parameters("FRED", "JOSEPH", "FRED").coalesce().getAs(String.class).toList()
+                .toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH", "FRED"), list);
+        assertEquals(3, db.selectCoalescingStatistics().executions());
+    }
+
+    @Test
+    public void testCoalesceNotUsedByDefault() {
+        Database db = db();
+        db.select("select name from person").getAs(String.class).count().toBlocking().single();
+        assertEquals(0, db.selectCoalescingStatistics().executions());
+    }
+
+    private static final CachePolicy PERSON_CACHE = CachePolicy.builder().tables("PERSON")
+            .build();
+
+    @Test
+    public void testCachedServesSecondExecutionFromCache() {
+        Database db = db();
+        String sql = "select name from person order by name";
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), db.select(sql).cached(PERSON_CACHE)
+                .getAs(String.class).toList().toBlocking().single());
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), db.select(sql).cached(PERSON_CACHE)
+                .getAs(String.class).toList().toBlocking().single());
+        ResultCacheStatistics stats = db.resultCacheStatistics(PERSON_CACHE);
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.loads());
+        assertEquals(1, stats.entries());
+        assertEquals(3, stats.weight());
+    }
+
+    @Test
+    public void testCachedKeyedByParameters() {
+        Database db = db();
+        String sql = "select score from person where name = ?";
+        assertEquals(asList(21, 34, 21),
+                db.select(sql).parameters("FRED", "JOSEPH", "FRED").cached(PERSON_CACHE)
+                        .getAs(Integer.class).toList().toBlocking().single());
+        ResultCacheStatistics stats = db.resultCacheStatistics(PERSON_CACHE);
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.misses());
+    }
+
+    @Test
+    public void testCachedInvalidatedByUpdateOfDeclaredTable() {
+        Database db = db();
+        String sql = "select score from person where name = ?";
+        assertEquals(21, (int) db.select(sql).parameter("FRED").cached(PERSON_CACHE)
+                .getAs(Integer.class).toBlocking().single());
+        db.update("update person set score = ? where name = ?").parameters(22, "FRED").count()
+                .toBlocking().single();
+        assertEquals(22, (int) db.select(sql).parameter("FRED").cached(PERSON_CACHE)
+                .getAs(Integer.class).toBlocking().single());
+        ResultCacheStatistics stats = db.resultCacheStatistics(PERSON_CACHE);
+        assertEquals(0, stats.hits());
+        assertEquals(1, stats.invalidations());
+    }
+
+    @Test
+    public void testCachedInvalidatedByUpdateOfAsynchronousDatabase() {
+        Database db = db();
+        String sql = "select score from person where name = ?";
+        assertEquals(21, (int) db.select(sql).parameter("FRED").cached(PERSON_CACHE)
+                .getAs(Integer.class).toBlocking().single());
+        db.asynchronous().update("update person set score = ? where name = ?")
+                .parameters(22, "FRED").count().toBlocking().single();
+        assertEquals(22, (int) db.select(sql).parameter("FRED").cached(PERSON_CACHE)
+                .getAs(Integer.class).toBlocking().single());
+        assertEquals(1, db.resultCacheStatistics(PERSON_CACHE).invalidations());
+    }
+
+    @Test
+    public void testCachedNotInvalidatedByUpdateOfOtherTableUntilManualInvalidation() {
+        Database db = db();
+        CachePolicy policy = CachePolicy.builder().tables("address").build();
+        String sql = "select score from person where name = ?";
+        assertEquals(21, (int) db.select(sql).parameter("FRED").cached(policy)
+                .getAs(Integer.class).toBlocking().single());
+        db.update("update person set score = ? where name = ?").parameters(22, "FRED").count()
+                .toBlocking().single();
+        assertEquals(21, (int) db.select(sql).parameter("FRED").cached(policy)
+                .getAs(Integer.class).toBlocking().single());
+        db.invalidateCache();
+        assertEquals(22, (int) db.select(sql).parameter("FRED").cached(policy)
+                .getAs(Integer.class).toBlocking().single());
+    }
+
+    @Test
+    public void testCachedEntryExpiresAfterTtl() {
+        Database db = db();
+        TestScheduler clock = new TestScheduler();
+        CachePolicy policy = CachePolicy.builder().ttl(1, TimeUnit.MINUTES).clock(clock).build();
+        String sql = "select name from person order by name";
+        db.select(sql).cached(policy).getAs(String.class).toList().toBlocking().single();
+        clock.advanceTimeBy(59, TimeUnit.SECONDS);
+        db.select(sql).cached(policy).getAs(String.class).toList().toBlocking().single();
+        assertEquals(1, db.resultCacheStatistics(policy).hits());
+        clock.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), db.select(sql).cached(policy)
+                .getAs(String.class).toList().toBlocking().single());
+        ResultCacheStatistics stats = db.resultCacheStatistics(policy);
+        assertEquals(1, stats.expirations());
+        assertEquals(2, stats.loads());
+    }
+
+    @Test
+    public void testCachedEvictsLeastRecentlyUsedBeyondMaxEntries() {
+        Database db = db();
+        CachePolicy policy = CachePolicy.builder().maxEntries(1).build();
+        String sql = "select score from person where name = ?";
+        db.select(sql).parameters("FRED", "JOSEPH", "FRED").cached(policy).getAs(Integer.class)
+                .toList().toBlocking().single();
+        ResultCacheStatistics stats = db.resultCacheStatistics(policy);
+        assertEquals(0, stats.hits());
+        assertEquals(2, stats.evictions());
+        assertEquals(1, stats.entries());
+    }
+
+    @Test
+    public void testCachedDoesNotHoldResultHeavierThanMaxWeight() {
+        Database db = db();
+        CachePolicy policy = CachePolicy.builder().maxWeight(2).build();
+        db.select("select name from person").cached(policy).getAs(String.class).toList()
+                .toBlocking().single();
+        ResultCacheStatistics stats = db.resultCacheStatistics(policy);
+        assertEquals(1, stats.evictions());
+        assertEquals(0, stats.entries());
+        assertEquals(0, stats.weight());
+    }
+
+    @Test
+    public void testCachedDoesNotStoreIncompleteResults() {
+        Database db = db();
+        CachePolicy policy = CachePolicy.builder().build();
+        String sql = "select name from person order by name";
+        assertEquals("FRED", db.select(sql).cached(policy).getAs(String.class).first()
+                .toBlocking().single());
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), db.select(sql).cached(policy)
+                .getAs(String.class).toList().toBlocking().single());
+        ResultCacheStatistics stats = db.resultCacheStatistics(policy);
+        assertEquals(0, stats.hits());
+        assertEquals(1, stats.loads());
+    }
+
+    @Test
+    public void testBatchLoaderCombinesLookupsWithinWindow() {
+        TestScheduler scheduler = new TestScheduler();
+        BatchLoader<String, Integer> loader = db()
+                .batchLoader("select score, name from person where name in ({keys})", "name",
+                        String.class)
+                .window(10, TimeUnit.MILLISECONDS).scheduler(scheduler).getAs(Integer.class);
+        TestSubscriber<Integer> ts1 = TestSubscriber.create();
+        TestSubscriber<Integer> ts2 = TestSubscriber.create();
+        TestSubscriber<Integer> ts3 = TestSubscriber.create();
+        TestSubscriber<Integer> ts4 = TestSubscriber.create();
+        loader.load("FRED").subscribe(ts1);
+        loader.load("JOSEPH").subscribe(ts2);
+        loader.load("NOBODY").subscribe(ts3);
+        loader.load("FRED").subscribe(ts4);
+        scheduler.advanceTimeBy(9, TimeUnit.MILLISECONDS);
+        ts1.assertNoValues();
+        ts1.assertNoTerminalEvent();
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        for (TestSubscriber<Integer> ts : asList(ts1, ts2, ts3, ts4)) {
+            ts.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            ts.assertCompleted();
+        }
+        ts1.assertValues(21);
+        ts2.assertValues(34);
+        ts3.assertNoValues();
+        ts4.assertValues(21);
+    }
+
+    @Test
+    public void testBatchLoaderRunsQueryWhenLargestBucketIsFull() {
+        TestScheduler scheduler = new TestScheduler();
+        BatchLoader<String, String> loader = db()
+                .batchLoader("select name from person where name in ({keys})", "name",
+                        String.class)
+                .window(1, TimeUnit.HOURS).buckets(1, 2).scheduler(scheduler)
+                .getAs(String.class);
+        TestSubscriber<String> ts1 = TestSubscriber.create();
+        TestSubscriber<String> ts2 = TestSubscriber.create();
+        loader.load("FRED").subscribe(ts1);
+        loader.load("MARMADUKE").subscribe(ts2);
+        // run the query without advancing time to the end of the window
+        scheduler.triggerActions();
+        ts1.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts2.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts1.assertValues("FRED");
+        ts2.assertValues("MARMADUKE");
+    }
+
+    @Test
+    public void testBatchLoaderEmitsQueryErrorToAllLookups() {
+        TestScheduler scheduler = new TestScheduler();
+        BatchLoader<String, String> loader = db()
+                .batchLoader("select name from nonexistent where name in ({keys})", "name",
+                        String.class)
+                .window(1, TimeUnit.MILLISECONDS).scheduler(scheduler).getAs(String.class);
+        TestSubscriber<String> ts1 = TestSubscriber.create();
+        TestSubscriber<String> ts2 = TestSubscriber.create();
+        loader.load("FRED").subscribe(ts1);
+        loader.load("JOSEPH").subscribe(ts2);
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        ts1.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts2.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ts1.assertError(SQLException.class);
+        ts2.assertError(SQLException.class);
+    }
+
+    @Test
+    public void testBatchLoaderEmitsMapperErrorToAllLookupsWhenFlushedByTimer() {
+        TestScheduler scheduler = new TestScheduler();
+        BatchLoader<String, String> loader = db()
+                .batchLoader("select name from person where name in ({keys})", "name",
+                        String.class)
+                .window(1, TimeUnit.MILLISECONDS).scheduler(scheduler)
+                .build(new Func0<ResultSetMapper<String>>() {
+                    @Override
+                    public ResultSetMapper<String> call() {
+                        throw new IllegalStateException("boom");
+                    }
+                });
+        TestSubscriber<String> ts1 = TestSubscriber.create();
+        TestSubscriber<String> ts2 = TestSubscriber.create();
+        loader.load("FRED").subscribe(ts1);
+        loader.load("JOSEPH").subscribe(ts2);
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        ts1.assertError(IllegalStateException.class);
+        ts2.assertError(IllegalStateException.class);
+    }
+
+    @Test
+    public void testBatchLoaderReleasesWorkersWhenIdle() throws InterruptedException {
+        final TestScheduler testScheduler = new TestScheduler();
+        final List<Worker> workers = new CopyOnWriteArrayList<Worker>();
+        Scheduler scheduler = new Scheduler() {
+            @Override
+            public Worker createWorker() {
+                Worker w = testScheduler.createWorker();
+                workers.add(w);
+                return w;
+            }
+        };
+        BatchLoader<String, String> loader = db()
+                .batchLoader("select name from person where name in ({keys})", "name",
+                        String.class)
+                .window(1, TimeUnit.MILLISECONDS).buckets(1, 2).scheduler(scheduler)
+                .getAs(String.class);
+        assertTrue(workers.isEmpty());
+        TestSubscriber<String> ts1 = TestSubscriber.create();
+        TestSubscriber<String> ts2 = TestSubscriber.create();
+        TestSubscriber<String> ts3 = TestSubscriber.create();
+        // the first batch fills before its window ends
+        loader.load("FRED").subscribe(ts1);
+        loader.load("JOSEPH").subscribe(ts2);
+        // the second batch is run at the end of its window
+        loader.load("MARMADUKE").subscribe(ts3);
+        testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        for (TestSubscriber<String> ts : asList(ts1, ts2, ts3)) {
+            ts.awaitTerminalEvent(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            ts.assertCompleted();
+        }
+        assertFalse(workers.isEmpty());
+        // the workers of queries may be released just after their results
+        // are emitted on another thread (asynchronous database)
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        for (Worker w : workers) {
+            while (!w.isUnsubscribed() && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            assertTrue(w.isUnsubscribed());
+        }
+    }
+
+    @Test
+    public void testPreparedSelectExecutedManyTimes() {
+        PreparedSelect<Integer> score = db().prepare("select score from person where name = ?")
+                .getAs(Integer.class);
+        assertEquals(21, (int) score.execute("FRED").toBlocking().single());
+        assertEquals(34, (int) score.execute("JOSEPH").toBlocking().single());
+        assertTrue(score.execute("NOBODY").isEmpty().toBlocking().single());
+        assertEquals(21, (int) score.execute("FRED").toBlocking().single());
+    }
+
+    @Test
+    public void testPreparedSelectWithNamedParametersAndAutoMap() {
+        PreparedSelect<Person> persons = db()
+                .prepare("select name, score, dob, registered from person "
+                        + "where score > :min and score < :max order by name")
+                .autoMap(Person.class);
+        List<Person> list = persons.execute(20, 30).toList().toBlocking().single();
+        assertEquals(2, list.size());
+        assertEquals("FRED", list.get(0).getName());
+        assertEquals("MARMADUKE", list.get(1).getName());
+    }
+
+    @Test
+    public void testPreparedSelectWithMapper() {
+        PreparedSelect<String> names = db().prepare("select name from person order by name")
+                .mapper(new ResultSetMapper<String>() {
+                    @Override
+                    public String call(ResultSet rs) throws SQLException {
+                        return rs.getString(1).toLowerCase();
+                    }
+                });
+        assertEquals(asList("fred", "joseph", "marmaduke"),
+                names.execute().toList().toBlocking().single());
+    }
+
+    @Test
+    public void testPreparedSelectResolvesSchedulerOnSubscription() {
+        final AtomicInteger calls = new AtomicInteger();
+        Database db = db().asynchronous(new Func0<Scheduler>() {
+            @Override
+            public Scheduler call() {
+                calls.incrementAndGet();
+                return Schedulers.immediate();
+            }
+        });
+        Observable<Integer> score = db.prepare("select score from person where name = ?")
+                .getAs(Integer.class).execute("FRED");
+        assertEquals(0, calls.get());
+        assertEquals(21, (int) score.toBlocking().single());
+        int resolved = calls.get();
+        assertTrue(resolved > 0);
+        assertEquals(21, (int) score.toBlocking().single());
+        assertTrue(calls.get() > resolved);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPreparedSelectRejectsWrongNumberOfParameters() {
+        db().prepare("select score from person where name = ?").getAs(Integer.class)
+                .execute("FRED", "JOSEPH");
+    }
+
     @Test
     public void testNoParams() {
         List<Tuple2<String, Integer>> tuples = db()
@@ -537,6 +1354,20 @@ public abstract class DatabaseTestBase {
         assertNull(person.getDateOfBirth());
     }
 
+    @Test
+    public void testAutoMapAcrossMultipleResultSets() {
+        List<String> names = db()
+                .select("select name,score,dob,registered from person where name=?")
+                .parameters("FRED", "JOSEPH", "MARMADUKE").autoMap(Person.class)
+                .map(new Func1<Person, String>() {
+                    @Override
+                    public String call(Person person) {
+                        return person.getName();
+                    }
+                }).toList().toBlocking().single();
+        assertEquals(asList("FRED", "JOSEPH", "MARMADUKE"), names);
+    }
+
     @Test(expected = RuntimeException.class)
     public void testAutoMapCannotFindConstructorWithEnoughParameters() {
         db().select("select name,score,dob,registered,name from person order by name")
@@ -1491,6 +2322,18 @@ public abstract class DatabaseTestBase {
         assertEquals(36, list.get(1).score());
     }
 
+    @Test
+    public void testAutoMapInterfaceAcrossMultipleResultSets() {
+        List<NameScore> list = db().select("select name, 0 as x, score from person where name=?")
+                .parameters("FRED", "JOSEPH").autoMap(NameScore.class).toList().toBlocking()
+                .single();
+        assertEquals(2, list.size());
+        assertEquals("FRED", list.get(0).name());
+        assertEquals(21, list.get(0).score());
+        assertEquals("JOSEPH", list.get(1).name());
+        assertEquals(34, list.get(1).score());
+    }
+
     static interface NameScore {
 
         @Index(1)
@@ -1,16 +1,22 @@
 package com.github.davidmoten.rx.jdbc;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.verify;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import rx.observers.TestSubscriber;
 import rx.schedulers.Schedulers;
 
 public class FetchSizeTest {
@@ -21,6 +27,8 @@ public class FetchSizeTest {
 
   private PreparedStatement ps;
 
+  private ResultSet resultSet;
+
   @Before
   public void setup() throws Exception {
     sql = "select name, score from people";
@@ -28,7 +36,7 @@ public class FetchSizeTest {
     ps = Mockito.mock(PreparedStatement.class);
     Mockito.when(con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
         ResultSet.CONCUR_READ_ONLY)).thenReturn(ps);
-    ResultSet resultSet = Mockito.mock(ResultSet.class);
+    resultSet = Mockito.mock(ResultSet.class);
     Mockito.when(ps.executeQuery()).thenReturn(resultSet);
 
     Mockito.when(con.getAutoCommit()).thenReturn(false);
@@ -95,6 +103,106 @@ public class FetchSizeTest {
     verify(ps, Mockito.never()).setFetchSize(Mockito.any(Integer.class));
   }
 
+  @Test
+  public void testAdaptiveFetchSizePreparesStatementWithMin() throws SQLException {
+    db.select(sql) //
+        .fetchSize(500) //
+        .adaptiveFetchSize(10, 1000)
+        // go
+        .count()
+        //
+        .subscribeOn(Schedulers.immediate())
+        // go
+        .subscribe();
+
+    verify(ps, Mockito.times(1)).setFetchSize(10);
+    verify(ps, Mockito.never()).setFetchSize(500);
+  }
+
+  @Test
+  public void testAdaptiveFetchSizeFollowsBoundedRequest() throws SQLException {
+    Mockito.when(resultSet.next()).thenReturn(true);
+    TestSubscriber<Integer> ts = TestSubscriber.create(3);
+    db.select(sql) //
+        .adaptiveFetchSize(1, 1000) //
+        .get(ONE) //
+        .subscribe(ts);
+    ts.awaitValueCount(3, 5, TimeUnit.SECONDS);
+    ts.requestMore(5000);
+    ts.awaitValueCount(5003, 5, TimeUnit.SECONDS);
+    ts.unsubscribe();
+
+    InOrder inOrder = Mockito.inOrder(resultSet);
+    inOrder.verify(resultSet).setFetchSize(3);
+    inOrder.verify(resultSet).setFetchSize(1000);
+  }
+
+  @Test
+  public void testAdaptiveFetchSizeRampsUpForUnboundedRequest() throws SQLException {
+    Mockito.when(resultSet.next()).thenAnswer(new Answer<Boolean>() {
+      int count = 0;
+
+      @Override
+      public Boolean answer(InvocationOnMock invocation) {
+        return count++ < 100;
+      }
+    });
+    int count = db.select(sql) //
+        .adaptiveFetchSize(10, 40) //
+        .get(ONE) //
+        .count() //
+        .toBlocking().single();
+
+    assertEquals(100, count);
+    verify(ps, Mockito.times(1)).setFetchSize(10);
+    InOrder inOrder = Mockito.inOrder(resultSet);
+    inOrder.verify(resultSet).setFetchSize(20);
+    inOrder.verify(resultSet).setFetchSize(40);
+    verify(resultSet, Mockito.times(2)).setFetchSize(Mockito.anyInt());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAdaptiveFetchSizeMaxLessThanMinThrows() {
+    db.select(sql).adaptiveFetchSize(10, 5);
+  }
+
+  @Test
+  public void testMaxRowsSetsMaxRowsAndCapsFetchSize() throws SQLException {
+    db.select(sql) //
+        .fetchSize(100) //
+        .maxRows(5)
+        // go
+        .count()
+        //
+        .subscribeOn(Schedulers.immediate())
+        // go
+        .subscribe();
+
+    verify(ps, Mockito.times(1)).setMaxRows(5);
+    verify(ps, Mockito.times(1)).setFetchSize(5);
+  }
+
+  @Test
+  public void testMaxRowsStopsReadingAtLimit() throws SQLException {
+    Mockito.when(resultSet.next()).thenReturn(true);
+    int count = db.select(sql) //
+        .maxRows(2) //
+        .get(ONE) //
+        .count() //
+        .toBlocking().single();
+
+    assertEquals(2, count);
+    verify(resultSet, Mockito.times(2)).next();
+    verify(resultSet, Mockito.atLeastOnce()).close();
+  }
+
+  private static final ResultSetMapper<Integer> ONE = new ResultSetMapper<Integer>() {
+    @Override
+    public Integer call(ResultSet rs) {
+      return 1;
+    }
+  };
+
   private static ConnectionProvider createConnectionProvider(final Connection con) {
     return new ConnectionProvider() {
 
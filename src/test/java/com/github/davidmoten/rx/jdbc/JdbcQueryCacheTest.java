@@ -0,0 +1,55 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.jdbc.NamedParameters.JdbcQuery;
+
+public class JdbcQueryCacheTest {
+
+    @Test
+    public void testParsedOnce() {
+        JdbcQueryCache cache = new JdbcQueryCache(10);
+        JdbcQuery q = cache.get("select name from person where name = :name and score > :score");
+        assertSame(q, cache.get("select name from person where name = :name and score > :score"));
+        assertEquals("select name from person where name = ? and score > ?", q.sql());
+        assertEquals(asList("name", "score"), q.names());
+        assertEquals(2, q.parametersCount());
+        CacheStatistics stats = cache.statistics();
+        assertEquals(1, stats.size());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.hits());
+    }
+
+    @Test
+    public void testParametersCountOfQuestionMarks() {
+        JdbcQuery q = new JdbcQueryCache(10).get("select name from person where a = '?' and b = ?");
+        assertEquals(1, q.parametersCount());
+        assertEquals(JdbcQuery.Kind.OTHER, q.kind());
+    }
+
+    @Test
+    public void testKind() {
+        JdbcQueryCache cache = new JdbcQueryCache(10);
+        assertEquals(JdbcQuery.Kind.BEGIN_TRANSACTION,
+                cache.get(QueryUpdateOnSubscribe.BEGIN_TRANSACTION).kind());
+        assertEquals(JdbcQuery.Kind.COMMIT, cache.get(QueryUpdateOnSubscribe.COMMIT).kind());
+        assertEquals(JdbcQuery.Kind.ROLLBACK, cache.get(QueryUpdateOnSubscribe.ROLLBACK).kind());
+    }
+
+    @Test
+    public void testBounded() {
+        JdbcQueryCache cache = new JdbcQueryCache(2);
+        cache.get("select 1");
+        cache.get("select 2");
+        cache.get("select 3");
+        CacheStatistics stats = cache.statistics();
+        assertEquals(2, stats.size());
+        assertEquals(1, stats.evictions());
+        assertEquals(3, stats.misses());
+    }
+
+}
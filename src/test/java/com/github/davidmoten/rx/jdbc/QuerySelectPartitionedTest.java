@@ -0,0 +1,109 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class QuerySelectPartitionedTest {
+
+    @Test
+    public void testSplitPointsOfEvenRange() {
+        assertEquals(asList((Object) 25L, 50L, 75L), QuerySelectPartitioned.splitPoints(0, 100, 4));
+    }
+
+    @Test
+    public void testSplitPointsAreDistinctWhenRangeSmallerThanPartitions() {
+        assertEquals(asList((Object) 11L), QuerySelectPartitioned.splitPoints(10, 11, 5));
+    }
+
+    @Test
+    public void testSplitPointsWhenMinEqualsMax() {
+        assertTrue(QuerySelectPartitioned.splitPoints(7, 7, 3).isEmpty());
+    }
+
+    @Test
+    public void testSplitPointsDoNotOverflowForExtremeRange() {
+        List<Object> list = QuerySelectPartitioned.splitPoints(Long.MIN_VALUE, Long.MAX_VALUE, 2);
+        assertEquals(1, list.size());
+        assertTrue(Math.abs((Long) list.get(0)) <= 1024);
+    }
+
+    @Test
+    public void testContainsRangeOnce() {
+        assertTrue(QuerySelectPartitioned.containsRangeOnce("select * from t where {range}"));
+        assertFalse(QuerySelectPartitioned.containsRangeOnce("select * from t"));
+        assertFalse(QuerySelectPartitioned
+                .containsRangeOnce("select * from t where {range} union select * from u where {range}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRangePlaceholderMustNotBeRepeated() {
+        DatabaseCreator.db().selectPartitioned(
+                "select name from person where {range} union select name from person where {range}",
+                "score");
+    }
+
+    @Test
+    public void testPartitionsIncludeRowsWithNullKey() {
+        List<String> list = createItems()
+                .selectPartitioned("select name, k from item where {range}", "k") //
+                .partitions(3) //
+                .getAs(String.class) //
+                .toSortedList().toBlocking().single();
+        assertEquals(allItemNames(), list);
+    }
+
+    @Test
+    public void testExplicitBoundariesReadEveryRowOnce() {
+        List<String> list = createItems()
+                .selectPartitioned("select name from item where {range}", "k") //
+                .boundaries(3, 7) //
+                .getAs(String.class) //
+                .toSortedList().toBlocking().single();
+        assertEquals(allItemNames(), list);
+    }
+
+    @Test
+    public void testBoundariesOutsideRangeOfKeys() {
+        List<Integer> list = createItems()
+                .selectPartitioned("select k from item where {range} and k is not null", "k") //
+                .boundaries(-5, 100) //
+                .maxConcurrency(1) //
+                .getAs(Integer.class) //
+                .toSortedList().toBlocking().single();
+        assertEquals(asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), list);
+    }
+
+    private static Database createItems() {
+        Database db = DatabaseCreator.db();
+        db.update("create table item (name varchar(10) primary key, k int)").execute();
+        List<Object> parameters = new ArrayList<Object>();
+        for (int i = 1; i <= 10; i++) {
+            parameters.add("item" + i);
+            parameters.add(i);
+        }
+        parameters.addAll(asList("nullA", null, "nullB", null));
+        db.update("insert into item(name, k) values(?, ?)").parameters(parameters.toArray())
+                .execute();
+        return db;
+    }
+
+    private static List<String> allItemNames() {
+        List<String> names = new ArrayList<String>();
+        for (int i = 1; i <= 10; i++) {
+            names.add("item" + i);
+        }
+        names.add("nullA");
+        names.add("nullB");
+        Collections.sort(names);
+        return names;
+    }
+
+}
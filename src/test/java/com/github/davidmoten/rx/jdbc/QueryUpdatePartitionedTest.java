@@ -0,0 +1,180 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.jdbc.tuple.Tuple2;
+
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func1;
+
+public class QueryUpdatePartitionedTest {
+
+    private static final int N = 1000;
+
+    private static final Func1<Integer, Integer> KEY = new Func1<Integer, Integer>() {
+        @Override
+        public Integer call(Integer i) {
+            return i % 10;
+        }
+    };
+
+    private static final Func1<Integer, List<?>> VALUES = new Func1<Integer, List<?>>() {
+        @Override
+        public List<?> call(Integer i) {
+            return asList(i % 10, i);
+        }
+    };
+
+    private static Database createEventTable() {
+        Database db = DatabaseCreator.db();
+        db.update("create table event (id bigint auto_increment primary key, k int, seq int)")
+                .execute();
+        return db;
+    }
+
+    @Test
+    public void testLaneIsWithinRange() {
+        for (int i = -100; i < 100; i++) {
+            int lane = QueryUpdatePartitioned.lane(i * 65536L, 3);
+            assertTrue(lane >= 0 && lane < 3);
+        }
+        assertEquals(0, QueryUpdatePartitioned.lane(null, 3));
+    }
+
+    @Test
+    public void testLaneIsSameForEqualKeys() {
+        assertEquals(QueryUpdatePartitioned.lane("abc", 7),
+                QueryUpdatePartitioned.lane(new String("abc"), 7));
+    }
+
+    @Test
+    public void testPartitionedInsertWritesAllRowsInOrderPerKey() {
+        Database db = createEventTable();
+        int count = db.updatePartitioned("insert into event(k, seq) values (?, ?)") //
+                .parameters(Observable.range(0, N), KEY, VALUES) //
+                .lanes(4) //
+                .batchSize(17) //
+                .execute();
+        assertEquals(N, count);
+        List<Tuple2<Integer, Integer>> rows = db.select("select k, seq from event order by id")
+                .getAs(Integer.class, Integer.class) //
+                .toList().toBlocking().single();
+        assertEquals(N, rows.size());
+        Map<Integer, Integer> last = new HashMap<Integer, Integer>();
+        for (Tuple2<Integer, Integer> row : rows) {
+            Integer previous = last.put(row.value1(), row.value2());
+            if (previous != null)
+                assertTrue(previous < row.value2());
+        }
+        assertEquals(10, last.size());
+    }
+
+    @Test
+    public void testPartitionedMultiRowInsertReportsLaneStatistics() {
+        Database db = createEventTable();
+        final Map<Integer, LaneStatistics> statistics = new ConcurrentHashMap<Integer, LaneStatistics>();
+        int count = db.updatePartitioned("insert into event(k, seq) values (?, ?)") //
+                .parameters(Observable.range(0, N), KEY, VALUES) //
+                .lanes(3) //
+                .batchSize(50) //
+                .multiRowInsert() //
+                .commitPolicy(CommitPolicy.AT_END) //
+                .onLaneStatistics(new Action1<LaneStatistics>() {
+                    @Override
+                    public void call(LaneStatistics s) {
+                        LaneStatistics previous = statistics.put(s.lane(), s);
+                        if (previous != null)
+                            assertTrue(previous.rows() < s.rows());
+                    }
+                }) //
+                .execute();
+        assertEquals(N, count);
+        assertEquals(N, (int) db.select("select count(*) from event").getAs(Integer.class)
+                .toBlocking().single());
+        long rows = 0;
+        for (LaneStatistics s : statistics.values()) {
+            assertTrue(s.lane() >= 0 && s.lane() < 3);
+            assertTrue(s.batches() > 0);
+            assertEquals(s.rows(), s.count());
+            rows += s.rows();
+        }
+        assertEquals(N, rows);
+    }
+
+    @Test
+    public void testPartitionedUpdateWithNoParametersAffectsNothing() {
+        Database db = createEventTable();
+        assertEquals(0, db.updatePartitioned("insert into event(k, seq) values (?, ?)") //
+                .parameters(Observable.<Integer> empty(), KEY, VALUES) //
+                .execute());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLanesMustBePositive() {
+        DatabaseCreator.db().updatePartitioned("update person set score = ?").lanes(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchSizeMustBeGreaterThanOne() {
+        DatabaseCreator.db().updatePartitioned("update person set score = ?").batchSize(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValuesOfWrongLengthAreRejected() {
+        Database db = createEventTable();
+        db.updatePartitioned("insert into event(k, seq) values (?, ?)") //
+                .parameters(Observable.range(0, N), KEY, new Func1<Integer, List<?>>() {
+                    @Override
+                    public List<?> call(Integer i) {
+                        return i == 5 ? asList(i) : asList(i % 10, i);
+                    }
+                }) //
+                .execute();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMultiRowInsertRequiresBuckets() {
+        DatabaseCreator.db().updatePartitioned("insert into event(k, seq) values (?, ?)")
+                .multiRowInsert(new int[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMultiRowInsertBucketsMustAscend() {
+        DatabaseCreator.db().updatePartitioned("insert into event(k, seq) values (?, ?)")
+                .multiRowInsert(8, 8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMultiRowInsertRequiresInsertSql() {
+        DatabaseCreator.db().updatePartitioned("update person set score = ?").multiRowInsert(1, 8);
+    }
+
+    @Test
+    public void testMultiRowInsertCopiesBuckets() {
+        Database db = createEventTable();
+        int[] buckets = { 1, 8 };
+        QueryUpdatePartitioned.Builder builder = db
+                .updatePartitioned("insert into event(k, seq) values (?, ?)") //
+                .parameters(Observable.range(0, N), KEY, VALUES) //
+                .batchSize(20) //
+                .multiRowInsert(buckets);
+        buckets[1] = 0;
+        assertEquals(N, builder.execute());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParametersMustBeSet() {
+        DatabaseCreator.db().updatePartitioned("update person set score = ?").count();
+    }
+
+}
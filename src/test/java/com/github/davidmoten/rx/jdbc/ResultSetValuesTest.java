@@ -0,0 +1,63 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.verify;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.github.davidmoten.rx.jdbc.tuple.Tuple2;
+import com.github.davidmoten.rx.jdbc.tuple.Tuples;
+
+public class ResultSetValuesTest {
+
+    @Test
+    public void testMetadataReadOncePerResultSetAndValueReadOncePerCell() throws SQLException {
+        ResultSetMetaData metadata = Mockito.mock(ResultSetMetaData.class);
+        Mockito.when(metadata.getColumnCount()).thenReturn(2);
+        Mockito.when(metadata.getColumnType(1)).thenReturn(Types.VARCHAR);
+        Mockito.when(metadata.getColumnType(2)).thenReturn(Types.INTEGER);
+        Mockito.when(metadata.getColumnLabel(1)).thenReturn("NAME");
+        Mockito.when(metadata.getColumnLabel(2)).thenReturn("SCORE");
+        ResultSet rs = Mockito.mock(ResultSet.class);
+        Mockito.when(rs.getMetaData()).thenReturn(metadata);
+        Mockito.when(rs.getObject(1)).thenReturn("FRED");
+        Mockito.when(rs.getObject(2)).thenReturn(21);
+
+        ResultSetMapper<Tuple2<String, Long>> mapper = Tuples.tuple(String.class, Long.class);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(new Tuple2<String, Long>("FRED", 21L), mapper.call(rs));
+        }
+
+        verify(rs, Mockito.times(1)).getMetaData();
+        verify(rs, Mockito.times(3)).getObject(1);
+        verify(rs, Mockito.times(3)).getObject(2);
+    }
+
+    @Test
+    public void testMetadataReadAgainForNewResultSet() throws SQLException {
+        ResultSetMetaData metadata = Mockito.mock(ResultSetMetaData.class);
+        Mockito.when(metadata.getColumnCount()).thenReturn(1);
+        Mockito.when(metadata.getColumnType(1)).thenReturn(Types.VARCHAR);
+        Mockito.when(metadata.getColumnLabel(1)).thenReturn("NAME");
+        ResultSet rs1 = Mockito.mock(ResultSet.class);
+        Mockito.when(rs1.getMetaData()).thenReturn(metadata);
+        Mockito.when(rs1.getObject(1)).thenReturn("FRED");
+        ResultSet rs2 = Mockito.mock(ResultSet.class);
+        Mockito.when(rs2.getMetaData()).thenReturn(metadata);
+        Mockito.when(rs2.getObject(1)).thenReturn(null);
+
+        ResultSetMapper<String> mapper = Tuples.single(String.class);
+        assertEquals("FRED", mapper.call(rs1));
+        assertEquals(null, mapper.call(rs2));
+
+        verify(rs1, Mockito.times(1)).getMetaData();
+        verify(rs2, Mockito.times(1)).getMetaData();
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.github.davidmoten.rx.jdbc;
+
+import static org.mockito.Mockito.verify;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import rx.Observable;
+
+public class ReuseStatementTest {
+
+    private String sql;
+
+    private Database db;
+
+    private Connection con;
+
+    private PreparedStatement ps;
+
+    @Before
+    public void setup() throws Exception {
+        sql = "select score from person where name=?";
+        con = Mockito.mock(Connection.class);
+        ps = Mockito.mock(PreparedStatement.class);
+        Mockito.when(con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)).thenReturn(ps);
+        ResultSet resultSet = Mockito.mock(ResultSet.class);
+        Mockito.when(ps.executeQuery()).thenReturn(resultSet);
+        Mockito.when(con.getAutoCommit()).thenReturn(true);
+        Mockito.when(con.isClosed()).thenReturn(false);
+        db = Database.from(createConnectionProvider(con));
+    }
+
+    @Test
+    public void testStatementPreparedOnceForAllParameterSets() throws SQLException {
+        db.select(sql) //
+                .parameters(Observable.just("FRED", "JOSEPH", "MARMADUKE"))
+                // reuse
+                .reuseStatement()
+                // go
+                .count().toBlocking().single();
+
+        verify(con, Mockito.times(1)).prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        verify(ps, Mockito.times(3)).executeQuery();
+        verify(ps, Mockito.times(1)).close();
+        verify(con, Mockito.times(1)).close();
+    }
+
+    @Test
+    public void testStatementPreparedForEachParameterSetByDefault() throws SQLException {
+        db.select(sql) //
+                .parameters(Observable.just("FRED", "JOSEPH", "MARMADUKE"))
+                // go
+                .count().toBlocking().single();
+
+        verify(con, Mockito.times(3)).prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        verify(ps, Mockito.times(3)).executeQuery();
+    }
+
+    private static ConnectionProvider createConnectionProvider(final Connection con) {
+        return new ConnectionProvider() {
+
+            @Override
+            public Connection get() {
+                return con;
+            }
+
+            @Override
+            public void close() {
+
+            }
+        };
+    }
+
+}
@@ -41,6 +41,66 @@ public class UtilTest {
         Asserts.assertIsUtilityClass(Util.class);
     }
 
+    @Test
+    public void testCountSqlWrapsSelect() {
+        assertEquals("select count(*) from (select name from person where score > ?\n) rx_count",
+                Util.countSql(" select name from person where score > ? ; "));
+    }
+
+    @Test
+    public void testCountSqlReturnsNullForNonSelect() {
+        assertNull(Util.countSql("call my_proc(?)"));
+        assertNull(Util.countSql("selected"));
+        assertNull(Util.countSql("with t as (select 1) select * from t"));
+    }
+
+    @Test
+    public void testCountSqlReturnsNullForSelectForUpdate() {
+        assertNull(Util.countSql("select name from person for  update"));
+    }
+
+    @Test
+    public void testQuestionMarks() {
+        assertEquals("?", Util.questionMarks(1));
+        assertEquals("?,?,?", Util.questionMarks(3));
+    }
+
+    @Test
+    public void testUpdatedTable() {
+        assertEquals("person", Util.updatedTable("insert into person(name,score) values(?,?)"));
+        assertEquals("person", Util.updatedTable(" UPDATE Person set score = ?"));
+        assertEquals("person", Util.updatedTable("delete from app.\"PERSON\" where name = ?"));
+        assertEquals("person", Util.updatedTable("delete person where name = ?"));
+        assertEquals("person", Util.updatedTable("merge into person using other on x"));
+        assertEquals("person", Util.updatedTable("truncate table person"));
+    }
+
+    @Test
+    public void testUpdatedTableReturnsNullIfUnknown() {
+        assertNull(Util.updatedTable("create table person2 (name varchar(50))"));
+        assertNull(Util.updatedTable("call my_proc(?)"));
+    }
+
+    @Test
+    public void testMultiRowInsert() {
+        assertEquals("insert into person(name,score) values(?,?),(?,?),(?,?)",
+                Util.multiRowInsert("insert into person(name,score) values(?,?)", 3));
+        assertEquals("INSERT INTO person (name, score) VALUES (?, 0),(?, 0)",
+                Util.multiRowInsert("INSERT INTO person (name, score) VALUES (?, 0);", 2));
+        assertEquals("insert into person values (?, ')'),(?, ')')",
+                Util.multiRowInsert("insert into person values (?, ')')", 2));
+        assertEquals("insert into person(name,score) values(?,coalesce(?,0))",
+                Util.multiRowInsert("insert into person(name,score) values(?,coalesce(?,0))", 1));
+    }
+
+    @Test
+    public void testMultiRowInsertReturnsNullIfNotRewritable() {
+        assertNull(Util.multiRowInsert("insert into person(name) select name from other", 2));
+        assertNull(Util.multiRowInsert("insert into person(name) values(?),(?)", 2));
+        assertNull(Util.multiRowInsert("insert into person(name) values(?) on conflict do nothing", 2));
+        assertNull(Util.multiRowInsert("update person set score = ?", 2));
+    }
+
     @Test
     public void testAutoMapOfUtilDateToSqlDate() {
         assertEquals(new java.sql.Date(1), autoMap(new java.util.Date(1), java.sql.Date.class));